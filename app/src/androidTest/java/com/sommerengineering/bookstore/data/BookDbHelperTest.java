@@ -0,0 +1,200 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookContract.ImportEntry;
+import com.sommerengineering.bookstore.data.BookContract.SaleEntry;
+import com.sommerengineering.bookstore.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+// schema and query plan checks for BookDbHelper
+// run on a device since the query plan depends on the sqlite version shipped with android
+@RunWith(AndroidJUnit4.class)
+public class BookDbHelperTest {
+
+    private static final String TEST_DATABASE_NAME = "inventory_test.db";
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @Test
+    public void lookupByName_usesNameIndex() {
+        assertPlanUses("SELECT * FROM books WHERE name = 'x'", BookDbHelper.INDEX_BOOKS_NAME);
+    }
+
+    @Test
+    public void lookupByAuthor_usesAuthorIndex() {
+        assertPlanUses("SELECT * FROM books WHERE author = 'x'", BookDbHelper.INDEX_BOOKS_AUTHOR);
+    }
+
+    // the supplier is found by name, then its books through the supplier_id index
+    @Test
+    public void lookupBySupplier_usesSupplierIndexes() {
+        String sql = "SELECT * FROM " + BookDbHelper.VIEW_BOOKS + " WHERE supplier_name = 'x'";
+        assertPlanUses(sql, BookDbHelper.INDEX_SUPPLIERS_NAME_PHONE);
+        assertPlanUses(sql, BookDbHelper.INDEX_BOOKS_SUPPLIER);
+    }
+
+    // the books of a supplier come out of the supplier_id index already in _ID order
+    @Test
+    public void booksOfSupplier_needNoTempSort() {
+        assertSortedBy("SELECT * FROM " + BookDbHelper.VIEW_BOOKS + " WHERE supplier_id = 3 ORDER BY _id",
+                BookDbHelper.INDEX_BOOKS_SUPPLIER);
+    }
+
+    @Test
+    public void catalogProjection_usesCoveringIndex() {
+        String plan = explain("SELECT _id, name, price, quantity FROM books WHERE _id > 100 ORDER BY _id LIMIT 50");
+        assertTrue(plan, plan.contains("COVERING INDEX " + BookDbHelper.INDEX_BOOKS_CATALOG));
+    }
+
+    // the partial index only holds the watchlist rows, so scanning it never visits a well stocked book
+    @Test
+    public void lowStockWatchlist_usesPartialIndex() {
+        String plan = explain("SELECT * FROM books WHERE " + BookDbHelper.LOW_STOCK_SELECTION + " ORDER BY _id");
+        assertTrue(plan, plan.contains(BookDbHelper.INDEX_BOOKS_LOW_STOCK));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    // the catalog sorts and range filters read pages straight from an index, never sorting in memory
+    @Test
+    public void sortedCatalogPages_needNoTempSort() {
+        String page = "SELECT _id, name, price, quantity FROM books ";
+        assertSortedBy(page + "ORDER BY name ASC, _id ASC LIMIT 50 OFFSET 100", BookDbHelper.INDEX_BOOKS_NAME);
+        assertSortedBy(page + "ORDER BY author DESC, _id DESC LIMIT 50", BookDbHelper.INDEX_BOOKS_AUTHOR);
+        assertSortedBy(page + "ORDER BY price ASC, _id ASC LIMIT 50", BookDbHelper.INDEX_BOOKS_PRICE);
+        assertSortedBy(page + "ORDER BY price DESC, _id DESC LIMIT 50", BookDbHelper.INDEX_BOOKS_PRICE);
+        assertSortedBy(page + "ORDER BY quantity ASC, _id ASC LIMIT 50", BookDbHelper.INDEX_BOOKS_QUANTITY);
+        assertSortedBy(page + "WHERE price>=500 AND price<=1500 ORDER BY price ASC, _id ASC LIMIT 50",
+                BookDbHelper.INDEX_BOOKS_PRICE);
+        assertSortedBy(page + "WHERE price>=500 AND price<=1500 ORDER BY price DESC, _id DESC LIMIT 50",
+                BookDbHelper.INDEX_BOOKS_PRICE);
+        assertSortedBy(page + "WHERE quantity<5 ORDER BY quantity ASC, _id ASC LIMIT 50",
+                BookDbHelper.INDEX_BOOKS_QUANTITY);
+    }
+
+    // sales velocity reads the sales of one book over a time range
+    @Test
+    public void salesOfBook_usesLedgerIndex() {
+        assertPlanUses("SELECT SUM(quantity) FROM sales WHERE book_id = 5 AND sold_at >= 1000",
+                BookDbHelper.INDEX_SALES_BOOK_TIME);
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsRows() {
+
+        // build a version 1 database by hand, exactly as the first release created it
+        File file = mContext.getDatabasePath(TEST_DATABASE_NAME);
+        file.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        db.execSQL("CREATE TABLE books (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, " +
+                "author TEXT, price REAL, quantity INTEGER NOT NULL DEFAULT 0, " +
+                "supplier_name TEXT, supplier_phone TEXT );");
+        db.execSQL("INSERT INTO books (name, author, price, quantity) VALUES ('The Spot', 'David Means', 7.99, 12)");
+        db.execSQL("INSERT INTO books (name, price, supplier_name, supplier_phone) " +
+                "VALUES ('Assorted Prose', 4.50, 'Penguin Publishers', '800-455-8234')");
+        db.execSQL("INSERT INTO books (name, price, supplier_name, supplier_phone) " +
+                "VALUES ('Instead of a Letter', 5.25, 'Penguin Publishers', '800-455-8234')");
+        db.setVersion(1);
+        db.close();
+
+        // opening through the helper runs every upgrade
+        BookDbHelper helper = new BookDbHelper(mContext, TEST_DATABASE_NAME);
+        SQLiteDatabase upgraded = helper.getReadableDatabase();
+        try {
+            assertEquals(BookDbHelper.DATABASE_VERSION, upgraded.getVersion());
+            assertEquals(3, DatabaseUtils.queryNumEntries(upgraded, BookEntry.TABLE_NAME));
+            assertEquals(1, DatabaseUtils.longForQuery(upgraded,
+                    "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = ?",
+                    new String[] {BookDbHelper.INDEX_BOOKS_NAME}));
+
+            // version 4 stores the price in cents
+            assertEquals(799, DatabaseUtils.longForQuery(upgraded, "SELECT price FROM books WHERE _id = 1", null));
+            assertEquals("integer", DatabaseUtils.stringForQuery(upgraded,
+                    "SELECT typeof(price) FROM books WHERE _id = 1", null));
+
+            // version 6 adds the reorder threshold with no alert for existing books
+            assertEquals(0, DatabaseUtils.longForQuery(upgraded, "SELECT MAX(reorder_threshold) FROM books", null));
+
+            // version 7 adds an empty sales ledger
+            assertEquals(0, DatabaseUtils.queryNumEntries(upgraded, SaleEntry.TABLE_NAME));
+
+            // version 9 stores the supplier both books share once, and the book without one has none
+            assertEquals(1, DatabaseUtils.queryNumEntries(upgraded, SupplierEntry.TABLE_NAME));
+            assertEquals("Penguin Publishers", DatabaseUtils.stringForQuery(upgraded,
+                    "SELECT supplier_name FROM " + BookDbHelper.VIEW_BOOKS + " WHERE _id = 3", null));
+            assertEquals("800-455-8234", DatabaseUtils.stringForQuery(upgraded,
+                    "SELECT supplier_phone FROM " + BookDbHelper.VIEW_BOOKS + " WHERE _id = 2", null));
+            assertEquals(1, DatabaseUtils.longForQuery(upgraded,
+                    "SELECT COUNT(*) FROM books WHERE supplier_id IS NULL", null));
+
+            // version 10 adds an empty table of import progress
+            assertEquals(0, DatabaseUtils.queryNumEntries(upgraded, ImportEntry.TABLE_NAME));
+
+            // the search index still finds the copied rows, by the supplier name as well
+            assertEquals(1, DatabaseUtils.longForQuery(upgraded,
+                    "SELECT COUNT(*) FROM books_fts WHERE books_fts MATCH 'spot'", null));
+            assertEquals(2, DatabaseUtils.longForQuery(upgraded,
+                    "SELECT COUNT(*) FROM books_fts WHERE books_fts MATCH 'penguin'", null));
+        } finally {
+            helper.close();
+        }
+    }
+
+    // fail unless the query plan for the statement names the index
+    private void assertPlanUses(String sql, String index) {
+        String plan = explain(sql);
+        assertTrue(plan, plan.contains(index));
+        assertFalse(plan, plan.contains("SCAN TABLE"));
+    }
+
+    // fail unless the statement is ordered by reading the index, without a temporary b-tree for the ORDER BY
+    private void assertSortedBy(String sql, String index) {
+        String plan = explain(sql);
+        assertTrue(plan, plan.contains(index));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    // EXPLAIN QUERY PLAN output for the statement, one detail per line
+    private String explain(String sql) {
+
+        BookDbHelper helper = new BookDbHelper(mContext, TEST_DATABASE_NAME);
+        Cursor cursor = helper.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            StringBuilder plan = new StringBuilder();
+            int detailIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailIndex)).append('\n');
+            }
+            return plan.toString();
+        } finally {
+            cursor.close();
+            helper.close();
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+// type-ahead search latency over a 100k row catalog
+// each search includes filling the cursor window, the same work the list does before showing results
+@RunWith(AndroidJUnit4.class)
+public class BookSearchBenchmarkTest {
+
+    private static final String LOG_TAG = BookSearchBenchmarkTest.class.getSimpleName();
+    private static final String TEST_DATABASE_NAME = "inventory_search_benchmark.db";
+
+    private static final int ROW_COUNT = 100000;
+    private static final int SEARCH_COUNT = 500;
+
+    // target for the median search
+    private static final long MEDIAN_LIMIT_MICROS = 1000;
+
+    private static final String[] WORDS = {"river", "garden", "winter", "shadow", "silver", "harbor",
+            "lantern", "meadow", "orchard", "thunder", "violet", "compass", "ember", "falcon", "glacier",
+            "horizon", "island", "juniper", "kingdom", "labyrinth", "mirror", "nomad", "ocean", "prairie"};
+    private static final String[] AUTHORS = {"David Means", "Ann Patchett", "Colson Whitehead",
+            "Zadie Smith", "Kazuo Ishiguro", "Jesmyn Ward", "George Saunders", "Louise Erdrich"};
+    private static final String[] SUPPLIERS = {"Penguin Publishers", "Harper Books", "Random House",
+            "Simon Schuster", "Macmillan"};
+
+    private Context mContext;
+    private BookDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+        mDbHelper = new BookDbHelper(mContext, TEST_DATABASE_NAME);
+
+        // fill the catalog in a single transaction, the triggers index every row
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        Random random = new Random(42);
+        SQLiteStatement insert = db.compileStatement(
+                "INSERT INTO books (name, author, price, quantity, supplier_id) VALUES (?,?,?,?,?)");
+        db.beginTransaction();
+        try {
+
+            // supplier IDs 1 to SUPPLIERS.length
+            for (int i = 0; i < SUPPLIERS.length; i++) {
+                db.execSQL("INSERT INTO suppliers (_id, supplier_name) VALUES (?, ?)",
+                        new Object[] {i + 1, SUPPLIERS[i]});
+            }
+
+            for (int i = 0; i < ROW_COUNT; i++) {
+                insert.bindString(1, WORDS[random.nextInt(WORDS.length)] + " " +
+                        WORDS[random.nextInt(WORDS.length)] + " " + i);
+                insert.bindString(2, AUTHORS[random.nextInt(AUTHORS.length)]);
+                insert.bindLong(3, random.nextInt(5000));
+                insert.bindLong(4, random.nextInt(50));
+                insert.bindLong(5, 1 + random.nextInt(SUPPLIERS.length));
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @Test
+    public void prefixSearch_medianUnderOneMillisecond() {
+
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        String[] projection = {"_id", "name", "price", "quantity"};
+        Random random = new Random(7);
+        long[] micros = new long[SEARCH_COUNT];
+
+        // warm up the page cache and the prepared statement
+        runSearch(db, "riv", projection);
+
+        for (int i = 0; i < SEARCH_COUNT; i++) {
+
+            // typical type-ahead text: a word prefix, sometimes followed by an author prefix
+            String word = WORDS[random.nextInt(WORDS.length)];
+            String text = word.substring(0, 3 + random.nextInt(word.length() - 3));
+            if (random.nextBoolean()) {
+                text += " " + AUTHORS[random.nextInt(AUTHORS.length)].substring(0, 3);
+            }
+
+            long start = System.nanoTime();
+            runSearch(db, text, projection);
+            micros[i] = (System.nanoTime() - start) / 1000;
+        }
+
+        Arrays.sort(micros);
+        long median = micros[SEARCH_COUNT / 2];
+        long p95 = micros[SEARCH_COUNT * 95 / 100];
+        Log.i(LOG_TAG, "search over " + ROW_COUNT + " rows: median " + median + " us, p95 " + p95 + " us");
+
+        assertTrue("median search took " + median + " us", median < MEDIAN_LIMIT_MICROS);
+    }
+
+    // run the search and fill the cursor window
+    private static int runSearch(SQLiteDatabase db, String text, String[] projection) {
+        Cursor cursor = BookSearch.query(db, text, projection, BookSearch.DEFAULT_LIMIT);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+// catalog read latency while a second thread keeps writing sales, for each storage profile
+// with the rollback journal every read waits for the write in progress, with write-ahead logging it does not
+@RunWith(AndroidJUnit4.class)
+public class BookStorageBenchmarkTest {
+
+    private static final String LOG_TAG = BookStorageBenchmarkTest.class.getSimpleName();
+    private static final String TEST_DATABASE_NAME = "inventory_storage_benchmark.db";
+
+    private static final int ROW_COUNT = 20000;
+    private static final int READ_COUNT = 2000;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @Test
+    public void defaultProfile_usesWriteAheadLog() {
+        BookDbHelper helper = new BookDbHelper(mContext, TEST_DATABASE_NAME, BookStorageProfile.DEFAULT);
+        try {
+            assertEquals("wal", DatabaseUtils.stringForQuery(helper.getReadableDatabase(),
+                    "PRAGMA journal_mode", null));
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void readLatencyUnderConcurrentWrites() throws InterruptedException {
+        long[] before = measure(BookStorageProfile.SQLITE_DEFAULTS);
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+        long[] after = measure(BookStorageProfile.DEFAULT);
+
+        Log.i(LOG_TAG, "page read under writes, sqlite defaults: median " + before[0] + " us, p99 " + before[1] + " us");
+        Log.i(LOG_TAG, "page read under writes, default profile: median " + after[0] + " us, p99 " + after[1] + " us");
+    }
+
+    // median and 99th percentile of a 50 row page read while sales are written
+    private long[] measure(BookStorageProfile profile) throws InterruptedException {
+
+        final BookDbHelper helper = new BookDbHelper(mContext, TEST_DATABASE_NAME, profile);
+        fill(helper.getWritableDatabase());
+
+        // writer thread sells a random book in its own transaction until the reads are done
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase db = helper.getWritableDatabase();
+                SQLiteStatement sell = db.compileStatement(
+                        "UPDATE books SET quantity = quantity - 1 WHERE _id = ? AND quantity >= 1");
+                Random random = new Random(1);
+                while (running.get()) {
+                    sell.bindLong(1, 1 + random.nextInt(ROW_COUNT));
+                    sell.executeUpdateDelete();
+                }
+                sell.close();
+            }
+        });
+        writer.start();
+
+        SQLiteDatabase db = helper.getReadableDatabase();
+        Random random = new Random(2);
+        long[] micros = new long[READ_COUNT];
+        for (int i = 0; i < READ_COUNT; i++) {
+            long start = System.nanoTime();
+            Cursor cursor = db.rawQuery("SELECT _id, name, price, quantity FROM books WHERE _id > ? ORDER BY _id LIMIT 50",
+                    new String[] {String.valueOf(random.nextInt(ROW_COUNT))});
+            try {
+                cursor.getCount();
+            } finally {
+                cursor.close();
+            }
+            micros[i] = (System.nanoTime() - start) / 1000;
+        }
+
+        running.set(false);
+        writer.join();
+        helper.close();
+
+        Arrays.sort(micros);
+        return new long[] {micros[READ_COUNT / 2], micros[READ_COUNT * 99 / 100]};
+    }
+
+    private static void fill(SQLiteDatabase db) {
+        SQLiteStatement insert = db.compileStatement(
+                "INSERT INTO books (name, author, price, quantity) VALUES (?,?,?,?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ROW_COUNT; i++) {
+                insert.bindString(1, "Book " + i);
+                insert.bindString(2, "Author " + (i % 100));
+                insert.bindLong(3, 999);
+                insert.bindLong(4, 1000);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+}
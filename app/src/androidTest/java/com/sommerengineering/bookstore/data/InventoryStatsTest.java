@@ -0,0 +1,133 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.sommerengineering.bookstore.data.BookContract.StatsEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+// the trigger maintained inventory summary must always equal a full recompute over the books table
+@RunWith(AndroidJUnit4.class)
+public class InventoryStatsTest {
+
+    private static final String TEST_DATABASE_NAME = "inventory_stats_test.db";
+
+    private static final int OPERATIONS = 5000;
+
+    private Context mContext;
+    private BookDbHelper mHelper;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+        mHelper = new BookDbHelper(mContext, TEST_DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @Test
+    public void emptyTable_hasZeroSummary() {
+        assertArrayEquals(new long[] {0, 0, 0, 0}, triggered(mHelper.getReadableDatabase()));
+    }
+
+    @Test
+    public void randomWrites_matchFullRecompute() {
+
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement("INSERT INTO books (name, price, quantity) VALUES (?,?,?)");
+        Random random = new Random(7);
+        long lastId = 0;
+
+        for (int i = 0; i < OPERATIONS; i++) {
+
+            long id = 1 + random.nextInt((int) lastId + 1);
+            switch (random.nextInt(6)) {
+
+                case 0:
+                case 1:
+                    insert.bindString(1, "Book " + i);
+                    insert.bindLong(2, random.nextInt(5000));
+                    insert.bindLong(3, random.nextInt(4));
+                    lastId = insert.executeInsert();
+                    break;
+
+                // sale, including the ones that take a book out of stock
+                case 2:
+                    db.execSQL("UPDATE books SET quantity = quantity - 1 WHERE _id = ? AND quantity >= 1",
+                            new Object[] {id});
+                    break;
+
+                // price and quantity edit
+                case 3:
+                    db.execSQL("UPDATE books SET price = ?, quantity = ? WHERE _id = ?",
+                            new Object[] {random.nextInt(5000), random.nextInt(4), id});
+                    break;
+
+                // title edit, the summary must not change
+                case 4:
+                    db.execSQL("UPDATE books SET name = ? WHERE _id = ?", new Object[] {"Renamed " + i, id});
+                    break;
+
+                case 5:
+                    db.execSQL("DELETE FROM books WHERE _id = ?", new Object[] {id});
+                    break;
+            }
+
+            if (i % 500 == 0) {
+                assertArrayEquals("after operation " + i, recomputed(db), triggered(db));
+            }
+        }
+        insert.close();
+
+        assertArrayEquals(recomputed(db), triggered(db));
+
+        // a table-wide update and delete touch every row in one statement
+        db.execSQL("UPDATE books SET quantity = quantity + 1");
+        assertArrayEquals(recomputed(db), triggered(db));
+        db.execSQL("DELETE FROM books");
+        assertArrayEquals(new long[] {0, 0, 0, 0}, triggered(db));
+    }
+
+    // the summary row maintained by the triggers
+    private static long[] triggered(SQLiteDatabase db) {
+        return readRow(db.query(StatsEntry.TABLE_NAME, new String[] {StatsEntry.COLUMN_TITLE_COUNT,
+                StatsEntry.COLUMN_TOTAL_UNITS, StatsEntry.COLUMN_STOCK_VALUE,
+                StatsEntry.COLUMN_OUT_OF_STOCK_COUNT}, null, null, null, null, null));
+    }
+
+    // the same values from a full scan
+    private static long[] recomputed(SQLiteDatabase db) {
+        return readRow(db.rawQuery(BookDbHelper.SQL_RECOMPUTE_STATS, null));
+    }
+
+    private static long[] readRow(Cursor cursor) {
+        try {
+            assertTrue(cursor.moveToFirst());
+            long[] values = new long[cursor.getColumnCount()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = cursor.getLong(i);
+            }
+            return values;
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,632 @@
+package com.sommerengineering.bookstore;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+import android.view.LayoutInflater;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.sommerengineering.bookstore.data.BookContract;
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookWriteQueue;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// recycler view adapter that loads the books table one page at a time instead of holding one cursor for the whole table
+// pages near the visible position are fetched ahead of the scroll, pages far away are dropped
+// so memory stays flat no matter how many books are in the catalog
+// when the table changes, the pages held in memory are reloaded and diffed against the old rows off the main thread,
+// and only the rows that actually changed are rebound
+public class BookPagingAdapter extends RecyclerView.Adapter<BookPagingAdapter.BookViewHolder> {
+
+    // number of rows in each page
+    static final int PAGE_SIZE = 50;
+
+    // pages on each side of the visible page that are loaded ahead of the scroll position
+    private static final int PREFETCH_PAGES = 1;
+
+    // pages further than this from the visible page are dropped
+    private static final int RETAIN_PAGES = 3;
+
+    // columns needed to bind a list item
+    private static final String[] PROJECTION = {BookEntry._ID, BookEntry.COLUMN_BOOK_NAME,
+            BookEntry.COLUMN_BOOK_PRICE, BookEntry.COLUMN_BOOK_QUANTITY};
+
+    // called when a loaded list item is clicked, with the row values already held by its page
+    interface OnBookClickListener {
+        void onBookClick(long id, String name, long price, int quantity);
+    }
+
+    private final Context mContext;
+    private final ContentResolver mContentResolver;
+    private final OnBookClickListener mClickListener;
+
+    // formats prices and quantities into the char arrays of each view holder
+    private final BookRowFormatter mFormatter = new BookRowFormatter(Locale.getDefault());
+
+    // one click handler for every list item and sale button, so binding a row never creates a listener
+    private final View.OnClickListener mClickHandler = new View.OnClickListener() {
+
+        @Override
+        public void onClick(View v) {
+
+            // the page holding this row has not loaded yet
+            long id = ((BookViewHolder) v.getTag()).getItemId();
+            if (id < 0) {
+                return;
+            }
+
+            // the sale button sells a copy, anywhere else on the list item opens the editor activity in "edit mode"
+            // with the row values on screen, so the editor does not have to wait for its own query to show them
+            if (v.getId() == R.id.sale_button) {
+                sellBook(id);
+                return;
+            }
+            int position = ((BookViewHolder) v.getTag()).getAdapterPosition();
+            BookPage page = mPages.get(position / PAGE_SIZE);
+            int row = position % PAGE_SIZE;
+            if (position != RecyclerView.NO_POSITION && page != null && row < page.size && page.ids[row] == id) {
+                mClickListener.onBookClick(id, page.names[row], page.prices[row], page.quantities[row]);
+            }
+        }
+    };
+
+    // one touch handler for every list item, a finger down on a row reads the full row into the provider row cache
+    // by the time the finger is lifted and the editor starts its loader, the row is usually already in memory
+    private final View.OnTouchListener mTouchHandler = new View.OnTouchListener() {
+
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                long id = ((BookViewHolder) v.getTag()).getItemId();
+                if (id >= 0) {
+                    prefetchBook(id);
+                }
+            }
+
+            // the touch still goes on to become a click or a scroll
+            return false;
+        }
+    };
+
+    // pages are queried and diffed on a single background thread and delivered on the main thread
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // loaded pages keyed by page index, replaced as a whole when a refresh is applied
+    private SparseArray<BookPage> mPages = new SparseArray<>();
+
+    // page indices with a query in flight
+    private final SparseBooleanArray mPendingPages = new SparseBooleanArray();
+
+    // number of rows the recycler view currently knows about
+    private int mCount;
+
+    // incremented every time the table changes, results loaded for an older generation are discarded
+    private int mGeneration;
+
+    // page containing the most recently bound position
+    private int mVisiblePage;
+
+    // books URI with the sort and filter parameters of the catalog, the paging parameters are added per query
+    private Uri mQueryUri = BookEntry.CONTENT_URI;
+
+    // true if the rows are in the default _ID order, so a page can seek past the last ID of the page before it
+    private boolean mKeysetPaging = true;
+
+    BookPagingAdapter(Context context, OnBookClickListener clickListener) {
+        mContext = context;
+        mContentResolver = context.getContentResolver();
+        mClickListener = clickListener;
+
+        // row IDs let the recycler view keep each view attached to its book across changes
+        setHasStableIds(true);
+    }
+
+    // immutable copy of the rows in a single page
+    // column indices are resolved once per cursor and the rows are copied out right away
+    static final class BookPage {
+
+        final long[] ids;
+        final String[] names;
+        final long[] prices;
+        final int[] quantities;
+        final int size;
+
+        // copy up to maxRows rows, starting at the row after the current cursor position
+        BookPage(Cursor cursor, int maxRows) {
+
+            size = Math.max(0, Math.min(maxRows, cursor.getCount() - cursor.getPosition() - 1));
+            ids = new long[size];
+            names = new String[size];
+            prices = new long[size];
+            quantities = new int[size];
+
+            int idIndex = cursor.getColumnIndex(BookEntry._ID);
+            int nameIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_NAME);
+            int priceIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_PRICE);
+            int quantityIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_QUANTITY);
+
+            for (int i = 0; i < size && cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(idIndex);
+                names[i] = cursor.getString(nameIndex);
+                prices[i] = cursor.getLong(priceIndex);
+                quantities[i] = cursor.getInt(quantityIndex);
+            }
+        }
+
+        // ID of the last row, the keyset for the following page
+        long lastId() {
+            return ids[size - 1];
+        }
+
+        // true if the row shows the same book with the same values
+        boolean sameContents(int row, BookPage other, int otherRow) {
+            return ids[row] == other.ids[otherRow]
+                    && TextUtils.equals(names[row], other.names[otherRow])
+                    && prices[row] == other.prices[otherRow]
+                    && quantities[row] == other.quantities[otherRow];
+        }
+    }
+
+    // views of a single list item, looked up once when the item is created
+    // each holder owns the char arrays its price and quantity text views display, which are rewritten on every bind
+    static final class BookViewHolder extends RecyclerView.ViewHolder {
+
+        final TextView nameTextView;
+        final TextView priceTextView;
+        final TextView quantityTextView;
+        final Button saleButton;
+        final char[] priceChars = new char[BookRowFormatter.PRICE_CAPACITY];
+        final char[] quantityChars = new char[BookRowFormatter.QUANTITY_CAPACITY];
+
+        BookViewHolder(View itemView) {
+            super(itemView);
+            nameTextView = (TextView) itemView.findViewById(R.id.name);
+            priceTextView = (TextView) itemView.findViewById(R.id.price);
+            quantityTextView = (TextView) itemView.findViewById(R.id.quantity);
+            saleButton = (Button) itemView.findViewById(R.id.sale_button);
+        }
+    }
+
+    // the rows of a contiguous range of pages, used as one side of a diff
+    // positions past the loaded rows of a page are placeholders that never match a book
+    private static final class Window {
+
+        final SparseArray<BookPage> pages;
+        final int firstPage;
+        final int size;
+
+        Window(SparseArray<BookPage> pages, int firstPage, int size) {
+            this.pages = pages;
+            this.firstPage = firstPage;
+            this.size = size;
+        }
+
+        BookPage pageAt(int position) {
+            BookPage page = pages.get(firstPage + position / PAGE_SIZE);
+            return page != null && position % PAGE_SIZE < page.size ? page : null;
+        }
+    }
+
+    // compares the old and new rows of a window
+    // moves are not detected, a row that changes place in a sorted catalog is removed and inserted
+    private static final class WindowDiffCallback extends DiffUtil.Callback {
+
+        private final Window mOld;
+        private final Window mNew;
+
+        WindowDiffCallback(Window oldWindow, Window newWindow) {
+            mOld = oldWindow;
+            mNew = newWindow;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.size;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            BookPage oldPage = mOld.pageAt(oldPosition);
+            BookPage newPage = mNew.pageAt(newPosition);
+            return oldPage != null && newPage != null
+                    && oldPage.ids[oldPosition % PAGE_SIZE] == newPage.ids[newPosition % PAGE_SIZE];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return mOld.pageAt(oldPosition).sameContents(oldPosition % PAGE_SIZE,
+                    mNew.pageAt(newPosition), newPosition % PAGE_SIZE);
+        }
+    }
+
+    // called when the total row count is reloaded, which happens after every change to the table
+    // the pages held in memory are reloaded in one query and diffed against the rows on screen in the background,
+    // the old rows stay on screen until the diff is applied so nothing flashes and the scroll position is kept
+    void swapCount(final int count) {
+
+        mGeneration++;
+        final int generation = mGeneration;
+
+        // an empty table, or an adapter that has been shut down, has no window to load
+        // every row is dropped right away, this is also the count of zero sent when the loader is reset
+        if (count == 0 || mExecutor.isShutdown()) {
+            mPages = new SparseArray<>();
+            mPendingPages.clear();
+            int oldCount = mCount;
+            mCount = 0;
+            notifyTailChange(0, oldCount, 0);
+            return;
+        }
+
+        // the window spans every page held or loading near the visible page
+        // pages are always aligned so positions map to pages the same way in the old and new rows
+        evictDistantPages();
+        int firstPage = Integer.MAX_VALUE;
+        int lastPage = -1;
+        for (int i = 0; i < mPages.size(); i++) {
+            firstPage = Math.min(firstPage, mPages.keyAt(i));
+            lastPage = Math.max(lastPage, mPages.keyAt(i));
+        }
+        for (int i = 0; i < mPendingPages.size(); i++) {
+            if (Math.abs(mPendingPages.keyAt(i) - mVisiblePage) <= RETAIN_PAGES) {
+                firstPage = Math.min(firstPage, mPendingPages.keyAt(i));
+                lastPage = Math.max(lastPage, mPendingPages.keyAt(i));
+            }
+        }
+
+        // queries in flight belong to the old generation, the window query replaces them
+        mPendingPages.clear();
+
+        // nothing is held in memory, only the number of rows changes
+        if (lastPage < 0) {
+            int oldCount = mCount;
+            mCount = count;
+            notifyTailChange(0, oldCount, count);
+            return;
+        }
+
+        final int windowFirstPage = firstPage;
+        final int windowStart = firstPage * PAGE_SIZE;
+        final int windowRows = (lastPage - firstPage + 1) * PAGE_SIZE;
+        final Window oldWindow = new Window(mPages.clone(), firstPage,
+                Math.max(0, Math.min(windowStart + windowRows, mCount) - windowStart));
+
+        final Uri windowUri = mQueryUri.buildUpon()
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_LIMIT, String.valueOf(windowRows))
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_OFFSET, String.valueOf(windowStart))
+                .build();
+
+        mExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                // query the whole window and split it into pages
+                final SparseArray<BookPage> pages = new SparseArray<>();
+                int rows = 0;
+                Cursor cursor = mContentResolver.query(windowUri, PROJECTION, null, null, null);
+                if (cursor != null) {
+                    try {
+                        // an empty window, after the rows of every loaded page are deleted, has no pages at all
+                        for (int pageIndex = windowFirstPage; cursor.getPosition() < cursor.getCount() - 1;
+                             pageIndex++) {
+                            BookPage page = new BookPage(cursor, PAGE_SIZE);
+                            pages.put(pageIndex, page);
+                            rows += page.size;
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+
+                // the count was read in another query, a row added in between must still have a position
+                // an empty window says nothing about the rows before it, so then the count is taken as it is
+                final int newCount = rows == 0 ? count : Math.max(count, windowStart + rows);
+                final Window newWindow = new Window(pages, windowFirstPage, rows);
+                final DiffUtil.DiffResult diff =
+                        DiffUtil.calculateDiff(new WindowDiffCallback(oldWindow, newWindow), false);
+
+                // hand the result to the main thread
+                mMainHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        // the table changed again while this window was loading, a newer refresh replaces it
+                        if (generation != mGeneration) {
+                            return;
+                        }
+
+                        mPages = pages;
+                        int oldCount = mCount;
+                        mCount = newCount;
+
+                        // changes inside the window, shifted to adapter positions
+                        diff.dispatchUpdatesTo(new ListUpdateCallback() {
+
+                            @Override
+                            public void onInserted(int position, int count) {
+                                notifyItemRangeInserted(windowStart + position, count);
+                            }
+
+                            @Override
+                            public void onRemoved(int position, int count) {
+                                notifyItemRangeRemoved(windowStart + position, count);
+                            }
+
+                            @Override
+                            public void onMoved(int fromPosition, int toPosition) {
+                                notifyItemMoved(windowStart + fromPosition, windowStart + toPosition);
+                            }
+
+                            @Override
+                            public void onChanged(int position, int count, Object payload) {
+                                notifyItemRangeChanged(windowStart + position, count, payload);
+                            }
+                        });
+
+                        // rows after the window are not loaded, only their number changes
+                        notifyTailChange(windowStart + newWindow.size,
+                                oldCount - windowStart - oldWindow.size, newCount - windowStart - newWindow.size);
+                    }
+                });
+            }
+        });
+    }
+
+    // show the books of another sort order or filter, given as a books URI with those query parameters
+    // every row is dropped, the list stays empty until the row count for the new query arrives in swapCount()
+    void setQueryUri(Uri queryUri) {
+
+        mQueryUri = queryUri;
+        mKeysetPaging = queryUri.getQueryParameter(BookContract.QUERY_PARAMETER_SORT) == null &&
+                queryUri.getQueryParameter(BookContract.QUERY_PARAMETER_ORDER) == null;
+
+        // results loading for the old query are discarded
+        mGeneration++;
+        mPages = new SparseArray<>();
+        mPendingPages.clear();
+        mVisiblePage = 0;
+        mCount = 0;
+        notifyDataSetChanged();
+    }
+
+    // the unloaded rows starting at tailStart grew or shrank from oldTail to newTail rows
+    private void notifyTailChange(int tailStart, int oldTail, int newTail) {
+        if (newTail > oldTail) {
+            notifyItemRangeInserted(tailStart + oldTail, newTail - oldTail);
+        } else if (newTail < oldTail) {
+            notifyItemRangeRemoved(tailStart + newTail, oldTail - newTail);
+        }
+    }
+
+    // stop loading pages, called when the activity is destroyed
+    // the loader is reset and late binds or touches can still arrive after this, so nothing is submitted once it ran
+    void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Override
+    public int getItemCount() {
+        return mCount;
+    }
+
+    // return the row ID, or a negative ID unique to the position if the page holding it is not loaded yet
+    @Override
+    public long getItemId(int position) {
+        BookPage page = mPages.get(position / PAGE_SIZE);
+        int row = position % PAGE_SIZE;
+        return page == null || row >= page.size ? -1 - position : page.ids[row];
+    }
+
+    @Override
+    public BookViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+
+        View view = LayoutInflater.from(mContext).inflate(R.layout.list_item, parent, false);
+        BookViewHolder holder = new BookViewHolder(view);
+
+        // the shared click handler finds the holder, and through it the current row ID, in the view tag
+        view.setTag(holder);
+        holder.saleButton.setTag(holder);
+        view.setOnClickListener(mClickHandler);
+        view.setOnTouchListener(mTouchHandler);
+        holder.saleButton.setOnClickListener(mClickHandler);
+
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(BookViewHolder holder, int position) {
+
+        // make sure this page and its neighbours are loaded or on the way
+        int pageIndex = position / PAGE_SIZE;
+        onPageVisible(pageIndex);
+
+        // bind the row if its page is loaded, otherwise a blank placeholder until the page arrives
+        BookPage page = mPages.get(pageIndex);
+        int row = position % PAGE_SIZE;
+        if (page != null && row < page.size) {
+            bindView(holder, page.names[row], page.prices[row], page.quantities[row]);
+        } else {
+            bindPlaceholder(holder);
+        }
+    }
+
+    // load the visible page and its neighbours
+    private void onPageVisible(int pageIndex) {
+
+        mVisiblePage = pageIndex;
+
+        int lastPage = (mCount - 1) / PAGE_SIZE;
+        for (int i = Math.max(0, pageIndex - PREFETCH_PAGES); i <= Math.min(lastPage, pageIndex + PREFETCH_PAGES); i++) {
+            loadPage(i);
+        }
+    }
+
+    // drop pages that are far from the visible page
+    private void evictDistantPages() {
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            if (Math.abs(mPages.keyAt(i) - mVisiblePage) > RETAIN_PAGES) {
+                mPages.removeAt(i);
+            }
+        }
+    }
+
+    // start a background query for the page unless it is already loaded or loading
+    private void loadPage(final int pageIndex) {
+
+        if (mExecutor.isShutdown() || mPendingPages.get(pageIndex) || mPages.get(pageIndex) != null) {
+            return;
+        }
+        mPendingPages.put(pageIndex, true);
+
+        // seek from the last row of the previous page when it is loaded and current, otherwise use an offset
+        Uri.Builder builder = mQueryUri.buildUpon()
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_LIMIT, String.valueOf(PAGE_SIZE));
+        BookPage previousPage = mPages.get(pageIndex - 1);
+        if (mKeysetPaging && previousPage != null && previousPage.size > 0 && !mPendingPages.get(pageIndex - 1)) {
+            builder.appendQueryParameter(BookContract.QUERY_PARAMETER_AFTER_ID,
+                    String.valueOf(previousPage.lastId()));
+        } else {
+            builder.appendQueryParameter(BookContract.QUERY_PARAMETER_OFFSET,
+                    String.valueOf(pageIndex * PAGE_SIZE));
+        }
+        final Uri pageUri = builder.build();
+        final int generation = mGeneration;
+
+        mExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                // query and copy the page off the main thread
+                Cursor cursor = mContentResolver.query(pageUri, PROJECTION, null, null, null);
+                BookPage loadedPage = null;
+                if (cursor != null) {
+                    try {
+                        loadedPage = new BookPage(cursor, PAGE_SIZE);
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                final BookPage page = loadedPage;
+
+                // hand the page to the main thread
+                mMainHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        // the table changed while this page was loading, a newer load replaces it
+                        if (generation != mGeneration) {
+                            return;
+                        }
+
+                        mPendingPages.delete(pageIndex);
+                        if (page == null) {
+                            return;
+                        }
+                        mPages.put(pageIndex, page);
+                        evictDistantPages();
+
+                        // rebind only the placeholders of this page
+                        int pageStart = pageIndex * PAGE_SIZE;
+                        int rows = Math.min(PAGE_SIZE, mCount - pageStart);
+                        if (rows > 0) {
+                            notifyItemRangeChanged(pageStart, rows);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // read the full row of a book on the background thread, which leaves it in the provider row cache
+    // a touch that turns into a scroll also reads a row, which costs a single primary key lookup
+    private void prefetchBook(long id) {
+
+        if (mExecutor.isShutdown()) {
+            return;
+        }
+        final Uri bookUri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
+        mExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                Cursor cursor = mContentResolver.query(bookUri, null, null, null, null);
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        });
+    }
+
+    // blank list item shown while its page is loading
+    private void bindPlaceholder(BookViewHolder holder) {
+        holder.nameTextView.setText(null);
+        holder.priceTextView.setText(null);
+        holder.quantityTextView.setText(null);
+    }
+
+    // sets the row data on the list item
+    // the name is the string already held by the page, price and quantity are written into the holder's arrays
+    private void bindView(BookViewHolder holder, String name, long price, int quantity) {
+        holder.nameTextView.setText(name);
+        holder.priceTextView.setText(holder.priceChars, 0,
+                mFormatter.formatPrice(price, holder.priceChars));
+        holder.quantityTextView.setText(holder.quantityChars, 0,
+                mFormatter.formatQuantity(quantity, holder.quantityChars));
+    }
+
+    // sell a single copy, the provider checks and decrements the stock in one statement
+    // the sale runs on the background write queue, and quick taps share a single commit
+    // the new quantity arrives through the change notification, which rebinds only this row
+    private void sellBook(long rowID) {
+
+        BookWriteQueue.getInstance(mContext).sell(rowID, 1, new BookWriteQueue.Callback() {
+
+            @Override
+            public void onWriteComplete(BookWriteQueue.Result result) {
+
+                // zero is the lowest possible quantity
+                Bundle sale = result.extras;
+                if (sale == null || !sale.getBoolean(BookContract.KEY_SOLD)) {
+
+                    // display toast message
+                    String toastMessage = mContext.getString(R.string.toast_quantity_at_zero);
+                    Toast.makeText(mContext, toastMessage, Toast.LENGTH_SHORT).show();
+
+                // this sale took the book down to its reorder threshold, later sales stay quiet
+                } else if (sale.getBoolean(BookContract.KEY_LOW_STOCK)) {
+                    String toastMessage = mContext.getString(R.string.toast_low_stock);
+                    Toast.makeText(mContext, toastMessage, Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,37 @@
+package com.sommerengineering.bookstore;
+
+import com.sommerengineering.bookstore.data.Money;
+
+import java.util.Locale;
+
+// writes the price and quantity of a list item into char arrays owned by the view holder
+// the arrays are passed to TextView.setText(char[], int, int), so binding a row builds no strings
+// a TextView keeps a reference to the array it was given, so every text view needs its own array
+final class BookRowFormatter {
+
+    // currency symbol followed by the longest amount
+    static final int PRICE_CAPACITY = 1 + Money.Formatter.MAX_LENGTH;
+
+    // largest quantity is "-" followed by 10 digits
+    static final int QUANTITY_CAPACITY = 12;
+
+    private static final char CURRENCY_SYMBOL = '$';
+
+    private final Money.Formatter mMoneyFormatter;
+
+    BookRowFormatter(Locale locale) {
+        mMoneyFormatter = new Money.Formatter(locale);
+    }
+
+    // write a price in cents as "$7.99", return the number of chars written
+    int formatPrice(long cents, char[] dest) {
+        dest[0] = CURRENCY_SYMBOL;
+        return mMoneyFormatter.format(cents, dest, 1);
+    }
+
+    // write a quantity as plain digits, return the number of chars written
+    int formatQuantity(int quantity, char[] dest) {
+        return mMoneyFormatter.formatInteger(quantity, dest, 0);
+    }
+
+}
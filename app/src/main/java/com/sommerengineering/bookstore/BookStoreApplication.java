@@ -0,0 +1,46 @@
+package com.sommerengineering.bookstore;
+
+import android.app.Application;
+import android.os.StrictMode;
+
+import com.sommerengineering.bookstore.data.BookWriteQueue;
+
+// application entry point, onCreate() runs before any activity but after the content provider is created
+// the provider's onCreate() only builds its helpers and opens nothing, so it does not rely on anything set up here
+public class BookStoreApplication extends Application {
+
+    @Override
+    public void onCreate() {
+
+        // defer to super class for initialization
+        super.onCreate();
+
+        // in debug builds any disk access on the main thread crashes the app
+        // every database read and write belongs on a loader or the background write queue
+        if (BuildConfig.DEBUG) {
+
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .penaltyDeath()
+                    .build());
+
+            // cursors and databases that are never closed
+            StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                    .detectLeakedSqlLiteObjects()
+                    .detectLeakedClosableObjects()
+                    .penaltyLog()
+                    .build());
+        }
+    }
+
+    // called when every activity is hidden and again as memory runs low, either way the process may soon be killed
+    // commit the buffered sales now so none are lost with it
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        BookWriteQueue.getInstance(this).flush();
+    }
+
+}
@@ -12,28 +12,55 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SimpleItemAnimator;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.sommerengineering.bookstore.data.BookContract;
 import com.sommerengineering.bookstore.data.BookDbHelper;
 import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookWriteQueue;
+import com.sommerengineering.bookstore.data.Money;
+
+import java.util.Locale;
 
 public class CatalogActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
 
     // integer ID of cursor loader
     private static final int BOOK_LOADER = 0;
 
-    // reference to cursor adapter that populates list view in activity_catalog
-    BookCursorAdapter mAdapter;
+    // reference to paging adapter that populates recycler view in activity_catalog
+    BookPagingAdapter mAdapter;
+
+    // empty state view, the recycler view has no built-in empty view
+    private View mEmptyView;
+
+    // reference to recycler view in activity_catalog, scrolled back to the top when the sort or filter changes
+    private RecyclerView mRecyclerView;
+
+    // keys for the sort and filters in the saved instance state
+    private static final String STATE_SORT_ITEM_ID = "sort_item_id";
+    private static final String STATE_MIN_PRICE = "min_price";
+    private static final String STATE_MAX_PRICE = "max_price";
+    private static final String STATE_QUANTITY_BELOW = "quantity_below";
+
+    // checked item of the sort menu
+    private int mSortItemId = R.id.sort_date_added;
+
+    // range filters, null if not applied, prices are in cents
+    private Long mMinPrice;
+    private Long mMaxPrice;
+    private Integer mQuantityBelow;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -59,44 +86,84 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
 
         });
 
+        // restore the sort and filters, the loader query depends on them
+        if (savedInstanceState != null) {
+            mSortItemId = savedInstanceState.getInt(STATE_SORT_ITEM_ID, mSortItemId);
+            if (savedInstanceState.containsKey(STATE_MIN_PRICE)) {
+                mMinPrice = savedInstanceState.getLong(STATE_MIN_PRICE);
+            }
+            if (savedInstanceState.containsKey(STATE_MAX_PRICE)) {
+                mMaxPrice = savedInstanceState.getLong(STATE_MAX_PRICE);
+            }
+            if (savedInstanceState.containsKey(STATE_QUANTITY_BELOW)) {
+                mQuantityBelow = savedInstanceState.getInt(STATE_QUANTITY_BELOW);
+            }
+        }
+
         // initialize loader
         getLoaderManager().initLoader(BOOK_LOADER, null, this);
 
-        // get reference to list view in activity_catalog
-        ListView listView = (ListView) findViewById(R.id.list_view);
+        // get reference to recycler view in activity_catalog
+        mRecyclerView = (RecyclerView) findViewById(R.id.list_view);
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        mRecyclerView.setHasFixedSize(true);
 
-        // get view reference for empty state and set it on the list view
-        View emptyView = findViewById(R.id.empty_view);
-        listView.setEmptyView(emptyView);
+        // rows changed in place are rebound without the default cross-fade, so a sale does not flicker
+        ((SimpleItemAnimator) mRecyclerView.getItemAnimator()).setSupportsChangeAnimations(false);
 
-        // create new cursor adapter and set it on the list view
-        // the cursor input parameter is null because a loader supplies cursors to the adapter
-        mAdapter = new BookCursorAdapter(this, null);
-        listView.setAdapter(mAdapter);
+        // get view reference for empty state, shown when the table has no rows
+        mEmptyView = findViewById(R.id.empty_view);
 
-        // setup click listener for items in the list view
-        listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // create new paging adapter and set it on the recycler view
+        // the adapter queries its own pages, the loader only supplies the total row count
+        mAdapter = new BookPagingAdapter(this, new BookPagingAdapter.OnBookClickListener() {
 
-            // clicking an item in the list view opens the editor activity in "edit mode" for that book
+            // clicking an item in the list opens the editor activity in "edit mode" for that book
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
+            public void onBookClick(long id, String name, long price, int quantity) {
 
                 // explicit intent to open editor activity
                 Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
+                intent.putExtra(EditorActivity.EXTRA_OPEN_TIME, SystemClock.uptimeMillis());
 
                 // include the content URI for the selected book with the intent
                 Uri selectedBookURI = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
                 intent.setData(selectedBookURI);
 
+                // the row values on screen, shown by the editor before its loader returns
+                Bundle snapshot = new Bundle();
+                snapshot.putString(BookEntry.COLUMN_BOOK_NAME, name);
+                snapshot.putLong(BookEntry.COLUMN_BOOK_PRICE, price);
+                snapshot.putInt(BookEntry.COLUMN_BOOK_QUANTITY, quantity);
+                intent.putExtra(EditorActivity.EXTRA_ROW_SNAPSHOT, snapshot);
+
                 // start editor activity in "edit mode"
                 startActivity(intent);
 
             }
 
         });
+        mAdapter.setQueryUri(buildCatalogUri(true));
+        mRecyclerView.setAdapter(mAdapter);
 
     }
 
+    // keep the sort and filters across a configuration change or process death
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(STATE_SORT_ITEM_ID, mSortItemId);
+        if (mMinPrice != null) {
+            outState.putLong(STATE_MIN_PRICE, mMinPrice);
+        }
+        if (mMaxPrice != null) {
+            outState.putLong(STATE_MAX_PRICE, mMaxPrice);
+        }
+        if (mQuantityBelow != null) {
+            outState.putInt(STATE_QUANTITY_BELOW, mQuantityBelow);
+        }
+    }
+
     // create an overflow menu in the app bar, defaults to top right
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
@@ -106,6 +173,17 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         return true;
     }
 
+    // check the current sort order, the menu is inflated with the default one checked
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        super.onPrepareOptionsMenu(menu);
+        MenuItem sortItem = menu.findItem(mSortItemId);
+        if (sortItem != null) {
+            sortItem.setChecked(true);
+        }
+        return true;
+    }
+
     // create options within the menu
     // behaves as a listener
     @Override
@@ -125,6 +203,26 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
 
                 showDeleteConfirmationDialog();
                 return true;
+
+            // option: sort order, the provider sorts with an index so only the visible pages are read
+            case R.id.sort_date_added:
+            case R.id.sort_name:
+            case R.id.sort_author:
+            case R.id.sort_price_ascending:
+            case R.id.sort_price_descending:
+            case R.id.sort_quantity_ascending:
+            case R.id.sort_quantity_descending:
+
+                mSortItemId = item.getItemId();
+                item.setChecked(true);
+                applyQuery();
+                return true;
+
+            // option: price range and quantity filters
+            case R.id.action_filter:
+
+                showFilterDialog();
+                return true;
         }
 
         return super.onOptionsItemSelected(item);
@@ -140,15 +238,147 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         // BookEntry._ID is autoincremented
         values.put(BookEntry.COLUMN_BOOK_NAME, "The Spot");
         values.put(BookEntry.COLUMN_BOOK_AUTHOR, "David Means");
-        values.put(BookEntry.COLUMN_BOOK_PRICE, 7.99);
+        values.put(BookEntry.COLUMN_BOOK_PRICE, 799L);
         values.put(BookEntry.COLUMN_BOOK_QUANTITY, 12);
         values.put(BookEntry.COLUMN_BOOK_SUPPLIER_NAME, "Penguin Publishers");
         values.put(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE, "800-455-8234");
 
-        // perform an insert on the provider using a content resolver
-        // the correct content URI is defined as a constant in BookContract
-        getContentResolver().insert(BookEntry.CONTENT_URI, values);
+        // perform an insert on the provider through the background write queue
+        // the list refreshes from the change notification, so no result is needed
+        BookWriteQueue.getInstance(this).insert(values, null);
+
+    }
+
+    // books URI with the current filters, and the sort order if sorted is true
+    // the row count does not depend on the order, so the count query leaves it out
+    private Uri buildCatalogUri(boolean sorted) {
+
+        Uri.Builder builder = BookEntry.CONTENT_URI.buildUpon();
+
+        if (mMinPrice != null) {
+            builder.appendQueryParameter(BookContract.QUERY_PARAMETER_MIN_PRICE, String.valueOf(mMinPrice));
+        }
+        if (mMaxPrice != null) {
+            builder.appendQueryParameter(BookContract.QUERY_PARAMETER_MAX_PRICE, String.valueOf(mMaxPrice));
+        }
+        if (mQuantityBelow != null) {
+            builder.appendQueryParameter(BookContract.QUERY_PARAMETER_QUANTITY_BELOW, String.valueOf(mQuantityBelow));
+        }
+
+        if (sorted) {
+            switch (mSortItemId) {
+                case R.id.sort_name:
+                    appendSort(builder, BookContract.SORT_NAME, BookContract.ORDER_ASCENDING);
+                    break;
+                case R.id.sort_author:
+                    appendSort(builder, BookContract.SORT_AUTHOR, BookContract.ORDER_ASCENDING);
+                    break;
+                case R.id.sort_price_ascending:
+                    appendSort(builder, BookContract.SORT_PRICE, BookContract.ORDER_ASCENDING);
+                    break;
+                case R.id.sort_price_descending:
+                    appendSort(builder, BookContract.SORT_PRICE, BookContract.ORDER_DESCENDING);
+                    break;
+                case R.id.sort_quantity_ascending:
+                    appendSort(builder, BookContract.SORT_QUANTITY, BookContract.ORDER_ASCENDING);
+                    break;
+                case R.id.sort_quantity_descending:
+                    appendSort(builder, BookContract.SORT_QUANTITY, BookContract.ORDER_DESCENDING);
+                    break;
+
+                // date added is the default _ID order, which needs no parameters
+                default:
+                    break;
+            }
+        }
 
+        return builder.build();
+    }
+
+    private static void appendSort(Uri.Builder builder, String sort, String order) {
+        builder.appendQueryParameter(BookContract.QUERY_PARAMETER_SORT, sort)
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_ORDER, order);
+    }
+
+    // re-query the catalog after the sort or filters changed
+    private void applyQuery() {
+        mAdapter.setQueryUri(buildCatalogUri(true));
+        mRecyclerView.scrollToPosition(0);
+        getLoaderManager().restartLoader(BOOK_LOADER, null, this);
+    }
+
+    // create and show the filter dialog, prefilled with the current filters
+    private void showFilterDialog() {
+
+        final View dialogView = getLayoutInflater().inflate(R.layout.dialog_filter, null);
+        final EditText minPriceEditText = (EditText) dialogView.findViewById(R.id.edit_filter_min_price);
+        final EditText maxPriceEditText = (EditText) dialogView.findViewById(R.id.edit_filter_max_price);
+        final EditText quantityEditText = (EditText) dialogView.findViewById(R.id.edit_filter_quantity_below);
+
+        // prices are shown and typed in dollars
+        Money.Formatter formatter = new Money.Formatter(Locale.getDefault());
+        if (mMinPrice != null) {
+            minPriceEditText.setText(formatter.format(mMinPrice));
+        }
+        if (mMaxPrice != null) {
+            maxPriceEditText.setText(formatter.format(mMaxPrice));
+        }
+        if (mQuantityBelow != null) {
+            quantityEditText.setText(String.format(Locale.getDefault(), "%d", mQuantityBelow));
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.dialog_title_filter);
+        builder.setView(dialogView);
+
+        // positive button applies the filled in fields, a blank field is not applied
+        builder.setPositiveButton(R.string.apply, new DialogInterface.OnClickListener() {
+
+            @Override
+            public void onClick(DialogInterface dialog, int i) {
+                try {
+                    Long minPrice = parsePrice(minPriceEditText);
+                    Long maxPrice = parsePrice(maxPriceEditText);
+                    String quantityString = quantityEditText.getText().toString().trim();
+                    Integer quantityBelow = quantityString.isEmpty() ? null : Integer.parseInt(quantityString);
+                    if ((minPrice != null && minPrice < 0) || (maxPrice != null && maxPrice < 0)) {
+                        throw new NumberFormatException("Negative price");
+                    }
+                    mMinPrice = minPrice;
+                    mMaxPrice = maxPrice;
+                    mQuantityBelow = quantityBelow;
+                } catch (NumberFormatException e) {
+
+                    // display toast message and keep the current filters
+                    Toast.makeText(getApplicationContext(), R.string.toast_invalid_filter, Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                applyQuery();
+            }
+        });
+
+        // neutral button removes every filter
+        builder.setNeutralButton(R.string.clear, new DialogInterface.OnClickListener() {
+
+            @Override
+            public void onClick(DialogInterface dialog, int i) {
+                mMinPrice = null;
+                mMaxPrice = null;
+                mQuantityBelow = null;
+                applyQuery();
+            }
+        });
+
+        // negative button keeps the current filters
+        builder.setNegativeButton(R.string.cancel, null);
+
+        builder.create().show();
+    }
+
+    // price in cents typed in the field, or null if the field is blank
+    private static Long parsePrice(EditText editText) {
+        String priceString = editText.getText().toString().trim();
+        return priceString.isEmpty() ? null : Money.parse(priceString, Locale.getDefault());
     }
 
     // create and show the "delete confirmation" dialog box
@@ -191,51 +421,65 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
     // helper method called when delete button is pressed in the delete confirmation dialog
     private void deleteAllBooks() {
 
-        // perform a delete on the provider using a content resolver
-        int deletedRows = getContentResolver().delete(BookEntry.CONTENT_URI, null, null);
+        // perform a delete on the provider through the background write queue
+        BookWriteQueue.getInstance(this).delete(BookEntry.CONTENT_URI, new BookWriteQueue.Callback() {
 
-        // toast to display success (or failure) of delete action
-        String toastMessage;
+            // toast to display success (or failure) of delete action
+            @Override
+            public void onWriteComplete(BookWriteQueue.Result result) {
 
-        // row delete failed and therefore the number of deleted rows is zero
-        if (deletedRows == 0) {
-            toastMessage = getString(R.string.toast_delete_failed);
+                // row delete failed and therefore the number of deleted rows is zero
+                String toastMessage = getString(result.count == 0 ?
+                        R.string.toast_delete_failed : R.string.toast_delete_successful);
 
-        // row delete successful
-        } else {
-            toastMessage = getString(R.string.toast_delete_successful);
-        }
+                // display toast message
+                Toast toast = Toast.makeText(getApplicationContext(), toastMessage, Toast.LENGTH_SHORT);
+                toast.show();
+            }
+        });
 
-        // display toast message
-        Toast toast = Toast.makeText(getApplicationContext(), toastMessage, Toast.LENGTH_SHORT);
-        toast.show();
+    }
 
+    // stop the adapter from loading pages once the activity is gone
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mAdapter.shutdown();
     }
 
     // called by initLoader() in onCreate()
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
 
-        // define projection (column names) for query
-        String[] projection = {BookEntry._ID, BookEntry.COLUMN_BOOK_NAME, BookEntry.COLUMN_BOOK_PRICE, BookEntry.COLUMN_BOOK_QUANTITY};
+        // only the total row count is loaded here, the adapter loads the rows one page at a time
+        // the loader is still notified of every change to the table, which triggers a page refresh
+        // the count is of the filtered books, in the same query the adapter pages through
+        String[] projection = {"COUNT(*)"};
 
-        // CursorLoader requires the column projection includes the _ID column
-        return new CursorLoader(this, BookEntry.CONTENT_URI, projection, null, null, null);
+        return new CursorLoader(this, buildCatalogUri(false), projection, null, null, null);
 
     }
 
     // called by the system when a new cursor is finished being created by the loader
-    // refresh the adapter with this new cursor
+    // refresh the adapter with the new row count
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
-        mAdapter.swapCursor(cursor);
+
+        // the count query always returns a single row
+        int count = 0;
+        if (cursor != null && cursor.moveToFirst()) {
+            count = cursor.getInt(0);
+        }
+        mAdapter.swapCount(count);
+        mEmptyView.setVisibility(count == 0 ? View.VISIBLE : View.GONE);
     }
 
     // called by the system when a previously created loader is being reset
-    // therefore the cursor data is no longer valid and the adapter is cleared
+    // therefore the row count is no longer valid and the adapter is cleared
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        mAdapter.swapCursor(null);
+        mAdapter.swapCount(0);
+        mEmptyView.setVisibility(View.VISIBLE);
     }
 
-}
+}
\ No newline at end of file
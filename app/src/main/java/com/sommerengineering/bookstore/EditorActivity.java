@@ -3,6 +3,7 @@ package com.sommerengineering.bookstore;
 import android.app.AlertDialog;
 import android.app.LoaderManager;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -10,13 +11,16 @@ import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.app.NavUtils;
 import android.support.v7.app.AppCompatActivity;
 import android.text.TextUtils;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageButton;
@@ -25,11 +29,27 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookWriteQueue;
+import com.sommerengineering.bookstore.data.Money;
 
+import java.util.ArrayList;
 import java.util.Locale;
 
 public class EditorActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
 
+    // tag for log messages
+    private static final String LOG_TAG = EditorActivity.class.getSimpleName();
+
+    // optional bundle of the row values the caller already has, keyed by BookEntry column names
+    // the fields are filled from it in onCreate(), before the loader has read the row
+    public static final String EXTRA_ROW_SNAPSHOT = "row_snapshot";
+
+    // optional SystemClock.uptimeMillis() of the tap that opened the editor, the start of the open time log
+    public static final String EXTRA_OPEN_TIME = "open_time";
+
+    // key for the edited field IDs in the saved instance state
+    private static final String STATE_EDITED_FIELDS = "edited_fields";
+
     // fields to capture user input
     private EditText mNameEditText;
     private EditText mAuthorEditText;
@@ -37,6 +57,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     private EditText mQuantityEditText;
     private EditText mSupplierNameEditText;
     private EditText mSupplierPhoneEditText;
+    private EditText mReorderThresholdEditText;
     private Button mIncreaseButton;
     private Button mDecreaseButton;
     private ImageButton mCallButton;
@@ -50,11 +71,19 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     // flag for unsaved user changes when navigating away from activity
     private boolean mBookHasChanged;
 
+    // IDs of the fields the user has touched, a loaded row never overwrites them
+    private ArrayList<Integer> mEditedFields = new ArrayList<>();
+
+    // time the editor was opened, and whether the first frame with loaded fields was logged
+    private long mOpenTime;
+    private boolean mLoaderFrameLogged;
+
     // touch listener is set on a view, a touch implies the field has changed
     private View.OnTouchListener mTouchListener = new View.OnTouchListener() {
         @Override
         public boolean onTouch(View view, MotionEvent motionEvent) {
             mBookHasChanged = true;
+            markEdited(view);
             return false;
         }
     };
@@ -70,6 +99,15 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
         // get the intent which started this activity, always from catalog activity
         Intent intent = getIntent();
+        mOpenTime = intent.getLongExtra(EXTRA_OPEN_TIME, SystemClock.uptimeMillis());
+
+        // fields the user changed before a configuration change are still theirs
+        if (savedInstanceState != null) {
+            ArrayList<Integer> editedFields = savedInstanceState.getIntegerArrayList(STATE_EDITED_FIELDS);
+            if (editedFields != null) {
+                mEditedFields = editedFields;
+            }
+        }
 
         // extract the URI included with the intent
         mSelectedBookURI = intent.getData();
@@ -101,6 +139,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mQuantityEditText = (EditText) findViewById(R.id.edit_book_quantity);
         mSupplierNameEditText = (EditText) findViewById(R.id.edit_book_supplier_name);
         mSupplierPhoneEditText = (EditText) findViewById(R.id.edit_book_supplier_phone);
+        mReorderThresholdEditText = (EditText) findViewById(R.id.edit_book_reorder_threshold);
         mDecreaseButton = (Button) findViewById(R.id.decrease_button);
         mIncreaseButton = (Button) findViewById(R.id.increase_button);
         mCallButton = (ImageButton) findViewById(R.id.call_button);
@@ -112,6 +151,14 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mQuantityEditText.setOnTouchListener(mTouchListener);
         mSupplierNameEditText.setOnTouchListener(mTouchListener);
         mSupplierPhoneEditText.setOnTouchListener(mTouchListener);
+        mReorderThresholdEditText.setOnTouchListener(mTouchListener);
+
+        // show the row values handed over by the catalog right away, the loader fills in the rest
+        // after a configuration change the fields restore their own text instead
+        Bundle snapshot = intent.getBundleExtra(EXTRA_ROW_SNAPSHOT);
+        if (mSelectedBookURI != null && snapshot != null && savedInstanceState == null) {
+            bindSnapshot(snapshot);
+        }
 
         // set a listener on the quantity "+" button
         mIncreaseButton.setOnClickListener(new View.OnClickListener() {
@@ -124,6 +171,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                 int quantity = Integer.parseInt(quantityString);
 
                 quantity += 1;
+                markEdited(mQuantityEditText);
 
                 // increment the edittext value by one
                 mQuantityEditText.setText(String.format(Locale.getDefault(), "%d", quantity));
@@ -146,6 +194,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                     return;
                 }
                 quantity -= 1;
+                markEdited(mQuantityEditText);
 
                 // decrement the edittext value by one
                 mQuantityEditText.setText(String.format(Locale.getDefault(), "%d", quantity));
@@ -270,24 +319,23 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         // if the URI is null, the FAB button was pressed and the activity is in "insert mode"
         if (mSelectedBookURI != null) {
 
-            // perform a delete on the provider using a content resolver
-            int deletedRows = getContentResolver().delete(mSelectedBookURI, null, null);
+            // perform a delete on the provider through the write queue
+            // the application context outlives this activity, which finishes right away
+            final Context appContext = getApplicationContext();
+            BookWriteQueue.getInstance(this).delete(mSelectedBookURI, new BookWriteQueue.Callback() {
 
-            // toast to display success (or failure) of delete action
-            String toastMessage;
+                // toast to display success (or failure) of delete action
+                @Override
+                public void onWriteComplete(BookWriteQueue.Result result) {
 
-            // row delete failed and therefore the number of deleted rows is zero
-            if (deletedRows == 0) {
-                toastMessage = getString(R.string.toast_delete_failed);
-
-                // row delete successful
-            } else {
-                toastMessage = getString(R.string.toast_delete_successful);
-            }
+                    // row delete failed and therefore the number of deleted rows is zero
+                    String toastMessage = appContext.getString(result.count == 0 ?
+                            R.string.toast_delete_failed : R.string.toast_delete_successful);
 
-            // display toast message
-            Toast toast = Toast.makeText(getApplicationContext(), toastMessage, Toast.LENGTH_SHORT);
-            toast.show();
+                    // display toast message
+                    Toast.makeText(appContext, toastMessage, Toast.LENGTH_SHORT).show();
+                }
+            });
 
         }
 
@@ -330,6 +378,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         String quantityString = mQuantityEditText.getText().toString().trim();
         String supplierName = mSupplierNameEditText.getText().toString().trim();
         String supplierPhone = mSupplierPhoneEditText.getText().toString().trim();
+        String thresholdString = mReorderThresholdEditText.getText().toString().trim();
 
         if (TextUtils.isEmpty(name) || TextUtils.isEmpty(author) || TextUtils.isEmpty(priceString)
                 || TextUtils.isEmpty(supplierName) || TextUtils.isEmpty(supplierPhone)) {
@@ -400,13 +449,27 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         }
 
         // default values book attributes, used if user leaves field blank
-        double price = 0;
+        long price = 0;
         int quantity = 0;
 
-        // change data type of price and quantity
-        price = Double.parseDouble(priceString);
+        // change data type of price and quantity, the price is typed in dollars and stored in cents
+        try {
+            price = Money.parse(priceString, Locale.getDefault());
+        } catch (NumberFormatException e) {
+
+            // display toast message
+            String toastMessage = getString(R.string.toast_enter_price);
+            Toast toast = Toast.makeText(getApplicationContext(), toastMessage, Toast.LENGTH_SHORT);
+            toast.show();
+
+            // return to editor activity
+            return;
+        }
         quantity = Integer.parseInt(quantityString);
 
+        // a blank reorder threshold means the book never raises a low stock alert
+        int threshold = TextUtils.isEmpty(thresholdString) ? 0 : Integer.parseInt(thresholdString);
+
         // container for key : value pairs
         ContentValues values = new ContentValues();
 
@@ -417,46 +480,40 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         values.put(BookEntry.COLUMN_BOOK_QUANTITY, quantity);
         values.put(BookEntry.COLUMN_BOOK_SUPPLIER_NAME, supplierName);
         values.put(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE, supplierPhone);
+        values.put(BookEntry.COLUMN_BOOK_REORDER_THRESHOLD, threshold);
 
-        // toast to display success (or failure) of save action
-        String toastMessage;
-
-        // if the URI is null, the FAB button was pressed and the activity is in "insert mode"
-        if (mSelectedBookURI == null) {
+        // the write runs on the background write queue, the toast is shown once it commits
+        // the application context outlives this activity, which finishes right away
+        final Context appContext = getApplicationContext();
+        BookWriteQueue.Callback callback = new BookWriteQueue.Callback() {
 
-            // perform an insert on the provider using a content resolver
-            Uri newBookURI = getContentResolver().insert(BookEntry.CONTENT_URI, values);
+            // toast to display success (or failure) of save action
+            @Override
+            public void onWriteComplete(BookWriteQueue.Result result) {
 
-            // row insert failed and therefore returned insert URI is null
-            if (newBookURI == null) {
-                toastMessage = getString(R.string.toast_save_failed);
+                // row insert or update failed and therefore nothing changed
+                String toastMessage = appContext.getString(result.count == 0 ?
+                        R.string.toast_save_failed : R.string.toast_save_successful);
 
-            // row insert successful
-            } else {
-                toastMessage = getString(R.string.toast_save_successful);
+                // display toast message
+                Toast.makeText(appContext, toastMessage, Toast.LENGTH_SHORT).show();
             }
+        };
 
-        // if the URI exists, then the activity is in "edit mode" for an existing single book
-        } else {
+        // if the URI is null, the FAB button was pressed and the activity is in "insert mode"
+        if (mSelectedBookURI == null) {
 
-            // perform an update using the provider through a content resolver
-            int updatedRow = getContentResolver().update(mSelectedBookURI, values, null, null);
+            // perform an insert on the provider through the write queue
+            BookWriteQueue.getInstance(this).insert(values, callback);
 
-            // row insert failed and therefore the number of affected rows is zero
-            if (updatedRow == 0) {
-                toastMessage = getString(R.string.toast_save_failed);
+        // if the URI exists, then the activity is in "edit mode" for an existing single book
+        } else {
 
-            // row insert successful
-            } else {
-                toastMessage = getString(R.string.toast_save_successful);
-            }
+            // perform an update on the provider through the write queue
+            BookWriteQueue.getInstance(this).update(mSelectedBookURI, values, callback);
 
         }
 
-        // display toast message
-        Toast toast = Toast.makeText(getApplicationContext(), toastMessage, Toast.LENGTH_SHORT);
-        toast.show();
-
         // all user fields entered and book saved, return to catalog activity
         finish();
 
@@ -531,7 +588,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         String[] projection = {BookEntry._ID, BookEntry.COLUMN_BOOK_NAME,
                 BookEntry.COLUMN_BOOK_AUTHOR, BookEntry.COLUMN_BOOK_PRICE,
                 BookEntry.COLUMN_BOOK_QUANTITY, BookEntry.COLUMN_BOOK_SUPPLIER_NAME,
-                BookEntry.COLUMN_BOOK_SUPPLIER_PHONE};
+                BookEntry.COLUMN_BOOK_SUPPLIER_PHONE, BookEntry.COLUMN_BOOK_REORDER_THRESHOLD};
 
         // CursorLoader requires that the column projection includes the _ID column
         return new CursorLoader(this, mSelectedBookURI, projection, null, null, null);
@@ -557,25 +614,100 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             int quantityIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_QUANTITY);
             int supplierNameIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_SUPPLIER_NAME);
             int supplierPhoneIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE);
+            int thresholdIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_REORDER_THRESHOLD);
 
             // get each value at each column index
             String name = cursor.getString(nameIndex);
             String author = cursor.getString(authorIndex);
-            float price = cursor.getFloat(priceIndex);
+            long price = cursor.getLong(priceIndex);
             int quantity = cursor.getInt(quantityIndex);
             String supplierName = cursor.getString(supplierNameIndex);
             String supplierPhone= cursor.getString(supplierPhoneIndex);
+            int threshold = cursor.getInt(thresholdIndex);
+
+            // set the proper values in each user input field the user has not changed
+            // the row is loaded again after every change to it, so this also runs while the user is editing
+            setLoadedText(mNameEditText, name);
+            setLoadedText(mAuthorEditText, author);
+            setLoadedText(mPriceEditText, new Money.Formatter(Locale.getDefault()).format(price));
+            setLoadedText(mQuantityEditText, String.format(Locale.getDefault(), "%d", quantity));
+            setLoadedText(mSupplierNameEditText, supplierName);
+            setLoadedText(mSupplierPhoneEditText, supplierPhone);
+
+            // a threshold of 0 is left blank so the hint shows
+            setLoadedText(mReorderThresholdEditText,
+                    threshold > 0 ? String.format(Locale.getDefault(), "%d", threshold) : null);
+
+            if (!mLoaderFrameLogged) {
+                mLoaderFrameLogged = true;
+                logNextFrame("loaded");
+            }
 
-            // set the proper values in each user input field
-            mNameEditText.setText(name);
-            mAuthorEditText.setText(author);
-            mPriceEditText.setText(String.format(Locale.getDefault(), "%.2f", price));
-            mQuantityEditText.setText(String.format(Locale.getDefault(), "%d", quantity));
-            mSupplierNameEditText.setText(supplierName);
-            mSupplierPhoneEditText.setText(supplierPhone);
+        }
 
+    }
+
+    // fill the fields the snapshot holds, the same way onLoadFinished() fills them from the loaded row
+    private void bindSnapshot(Bundle snapshot) {
+
+        if (snapshot.containsKey(BookEntry.COLUMN_BOOK_NAME)) {
+            setLoadedText(mNameEditText, snapshot.getString(BookEntry.COLUMN_BOOK_NAME));
+        }
+        if (snapshot.containsKey(BookEntry.COLUMN_BOOK_PRICE)) {
+            setLoadedText(mPriceEditText, new Money.Formatter(Locale.getDefault())
+                    .format(snapshot.getLong(BookEntry.COLUMN_BOOK_PRICE)));
+        }
+        if (snapshot.containsKey(BookEntry.COLUMN_BOOK_QUANTITY)) {
+            setLoadedText(mQuantityEditText, String.format(Locale.getDefault(), "%d",
+                    snapshot.getInt(BookEntry.COLUMN_BOOK_QUANTITY)));
         }
 
+        logNextFrame("snapshot");
+    }
+
+    // set a value read from the database, unless the user has changed the field
+    private void setLoadedText(EditText field, String text) {
+        if (!mEditedFields.contains(field.getId())) {
+            field.setText(text);
+        }
+    }
+
+    // remember that the user changed the field
+    private void markEdited(View field) {
+        if (!mEditedFields.contains(field.getId())) {
+            mEditedFields.add(field.getId());
+        }
+    }
+
+    // log the time from the tap on the catalog to the next frame, which is the first one drawn with these fields
+    // the "snapshot" and "loaded" lines of one open compare the handed over row with a wait for the loader
+    // only debug builds log it, a release build draws without the extra listener
+    private void logNextFrame(final String source) {
+
+        if (!BuildConfig.DEBUG) {
+            return;
+        }
+
+        // the observer of a view that is not attached yet is merged into the window's on attach,
+        // so the listener is removed from whichever observer is current when it runs
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.d(LOG_TAG, "First frame with " + source + " fields " +
+                        (SystemClock.uptimeMillis() - mOpenTime) + " ms after open");
+                return true;
+            }
+        });
+    }
+
+    // keep the IDs of the changed fields, the fields keep their own text
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putIntegerArrayList(STATE_EDITED_FIELDS, mEditedFields);
     }
 
     @Override
@@ -588,6 +720,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mQuantityEditText.getText().clear();
         mSupplierNameEditText.getText().clear();
         mSupplierPhoneEditText.getText().clear();
+        mReorderThresholdEditText.getText().clear();
 
     }
 
@@ -0,0 +1,144 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+// collects provider change notifications and sends them in bursts
+// every change within the debounce window is merged into a single notifyChange() per distinct URI
+// and a URI is dropped when one of its ancestors is also pending, since observers registered
+// for descendants of the ancestor receive that notification anyway
+// for example a burst of sales on books/5 and books/9 plus a delete on books sends only "books"
+final class BookChangeNotifier {
+
+    // maximum delay between a change and its notification
+    // changes inside this window are merged, so each loader requeries at most once per window
+    static final long DEBOUNCE_MILLIS = 100;
+
+    private final ContentResolver mContentResolver;
+
+    // notifications are sent from a dedicated background thread
+    private final Handler mHandler;
+
+    // URIs waiting for the next flush, in the order they changed
+    private final LinkedHashSet<Uri> mPendingUris = new LinkedHashSet<>();
+
+    // true while a flush is posted to the handler
+    private boolean mFlushScheduled;
+
+    // sends every pending notification
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    BookChangeNotifier(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+        HandlerThread thread = new HandlerThread("BookChangeNotifier");
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    // queue a notification for the URI, sent within DEBOUNCE_MILLIS
+    void notifyChange(Uri uri) {
+
+        synchronized (mPendingUris) {
+
+            if (!addPending(uri)) {
+                return;
+            }
+
+            // the window starts with the first change, so a steady stream of changes
+            // still produces a notification every DEBOUNCE_MILLIS
+            if (!mFlushScheduled) {
+                mFlushScheduled = true;
+                mHandler.postDelayed(mFlush, DEBOUNCE_MILLIS);
+            }
+        }
+    }
+
+    // send the notification for the URI on the calling thread, along with the pending ones it covers
+    // for a change that every open cursor must hear about before it reads again, such as a restore
+    void notifyChangeNow(Uri uri) {
+
+        synchronized (mPendingUris) {
+            for (Iterator<Uri> iterator = mPendingUris.iterator(); iterator.hasNext(); ) {
+                if (isAncestorOrSelf(uri, iterator.next())) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        mContentResolver.notifyChange(uri, null);
+    }
+
+    // queue notifications for every URI, used once a transaction commits
+    void notifyChange(List<Uri> uris) {
+        for (int i = 0; i < uris.size(); i++) {
+            notifyChange(uris.get(i));
+        }
+    }
+
+    // add the URI to the pending set unless an ancestor is already pending
+    // pending descendants of the URI are removed since it covers them
+    // return false if nothing was added
+    private boolean addPending(Uri uri) {
+
+        for (Iterator<Uri> iterator = mPendingUris.iterator(); iterator.hasNext(); ) {
+            Uri pending = iterator.next();
+            if (isAncestorOrSelf(pending, uri)) {
+                return false;
+            }
+            if (isAncestorOrSelf(uri, pending)) {
+                iterator.remove();
+            }
+        }
+
+        mPendingUris.add(uri);
+        return true;
+    }
+
+    // true if the path of uri starts with every path segment of ancestor, query parameters are ignored
+    private static boolean isAncestorOrSelf(Uri ancestor, Uri uri) {
+
+        if (!ancestor.getAuthority().equals(uri.getAuthority())) {
+            return false;
+        }
+
+        List<String> ancestorSegments = ancestor.getPathSegments();
+        List<String> segments = uri.getPathSegments();
+        if (ancestorSegments.size() > segments.size()) {
+            return false;
+        }
+        for (int i = 0; i < ancestorSegments.size(); i++) {
+            if (!ancestorSegments.get(i).equals(segments.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // send every pending notification
+    private void flush() {
+
+        ArrayList<Uri> uris;
+        synchronized (mPendingUris) {
+            uris = new ArrayList<>(mPendingUris);
+            mPendingUris.clear();
+            mFlushScheduled = false;
+        }
+
+        for (int i = 0; i < uris.size(); i++) {
+            mContentResolver.notifyChange(uris.get(i), null);
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.sommerengineering.bookstore.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -20,6 +21,180 @@ public final class BookContract {
     // possible content URI endpoint, to be appended on common base URI
     public static final String PATH_BOOKS = "books";
 
+    // sales ledger endpoint, appended on common base URI
+    public static final String PATH_SALES = "sales";
+
+    // suppliers endpoint, the books of a supplier are at "suppliers/#/books"
+    public static final String PATH_SUPPLIERS = "suppliers";
+
+    // full text search endpoint, appended on the books URI and followed by the search text
+    public static final String PATH_SEARCH = "search";
+
+    // sale endpoint, appended on a single book URI
+    public static final String PATH_SELL = "sell";
+
+    // inventory summary endpoint, appended on the books URI
+    public static final String PATH_STATS = "stats";
+
+    // low stock watchlist endpoint, appended on the books URI
+    public static final String PATH_LOW_STOCK = "low_stock";
+
+    // inventory export endpoint, appended on the books URI and opened as a file
+    public static final String PATH_EXPORT = "export.csv";
+
+    // provider call() method that sells copies of a book and returns the remaining quantity
+    // the arg is the row ID of the book and the extras hold the number of copies in KEY_SELL_COUNT
+    // the returned bundle holds KEY_SOLD, KEY_LOW_STOCK and, if the book exists, its quantity in COLUMN_BOOK_QUANTITY
+    public static final String METHOD_SELL = "sell";
+
+    // provider call() method that sells a batch of sale events in a single transaction
+    // the extras hold parallel arrays: book row IDs in KEY_BOOK_IDS, copies in KEY_SELL_COUNTS,
+    // and the time of each sale in KEY_SALE_TIMES, which defaults to the time of the call
+    // the returned bundle holds parallel arrays: KEY_SOLD, KEY_LOW_STOCK, and KEY_QUANTITIES
+    public static final String METHOD_SELL_BATCH = "sell_batch";
+
+    // provider call() method that checkpoints the write-ahead log, for example after a large import
+    public static final String METHOD_CHECKPOINT = "checkpoint";
+
+    // provider call() method that returns the last source row of a feed committed by BookImporter,
+    // the arg is the import ID, the returned bundle holds the row number in KEY_IMPORT_ROW, 0 if none was committed
+    public static final String METHOD_GET_IMPORT_CHECKPOINT = "get_import_checkpoint";
+
+    // provider call() method that forgets the committed source row of a feed, the arg is the import ID
+    public static final String METHOD_CLEAR_IMPORT_CHECKPOINT = "clear_import_checkpoint";
+
+    // provider call() method that returns the counters of the row cache for single book lookups
+    // the returned bundle holds KEY_CACHE_HITS, KEY_CACHE_MISSES, and KEY_CACHE_SIZE
+    public static final String METHOD_ROW_CACHE_STATS = "row_cache_stats";
+
+    // provider call() method that returns latency histograms and counters of queries, inserts, updates, and deletes
+    // the returned bundle holds a bundle of KEY_METRIC_ values for every operation and URI pattern that has run,
+    // keyed like "query books/#", and the number of change notifications in KEY_METRIC_NOTIFICATIONS
+    public static final String METHOD_METRICS = "metrics";
+
+    // provider call() method that returns the log of slow operations, oldest first
+    // each operation at or over the threshold is logged with the SQL it ran and the plan sqlite chose for it,
+    // so a full scan or an in-memory sort on a caller selection or sort order can be found
+    // the returned bundle holds parallel arrays: KEY_SLOW_TIMES, KEY_SLOW_OPERATIONS, KEY_SLOW_NANOS,
+    // KEY_SLOW_ROWS, KEY_SLOW_SQL, KEY_SLOW_ARGUMENTS, and KEY_SLOW_PLANS, and the total in KEY_SLOW_LOGGED_COUNT
+    // the log is also printed by "adb shell dumpsys activity provider BookProvider"
+    public static final String METHOD_SLOW_QUERIES = "slow_queries";
+
+    // provider call() method that sets the slow operation threshold, the arg is the threshold in milliseconds
+    // and 0 logs every operation
+    public static final String METHOD_SET_SLOW_QUERY_THRESHOLD = "set_slow_query_threshold";
+
+    // provider call() method that copies the database into a new snapshot file while sales and edits keep committing
+    // the snapshot is a single database file in the "snapshots" directory of the app files, for example to upload
+    // the returned bundle holds the file name of the snapshot in KEY_SNAPSHOT_NAME and its size in KEY_SNAPSHOT_BYTES
+    public static final String METHOD_SNAPSHOT = "snapshot";
+
+    // provider call() method that replaces the database with a snapshot, the arg is its file name
+    // a snapshot from an older version of the app is upgraded, one from a newer version is refused
+    // operations wait only while the file is swapped, and every URI of the provider is notified before the call returns
+    // a cursor returned before the restore still holds the rows it read from the previous file, which is every row
+    // when they fit in one cursor window, a larger one ends at the rows it holds instead of reading the restored file
+    // so a loader shows the previous rows until it queries again after the notification, and never has to catch an error
+    public static final String METHOD_RESTORE = "restore";
+
+    // number of copies sold, an integer of at least 1
+    // used as the call() extra and as the content values key for an update on a sell URI
+    public static final String KEY_SELL_COUNT = "sell_count";
+
+    // true if the sale was made, false if there were not enough copies in stock
+    public static final String KEY_SOLD = "sold";
+
+    // parallel arrays of a batch sale: long[] book IDs, int[] copies, long[] sale times in milliseconds since the epoch,
+    // and int[] remaining quantities, -1 where the book does not exist
+    public static final String KEY_BOOK_IDS = "book_ids";
+    public static final String KEY_SELL_COUNTS = "sell_counts";
+    public static final String KEY_SALE_TIMES = "sale_times";
+    public static final String KEY_QUANTITIES = "quantities";
+
+    // true if the sale took the quantity from above the reorder threshold to at or below it
+    public static final String KEY_LOW_STOCK = "low_stock";
+
+    // row cache counters: lookups served from memory, lookups that went to the database, and rows held
+    public static final String KEY_CACHE_HITS = "cache_hits";
+    public static final String KEY_CACHE_MISSES = "cache_misses";
+    public static final String KEY_CACHE_SIZE = "cache_size";
+
+    // metrics of one operation on one URI pattern: calls, calls that threw, total and slowest time in nanoseconds,
+    // rows returned or changed, and a long[] histogram where element i counts calls under 2^i microseconds
+    // and the last element counts every slower call
+    public static final String KEY_METRIC_COUNT = "count";
+    public static final String KEY_METRIC_ERRORS = "errors";
+    public static final String KEY_METRIC_TOTAL_NANOS = "total_nanos";
+    public static final String KEY_METRIC_MAX_NANOS = "max_nanos";
+    public static final String KEY_METRIC_ROWS = "rows";
+    public static final String KEY_METRIC_HISTOGRAM = "histogram";
+
+    // change notifications requested by the provider, before they are merged
+    public static final String KEY_METRIC_NOTIFICATIONS = "notifications";
+
+    // parallel arrays of the slow operation log: long[] wall clock times in milliseconds since the epoch,
+    // String[] operations such as "query books", long[] durations in nanoseconds, long[] rows returned or changed,
+    // -1 if the operation threw, String[] SQL, String[] argument types such as "integer, text(12)",
+    // and String[] EXPLAIN QUERY PLAN output with one line per step
+    // the SQL, arguments, and plan are null for an operation that ran no statement the log knows about
+    public static final String KEY_SLOW_TIMES = "slow_times";
+    public static final String KEY_SLOW_OPERATIONS = "slow_operations";
+    public static final String KEY_SLOW_NANOS = "slow_nanos";
+    public static final String KEY_SLOW_ROWS = "slow_rows";
+    public static final String KEY_SLOW_SQL = "slow_sql";
+    public static final String KEY_SLOW_ARGUMENTS = "slow_arguments";
+    public static final String KEY_SLOW_PLANS = "slow_plans";
+
+    // operations logged since the provider started, including the ones no longer held
+    public static final String KEY_SLOW_LOGGED_COUNT = "slow_logged_count";
+
+    // last source row of a feed committed by an import
+    public static final String KEY_IMPORT_ROW = "import_row";
+
+    // a snapshot: its file name, which is the arg of METHOD_RESTORE, and its size in bytes
+    public static final String KEY_SNAPSHOT_NAME = "snapshot_name";
+    public static final String KEY_SNAPSHOT_BYTES = "snapshot_bytes";
+
+    // optional query parameters for paging through the books table, appended to CONTENT_URI
+    // for example "content://com.sommerengineering.bookstore/books?after_id=250&limit=50"
+    // limit is the maximum number of rows in the page
+    // offset skips the given number of rows, used when the last row of the previous page is unknown
+    // after_id returns only rows with an _ID greater than the given value, which is cheaper than an offset
+    // since the primary key index seeks straight to the first row of the page
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+    public static final String QUERY_PARAMETER_OFFSET = "offset";
+    public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+    // optional query parameters for sorting and filtering the books table, appended to CONTENT_URI
+    // for example "content://com.sommerengineering.bookstore/books?sort=price&order=desc&max_price=1500"
+    // sort is one of the SORT_ values and order is ORDER_ASCENDING or ORDER_DESCENDING, ties are ordered by _ID
+    // min_price and max_price keep books priced in that inclusive range, in cents
+    // quantity_below keeps books with fewer copies than the given number
+    // each sort and each range is served by an index, so no sort happens in memory
+    // after_id pages only the default _ID order, page a sorted query with limit and offset instead
+    public static final String QUERY_PARAMETER_SORT = "sort";
+    public static final String QUERY_PARAMETER_ORDER = "order";
+    public static final String QUERY_PARAMETER_MIN_PRICE = "min_price";
+    public static final String QUERY_PARAMETER_MAX_PRICE = "max_price";
+    public static final String QUERY_PARAMETER_QUANTITY_BELOW = "quantity_below";
+
+    // optional query parameters of a bulk insert into CONTENT_URI that is a chunk of an import
+    // for example "content://com.sommerengineering.bookstore/books?import_id=feed.csv&import_row=1500"
+    // import_row is saved as the last committed source row of import_id in the same transaction as the books,
+    // so an import resumed after a crash never inserts a chunk twice, see METHOD_GET_IMPORT_CHECKPOINT
+    public static final String QUERY_PARAMETER_IMPORT_ID = "import_id";
+    public static final String QUERY_PARAMETER_IMPORT_ROW = "import_row";
+
+    // values of the sort query parameter
+    public static final String SORT_NAME = "name";
+    public static final String SORT_AUTHOR = "author";
+    public static final String SORT_PRICE = "price";
+    public static final String SORT_QUANTITY = "quantity";
+
+    // values of the order query parameter, ascending is the default
+    public static final String ORDER_ASCENDING = "asc";
+    public static final String ORDER_DESCENDING = "desc";
+
     // each inner class is an individual sqlite table
     public static final class BookEntry implements BaseColumns {
 
@@ -32,15 +207,44 @@ public final class BookContract {
         // column names
         public static final String COLUMN_BOOK_NAME = "name";
         public static final String COLUMN_BOOK_AUTHOR = "author";
+        // price is an integer number of cents, see Money, so sums and valuations in SQL are exact
         public static final String COLUMN_BOOK_PRICE = "price";
         public static final String COLUMN_BOOK_QUANTITY = "quantity";
+
+        // the supplier name and phone are read from the supplier row of the book, see SupplierEntry
+        // writing either one points the book at the supplier row with both values, which is added if it is new
         public static final String COLUMN_BOOK_SUPPLIER_NAME = "supplier_name";
         public static final String COLUMN_BOOK_SUPPLIER_PHONE = "supplier_phone";
 
+        // row ID of the supplier of the book, null if the book has no supplier name or phone
+        public static final String COLUMN_BOOK_SUPPLIER_ID = "supplier_id";
+
+        // a book is on the low stock watchlist while its quantity is at or below this number, 0 by default
+        public static final String COLUMN_BOOK_REORDER_THRESHOLD = "reorder_threshold";
+
         // content URI for the books table
         // equivalent to "content://com.sommerengineering.bookstore/books"
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_BOOKS);
 
+        // content URI for full text search over titles, authors, and suppliers
+        // equivalent to "content://com.sommerengineering.bookstore/books/search"
+        public static final Uri SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        // content URI for the low stock watchlist, every book with a quantity at or below its reorder threshold
+        // equivalent to "content://com.sommerengineering.bookstore/books/low_stock"
+        // a cursor on this URI is notified of table-wide changes, but a sale or edit of a single book only notifies it
+        // when the book may be on the watchlist before or after the change
+        public static final Uri LOW_STOCK_URI = Uri.withAppendedPath(CONTENT_URI, PATH_LOW_STOCK);
+
+        // URI of every book as comma separated text, opened with ContentResolver.openInputStream()
+        // equivalent to "content://com.sommerengineering.bookstore/books/export.csv"
+        // the first line names the columns and prices are in dollars, so the file can be imported again
+        // rows are written by the provider while the caller reads them, so the size is not known up front
+        public static final Uri EXPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_EXPORT);
+
+        // MIME type of the export
+        public static final String EXPORT_TYPE = "text/csv";
+
         // MIME type for a list of books
         // equivalent to "vnd.android.cursor.dir/com.sommerengineering.bookstore/books"
         public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE +
@@ -51,5 +255,137 @@ public final class BookContract {
         public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE +
                 "/" + CONTENT_AUTHORITY + "/" + PATH_BOOKS;
 
+        // sale URI for a single book, for example "content://com.sommerengineering.bookstore/books/5/sell"
+        // an update on this URI with KEY_SELL_COUNT returns 1 if the copies were sold and 0 if out of stock
+        public static Uri buildSellUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon().appendPath(PATH_SELL).build();
+        }
+
+        // search URI for the given text, for example "content://com.sommerengineering.bookstore/books/search/penguin"
+        // every word is matched as a prefix, so "pen" matches "Penguin"
+        public static Uri buildSearchUri(String text) {
+            return SEARCH_URI.buildUpon().appendPath(text).build();
+        }
+
+    }
+
+    // single row summary of the whole books table, kept up to date by triggers on every insert, update, and delete
+    // reading it costs the same no matter how many books are in the catalog
+    // the table is read only through the provider
+    public static final class StatsEntry implements BaseColumns {
+
+        // table name
+        public static final String TABLE_NAME = "inventory_stats";
+
+        // _ID of the only row
+        public static final long ROW_ID = 1;
+
+        // number of books
+        public static final String COLUMN_TITLE_COUNT = "title_count";
+
+        // sum of the quantity of every book
+        public static final String COLUMN_TOTAL_UNITS = "total_units";
+
+        // sum of price times quantity of every book, in cents
+        public static final String COLUMN_STOCK_VALUE = "stock_value";
+
+        // number of books with a quantity of 0
+        public static final String COLUMN_OUT_OF_STOCK_COUNT = "out_of_stock_count";
+
+        // content URI for the summary
+        // equivalent to "content://com.sommerengineering.bookstore/books/stats"
+        // a cursor on this URI is notified of every change to the books table
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BookEntry.CONTENT_URI, PATH_STATS);
+
+        // MIME type for the summary, a single row
+        // equivalent to "vnd.android.cursor.item/com.sommerengineering.bookstore/stats"
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE +
+                "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+    }
+
+    // each distinct supplier name and phone pair is stored once and shared by every book that lists it
+    // rows are added by book inserts and updates, and are kept once their last book is gone so IDs stay stable
+    // the table is read only through the provider
+    public static final class SupplierEntry implements BaseColumns {
+
+        // table name
+        public static final String TABLE_NAME = "suppliers";
+
+        // _ID column is inherent to Android framework
+        public static final String _ID = BaseColumns._ID;
+
+        // column names, the same as the supplier columns of a book
+        public static final String COLUMN_SUPPLIER_NAME = BookEntry.COLUMN_BOOK_SUPPLIER_NAME;
+        public static final String COLUMN_SUPPLIER_PHONE = BookEntry.COLUMN_BOOK_SUPPLIER_PHONE;
+
+        // content URI for the suppliers table, ordered by name unless a sort order is given
+        // equivalent to "content://com.sommerengineering.bookstore/suppliers"
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        // MIME type for a list of suppliers
+        // equivalent to "vnd.android.cursor.dir/com.sommerengineering.bookstore/suppliers"
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE +
+                "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        // MIME type for a single supplier
+        // equivalent to "vnd.android.cursor.item/com.sommerengineering.bookstore/suppliers"
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE +
+                "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        // URI of the books of a supplier, for example "content://com.sommerengineering.bookstore/suppliers/3/books"
+        // the rows have the same columns as the books URI and are ordered by _ID unless a sort order is given
+        public static Uri buildBooksUri(long supplierId) {
+            return ContentUris.withAppendedId(CONTENT_URI, supplierId).buildUpon().appendPath(PATH_BOOKS).build();
+        }
+
+    }
+
+    // progress of each catalog import, one row per import ID holding the last source row it committed
+    // written with the chunk of books in the same transaction, see QUERY_PARAMETER_IMPORT_ID
+    // the table is read only through the provider, with METHOD_GET_IMPORT_CHECKPOINT
+    public static final class ImportEntry {
+
+        // table name
+        public static final String TABLE_NAME = "imports";
+
+        // column names
+        public static final String COLUMN_IMPORT_ID = "import_id";
+        public static final String COLUMN_IMPORT_ROW = "import_row";
+
+    }
+
+    // append only ledger with a row for every sale, written in the same transaction as the stock decrement
+    // rows are never updated or deleted, and they are kept when the book itself is deleted
+    // the table is read only through the provider, sales are made with METHOD_SELL or METHOD_SELL_BATCH
+    public static final class SaleEntry implements BaseColumns {
+
+        // table name
+        public static final String TABLE_NAME = "sales";
+
+        // _ID column is inherent to Android framework
+        public static final String _ID = BaseColumns._ID;
+
+        // row ID of the book that was sold
+        public static final String COLUMN_SALE_BOOK_ID = "book_id";
+
+        // number of copies sold
+        public static final String COLUMN_SALE_QUANTITY = "quantity";
+
+        // price of a single copy at the time of the sale, in cents
+        public static final String COLUMN_SALE_PRICE = "price";
+
+        // time of the sale in milliseconds since the epoch, when it was rung up rather than when it was committed
+        public static final String COLUMN_SALE_TIME = "sold_at";
+
+        // content URI for the ledger
+        // equivalent to "content://com.sommerengineering.bookstore/sales"
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SALES);
+
+        // MIME type for a list of sales
+        // equivalent to "vnd.android.cursor.dir/com.sommerengineering.bookstore/sales"
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE +
+                "/" + CONTENT_AUTHORITY + "/" + PATH_SALES;
+
     }
 }
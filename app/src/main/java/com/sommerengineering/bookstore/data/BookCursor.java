@@ -0,0 +1,64 @@
+package com.sommerengineering.bookstore.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteQuery;
+
+// cursor of every query on the provider database, see BookContract.METHOD_RESTORE
+// a restore closes the database a cursor was read from, and a move outside of the window it already holds
+// would fill another window from the closed connection and throw, this cursor ends at the rows it holds instead
+// a window is filled by a move or by a count, for a cursor read in this process or sent to another one
+final class BookCursor extends SQLiteCursor {
+
+    // set on every database BookDbHelper opens, so plain queries and query builders return this cursor
+    static final SQLiteDatabase.CursorFactory FACTORY = new SQLiteDatabase.CursorFactory() {
+        @Override
+        public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery,
+                                String editTable, SQLiteQuery query) {
+            return new BookCursor(masterQuery, editTable, query);
+        }
+    };
+
+    private BookCursor(SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
+        super(driver, editTable, query);
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        try {
+            return super.onMove(oldPosition, newPosition);
+        } catch (IllegalStateException | SQLiteException e) {
+            throwUnlessReplaced(e);
+
+            // the move fails like a move past the last row,
+            // and the change notification sent by the restore has the loader query the restored file
+            return false;
+        }
+    }
+
+    // the count is read once under the lock of the provider, but a new window set on the cursor
+    // by another process reading it counts the rows again
+    @Override
+    public int getCount() {
+        try {
+            return super.getCount();
+        } catch (IllegalStateException | SQLiteException e) {
+            throwUnlessReplaced(e);
+
+            // the window was cleared before the count failed, so no row is left to read
+            return 0;
+        }
+    }
+
+    // a failure on a database that is still open is a real error,
+    // on a closed one it means the file was replaced by a restore
+    private void throwUnlessReplaced(RuntimeException e) {
+        if (getDatabase().isOpen()) {
+            throw e;
+        }
+    }
+
+}
@@ -1,28 +1,281 @@
 package com.sommerengineering.bookstore.data;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
 
 // contract inner class
 import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookContract.ImportEntry;
+import com.sommerengineering.bookstore.data.BookContract.SaleEntry;
+import com.sommerengineering.bookstore.data.BookContract.StatsEntry;
+import com.sommerengineering.bookstore.data.BookContract.SupplierEntry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 
 // helper manages access to sqlite database stored on device as persistent data
 public class BookDbHelper extends SQLiteOpenHelper {
 
+    // tag for log messages
+    private static final String LOG_TAG = BookDbHelper.class.getSimpleName();
+
     // established convention that database version begins at 1
+    // increment the version and add a matching upgradeToVersion method for every schema change
     private static final String DATABASE_NAME = "inventory.db";
-    private static final int DATABASE_VERSION = 1;
+    static final int DATABASE_VERSION = 10;
+
+    // index names, version 2
+    static final String INDEX_BOOKS_NAME = "idx_books_name";
+    static final String INDEX_BOOKS_AUTHOR = "idx_books_author";
+    static final String INDEX_BOOKS_SUPPLIER_NAME = "idx_books_supplier_name";
+    static final String INDEX_BOOKS_CATALOG = "idx_books_catalog";
+
+    // partial index name, version 6
+    static final String INDEX_BOOKS_LOW_STOCK = "idx_books_low_stock";
+
+    // sales ledger index name, version 7
+    static final String INDEX_SALES_BOOK_TIME = "idx_sales_book_time";
+
+    // catalog sort index names, version 8
+    static final String INDEX_BOOKS_PRICE = "idx_books_price";
+    static final String INDEX_BOOKS_QUANTITY = "idx_books_quantity";
+
+    // supplier index names, version 9
+    static final String INDEX_SUPPLIERS_NAME_PHONE = "idx_suppliers_name_phone";
+    static final String INDEX_BOOKS_SUPPLIER = "idx_books_supplier";
+
+    // every column of the books URI, with the supplier name and phone joined from the suppliers table, version 9
+    // reads that need a supplier column go through this view, writes always go to the books table
+    static final String VIEW_BOOKS = "books_with_suppliers";
+
+    // the text indexed by books_fts, read by the fts table through the rowid column, version 9
+    private static final String VIEW_SEARCH_CONTENT = "books_fts_content";
+
+    // rows of the low stock watchlist, the same expression as the partial index so the planner can use it
+    // equivalent to "quantity <= reorder_threshold"
+    static final String LOW_STOCK_SELECTION =
+            BookEntry.COLUMN_BOOK_QUANTITY + " <= " + BookEntry.COLUMN_BOOK_REORDER_THRESHOLD;
+
+    // the inventory summary computed from scratch with a full scan of the books table, in StatsEntry column order
+    // used to fill the summary when it is created, and to check the triggered values against
+    // equivalent to "SELECT COUNT(*), IFNULL(SUM(quantity), 0), IFNULL(SUM(price * quantity), 0),
+    // IFNULL(SUM(quantity = 0), 0) FROM books"
+    static final String SQL_RECOMPUTE_STATS = "SELECT COUNT(*), " +
+            "IFNULL(SUM(" + BookEntry.COLUMN_BOOK_QUANTITY + "), 0), " +
+            "IFNULL(SUM(" + BookEntry.COLUMN_BOOK_PRICE + " * " + BookEntry.COLUMN_BOOK_QUANTITY + "), 0), " +
+            "IFNULL(SUM(" + BookEntry.COLUMN_BOOK_QUANTITY + " = 0), 0) FROM " + BookEntry.TABLE_NAME;
+
+    // connection settings applied in onConfigure()
+    private final BookStorageProfile mStorageProfile;
+
+    // the database file, null for an in-memory database
+    private final File mDatabaseFile;
+
+    // held while the database file is copied, checkpointed, or replaced
+    // a checkpoint is the only write to the database file in write-ahead logging mode, see copyTo()
+    private final Object mFileLock = new Object();
 
     // defer to superclass constructor for initialization
     public BookDbHelper(Context context) {
 
         // calls onCreate only if the database does not already exist on the device
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, BookStorageProfile.DEFAULT);
+    }
+
+    // open a database with another file name, a null name creates an in-memory database
+    BookDbHelper(Context context, String name) {
+        this(context, name, BookStorageProfile.DEFAULT);
+    }
+
+    // open a database with another file name and connection settings
+    BookDbHelper(Context context, String name, BookStorageProfile storageProfile) {
+        super(context, name, BookCursor.FACTORY, DATABASE_VERSION);
+        mStorageProfile = storageProfile;
+        mDatabaseFile = name == null ? null : context.getDatabasePath(name);
+
+        // the journal mode is chosen when the database is opened, so it is set before the first open
+        setWriteAheadLoggingEnabled(storageProfile.writeAheadLogging);
+    }
+
+    // called every time the database is opened, before onCreate() or onUpgrade()
+    // applies the storage profile, these settings are not saved in the database file
+    // cache and mmap sizes are per connection, and android configures its pooled reader connections itself,
+    // so they apply to the primary connection that runs every write and any read inside a transaction
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+
+        // every supplier_id of a book must name a supplier row
+        db.setForeignKeyConstraintsEnabled(true);
+
+        // durability of each commit
+        runPragma(db, "synchronous = " + mStorageProfile.synchronous);
+
+        // a negative cache size is in kibibytes instead of pages
+        if (mStorageProfile.cacheSizeKb > 0) {
+            runPragma(db, "cache_size = -" + mStorageProfile.cacheSizeKb);
+        }
+
+        // memory mapped reads skip a copy from the kernel page cache
+        if (mStorageProfile.mmapSizeBytes > 0) {
+            runPragma(db, "mmap_size = " + mStorageProfile.mmapSizeBytes);
+        }
+
+        // how large the log grows before a commit copies it back into the database
+        if (mStorageProfile.writeAheadLogging && mStorageProfile.walAutoCheckpointPages > 0) {
+            runPragma(db, "wal_autocheckpoint = " + mStorageProfile.walAutoCheckpointPages);
+        }
+    }
+
+    // copy the write-ahead log back into the database without waiting on readers or writers
+    // useful after a large import so the next reads do not have to search a long log
+    public void checkpoint() {
+        if (mStorageProfile.writeAheadLogging) {
+            synchronized (mFileLock) {
+                runPragma(getWritableDatabase(), "wal_checkpoint(PASSIVE)");
+            }
+        }
+    }
+
+    // the database file, null for an in-memory database
+    File getDatabaseFile() {
+        return mDatabaseFile;
+    }
+
+    // copy a consistent image of the open database to destination while reads and writes continue
+    // with write-ahead logging a commit only appends to the log and the database file only changes in a checkpoint,
+    // so with checkpoints held off the database file is copied first and the log after it
+    // the log is copied to destination + "-wal", where sqlite recovers it when the copy is opened:
+    // a frame half written during the copy fails its checksum and ends the log at the last complete commit
+    // without write-ahead logging a commit rewrites pages of the database file, so writes wait for the copy
+    // return the number of bytes copied
+    long copyTo(File destination) throws IOException {
+
+        if (mDatabaseFile == null) {
+            throw new IllegalStateException("An in-memory database has no file to copy");
+        }
+        SQLiteDatabase db = getWritableDatabase();
+
+        synchronized (mFileLock) {
+
+            if (!mStorageProfile.writeAheadLogging) {
+                db.beginTransactionNonExclusive();
+                try {
+                    return copyFile(mDatabaseFile, destination);
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            // every other checkpoint takes the file lock, only a commit on the primary connection can start one
+            long autoCheckpointPages = setAutoCheckpoint(db, 0);
+            try {
+                long bytes = copyFile(mDatabaseFile, destination);
+                File log = new File(mDatabaseFile.getPath() + "-wal");
+                if (log.exists()) {
+                    bytes += copyFile(log, new File(destination.getPath() + "-wal"));
+                }
+                return bytes;
+            } finally {
+                setAutoCheckpoint(db, autoCheckpointPages);
+            }
+        }
+    }
+
+    // swap the database file for replacement, a database file in the same directory, and open it
+    // an older version is upgraded as it is opened
+    // the rename is atomic, so after a crash the database is either the previous file or the replacement
+    // the caller makes sure nothing uses the database meanwhile, and the helper is open again on return
+    void replaceWith(File replacement) throws IOException {
+        synchronized (mFileLock) {
+
+            // closing the last connection checkpoints the log into the previous file
+            close();
+            try {
+
+                // a log left over from the previous file would be recovered into the replacement
+                deleteJournals(mDatabaseFile);
+                if (!replacement.renameTo(mDatabaseFile)) {
+                    throw new IOException("Cannot rename " + replacement + " to " + mDatabaseFile);
+                }
+            } finally {
+                getWritableDatabase();
+            }
+        }
+    }
+
+    // copy source to destination and sync it to storage, return the number of bytes copied
+    // only the bytes source has when the copy starts are copied, so a log that keeps growing is still cut off
+    static long copyFile(File source, File destination) throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileOutputStream out = new FileOutputStream(destination);
+            try {
+                FileChannel input = in.getChannel();
+                long size = input.size();
+                long copied = 0;
+                while (copied < size) {
+                    long transferred = input.transferTo(copied, size - copied, out.getChannel());
+                    if (transferred <= 0) {
+                        break;
+                    }
+                    copied += transferred;
+                }
+                out.getFD().sync();
+                return copied;
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    // delete the log, shared memory index, and rollback journal of a database file
+    static void deleteJournals(File databaseFile) {
+        for (String suffix : new String[] {"-wal", "-shm", "-journal"}) {
+            File journal = new File(databaseFile.getPath() + suffix);
+            if (journal.exists() && !journal.delete()) {
+                Log.w(LOG_TAG, "Cannot delete " + journal);
+            }
+        }
+    }
+
+    // set wal_autocheckpoint to pages on the primary connection and return its previous value
+    // the setting belongs to each connection, the primary connection runs every commit,
+    // and a transaction always runs on the primary connection
+    private static long setAutoCheckpoint(SQLiteDatabase db, long pages) {
+        db.beginTransactionNonExclusive();
+        try {
+            long previous = DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint", null);
+            runPragma(db, "wal_autocheckpoint = " + pages);
+            db.setTransactionSuccessful();
+            return previous;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // some pragmas return a row, which execSQL() does not allow, so every pragma is run as a query
+    static void runPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
     }
 
     // only called from constructor if DATABASE_NAME does not exist on device
     // create new persistent sqlite database on device
+    // the version 1 table is created and then every upgrade is applied in order
+    // so a new install always ends up with exactly the same schema as an upgraded one
     @Override
     public void onCreate(SQLiteDatabase db) {
 
@@ -43,12 +296,471 @@ public class BookDbHelper extends SQLiteOpenHelper {
         // execute SQL query
         db.execSQL(SQL_CREATE_BOOKS_TABLE);
 
+        // bring the version 1 schema up to date
+        onUpgrade(db, 1, DATABASE_VERSION);
+
     }
 
     // update existing sqlite database on device
+    // the superclass runs this inside a transaction, so a failed step leaves the old version intact
+    // each step migrates from the previous version only, and existing rows are always kept
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
 
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+
+            switch (version) {
+
+                case 2:
+                    upgradeToVersion2(db);
+                    break;
+
+                case 3:
+                    upgradeToVersion3(db);
+                    break;
+
+                case 4:
+                    upgradeToVersion4(db);
+                    break;
+
+                case 5:
+                    upgradeToVersion5(db);
+                    break;
+
+                case 6:
+                    upgradeToVersion6(db);
+                    break;
+
+                case 7:
+                    upgradeToVersion7(db);
+                    break;
+
+                case 8:
+                    upgradeToVersion8(db);
+                    break;
+
+                case 9:
+                    upgradeToVersion9(db);
+                    break;
+
+                case 10:
+                    upgradeToVersion10(db);
+                    break;
+
+                default:
+                    throw new IllegalStateException("No upgrade path to database version " + version);
+            }
+        }
+
+    }
+
+    // version 2: indexes for lookups by name, author, and supplier
+    // and a covering index for the catalog projection so the list never reads the full rows
+    private static void upgradeToVersion2(SQLiteDatabase db) {
+        createIndexes(db, true);
+    }
+
+    // the version 2 indexes, created again whenever the books table is rebuilt
+    // from version 9 the supplier name is no longer a column of books, see upgradeToVersion9()
+    private static void createIndexes(SQLiteDatabase db, boolean supplierNameIndex) {
+
+        // CREATE INDEX idx_books_name ON books (name);
+        db.execSQL("CREATE INDEX " + INDEX_BOOKS_NAME + " ON " + BookEntry.TABLE_NAME +
+                " (" + BookEntry.COLUMN_BOOK_NAME + ");");
+
+        // CREATE INDEX idx_books_author ON books (author);
+        db.execSQL("CREATE INDEX " + INDEX_BOOKS_AUTHOR + " ON " + BookEntry.TABLE_NAME +
+                " (" + BookEntry.COLUMN_BOOK_AUTHOR + ");");
+
+        // CREATE INDEX idx_books_supplier_name ON books (supplier_name);
+        if (supplierNameIndex) {
+            db.execSQL("CREATE INDEX " + INDEX_BOOKS_SUPPLIER_NAME + " ON " + BookEntry.TABLE_NAME +
+                    " (" + BookEntry.COLUMN_BOOK_SUPPLIER_NAME + ");");
+        }
+
+        // CREATE INDEX idx_books_catalog ON books (_id, name, price, quantity);
+        db.execSQL("CREATE INDEX " + INDEX_BOOKS_CATALOG + " ON " + BookEntry.TABLE_NAME +
+                " (" + BookEntry._ID + ", " + BookEntry.COLUMN_BOOK_NAME + ", " +
+                BookEntry.COLUMN_BOOK_PRICE + ", " + BookEntry.COLUMN_BOOK_QUANTITY + ");");
+    }
+
+    // version 3: full text search over title, author, and supplier name
+    // books_fts is an external content fts4 table, it stores only the search index and reads text from books
+    // triggers keep the index in sync, the update triggers only fire when a searchable column changes
+    // so quantity updates from the sale button never touch the index
+    private static void upgradeToVersion3(SQLiteDatabase db) {
+
+        String fts = BookSearch.FTS_TABLE_NAME;
+        String searchColumns = BookEntry.COLUMN_BOOK_NAME + ", " + BookEntry.COLUMN_BOOK_AUTHOR + ", " +
+                BookEntry.COLUMN_BOOK_SUPPLIER_NAME;
+
+        // CREATE VIRTUAL TABLE books_fts USING fts4(content="books", prefix="2,3", name, author, supplier_name);
+        // the prefix option adds index entries for 2 and 3 letter prefixes, the common type-ahead lengths
+        db.execSQL("CREATE VIRTUAL TABLE " + fts + " USING fts4(content=\"" + BookEntry.TABLE_NAME +
+                "\", prefix=\"2,3\", " + searchColumns + ");");
+
+        createSearchTriggers(db, BookEntry.COLUMN_BOOK_SUPPLIER_NAME, "new." + BookEntry.COLUMN_BOOK_SUPPLIER_NAME);
+
+        // index the rows that already exist
+        db.execSQL("INSERT INTO " + fts + " (" + fts + ") VALUES ('rebuild');");
+    }
+
+    // the version 3 triggers that keep books_fts in sync, created again whenever the books table is rebuilt
+    // supplierColumn is the column of books the supplier name depends on,
+    // and newSupplierName is the expression for the supplier name of the new row
+    private static void createSearchTriggers(SQLiteDatabase db, String supplierColumn, String newSupplierName) {
+
+        String fts = BookSearch.FTS_TABLE_NAME;
+        String searchColumns = BookEntry.COLUMN_BOOK_NAME + ", " + BookEntry.COLUMN_BOOK_AUTHOR + ", " +
+                BookEntry.COLUMN_BOOK_SUPPLIER_NAME;
+        String watchedColumns = BookEntry.COLUMN_BOOK_NAME + ", " + BookEntry.COLUMN_BOOK_AUTHOR + ", " +
+                supplierColumn;
+        String newValues = "new." + BookEntry.COLUMN_BOOK_NAME + ", new." + BookEntry.COLUMN_BOOK_AUTHOR +
+                ", " + newSupplierName;
+
+        // remove the old index entry before the row changes, since the entry is found by the old text
+        db.execSQL("CREATE TRIGGER " + fts + "_before_update BEFORE UPDATE OF " + watchedColumns +
+                " ON " + BookEntry.TABLE_NAME + " BEGIN DELETE FROM " + fts +
+                " WHERE docid = old." + BookEntry._ID + "; END;");
+        db.execSQL("CREATE TRIGGER " + fts + "_before_delete BEFORE DELETE ON " + BookEntry.TABLE_NAME +
+                " BEGIN DELETE FROM " + fts + " WHERE docid = old." + BookEntry._ID + "; END;");
+
+        // add the new index entry after the row is written
+        db.execSQL("CREATE TRIGGER " + fts + "_after_update AFTER UPDATE OF " + watchedColumns +
+                " ON " + BookEntry.TABLE_NAME + " BEGIN INSERT INTO " + fts + " (docid, " + searchColumns +
+                ") VALUES (new." + BookEntry._ID + ", " + newValues + "); END;");
+        db.execSQL("CREATE TRIGGER " + fts + "_after_insert AFTER INSERT ON " + BookEntry.TABLE_NAME +
+                " BEGIN INSERT INTO " + fts + " (docid, " + searchColumns +
+                ") VALUES (new." + BookEntry._ID + ", " + newValues + "); END;");
+    }
+
+    // version 4: prices are stored as an INTEGER number of cents instead of REAL dollars
+    // sqlite can not change the type of a column, so the table is rebuilt and the rows copied over,
+    // rounding each price to the nearest cent, then the indexes and search triggers are created again
+    // row IDs and the autoincrement counter are kept, so the search index and any saved book URI stay valid
+    private static void upgradeToVersion4(SQLiteDatabase db) {
+
+        String books = BookEntry.TABLE_NAME;
+        String rebuilt = books + "_v4";
+
+        // CREATE TABLE books_v4 (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL,
+        // author TEXT, price INTEGER NOT NULL DEFAULT 0, quantity INTEGER NOT NULL DEFAULT 0,
+        // supplier_name TEXT, supplier_phone TEXT );
+        db.execSQL("CREATE TABLE " + rebuilt + " (" +
+                BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                BookEntry.COLUMN_BOOK_NAME + " TEXT NOT NULL, " +
+                BookEntry.COLUMN_BOOK_AUTHOR + " TEXT, " +
+                BookEntry.COLUMN_BOOK_PRICE + " INTEGER NOT NULL DEFAULT 0, " +
+                BookEntry.COLUMN_BOOK_QUANTITY + " INTEGER NOT NULL DEFAULT 0, " +
+                BookEntry.COLUMN_BOOK_SUPPLIER_NAME + " TEXT, " +
+                BookEntry.COLUMN_BOOK_SUPPLIER_PHONE + " TEXT );");
+
+        // price REAL is dollars, a missing price becomes 0
+        // INSERT INTO books_v4 (_id, name, author, price, quantity, supplier_name, supplier_phone)
+        // SELECT _id, name, author, CAST(ROUND(IFNULL(price, 0) * 100) AS INTEGER), quantity, supplier_name,
+        // supplier_phone FROM books;
+        String otherColumns = BookEntry.COLUMN_BOOK_QUANTITY + ", " + BookEntry.COLUMN_BOOK_SUPPLIER_NAME + ", " +
+                BookEntry.COLUMN_BOOK_SUPPLIER_PHONE;
+        db.execSQL("INSERT INTO " + rebuilt + " (" + BookEntry._ID + ", " + BookEntry.COLUMN_BOOK_NAME + ", " +
+                BookEntry.COLUMN_BOOK_AUTHOR + ", " + BookEntry.COLUMN_BOOK_PRICE + ", " + otherColumns + ") SELECT " +
+                BookEntry._ID + ", " + BookEntry.COLUMN_BOOK_NAME + ", " + BookEntry.COLUMN_BOOK_AUTHOR +
+                ", CAST(ROUND(IFNULL(" + BookEntry.COLUMN_BOOK_PRICE + ", 0) * " + Money.CENTS_PER_UNIT +
+                ") AS INTEGER), " + otherColumns + " FROM " + books + ";");
+
+        // keep the highest ID ever used, deleted rows included, so IDs are still never reused
+        // sqlite_sequence has no unique name, so the row created by the copy is replaced by hand
+        db.execSQL("DELETE FROM sqlite_sequence WHERE name = '" + rebuilt + "';");
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT '" + rebuilt +
+                "', seq FROM sqlite_sequence WHERE name = '" + books + "';");
+
+        // the search triggers are dropped first so dropping the old table leaves books_fts untouched
+        String fts = BookSearch.FTS_TABLE_NAME;
+        db.execSQL("DROP TRIGGER " + fts + "_before_update;");
+        db.execSQL("DROP TRIGGER " + fts + "_before_delete;");
+        db.execSQL("DROP TRIGGER " + fts + "_after_update;");
+        db.execSQL("DROP TRIGGER " + fts + "_after_insert;");
+
+        // dropping the table also drops its indexes
+        db.execSQL("DROP TABLE " + books + ";");
+        db.execSQL("ALTER TABLE " + rebuilt + " RENAME TO " + books + ";");
+
+        createIndexes(db, true);
+        createSearchTriggers(db, BookEntry.COLUMN_BOOK_SUPPLIER_NAME, "new." + BookEntry.COLUMN_BOOK_SUPPLIER_NAME);
+    }
+
+    // version 5: single row inventory summary kept up to date by triggers
+    // each trigger applies only the difference made by one row, so no statement ever scans the table
+    // and the summary can be read in constant time however large the catalog is
+    private static void upgradeToVersion5(SQLiteDatabase db) {
+
+        // CREATE TABLE inventory_stats (_id INTEGER PRIMARY KEY, title_count INTEGER NOT NULL,
+        // total_units INTEGER NOT NULL, stock_value INTEGER NOT NULL, out_of_stock_count INTEGER NOT NULL);
+        db.execSQL("CREATE TABLE " + StatsEntry.TABLE_NAME + " (" +
+                StatsEntry._ID + " INTEGER PRIMARY KEY, " +
+                StatsEntry.COLUMN_TITLE_COUNT + " INTEGER NOT NULL, " +
+                StatsEntry.COLUMN_TOTAL_UNITS + " INTEGER NOT NULL, " +
+                StatsEntry.COLUMN_STOCK_VALUE + " INTEGER NOT NULL, " +
+                StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + " INTEGER NOT NULL);");
+
+        // the only row starts from the rows that already exist
+        db.execSQL("INSERT INTO " + StatsEntry.TABLE_NAME + " (" + StatsEntry._ID + ", " +
+                StatsEntry.COLUMN_TITLE_COUNT + ", " + StatsEntry.COLUMN_TOTAL_UNITS + ", " +
+                StatsEntry.COLUMN_STOCK_VALUE + ", " + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + ") " +
+                SQL_RECOMPUTE_STATS.replace("SELECT ", "SELECT " + StatsEntry.ROW_ID + ", ") + ";");
+
+        createStatsTriggers(db);
+    }
+
+    // the version 5 triggers that keep inventory_stats in sync, created again whenever the books table is rebuilt
+    // the update trigger only fires when the price or quantity changes, so editing a title costs nothing extra
+    private static void createStatsTriggers(SQLiteDatabase db) {
+
+        String stats = StatsEntry.TABLE_NAME;
+        String price = BookEntry.COLUMN_BOOK_PRICE;
+        String quantity = BookEntry.COLUMN_BOOK_QUANTITY;
+
+        // add a new row: UPDATE inventory_stats SET title_count = title_count + 1,
+        // total_units = total_units + new.quantity, stock_value = stock_value + new.price * new.quantity,
+        // out_of_stock_count = out_of_stock_count + (new.quantity = 0) WHERE _id = 1;
+        db.execSQL("CREATE TRIGGER " + stats + "_after_insert AFTER INSERT ON " + BookEntry.TABLE_NAME +
+                " BEGIN " + updateStats(" + 1", " + new." + quantity, " + new." + price + " * new." + quantity,
+                " + (new." + quantity + " = 0)") + " END;");
+
+        // remove an old row
+        db.execSQL("CREATE TRIGGER " + stats + "_after_delete AFTER DELETE ON " + BookEntry.TABLE_NAME +
+                " BEGIN " + updateStats(" - 1", " - old." + quantity, " - old." + price + " * old." + quantity,
+                " - (old." + quantity + " = 0)") + " END;");
+
+        // replace an old row with a new one
+        db.execSQL("CREATE TRIGGER " + stats + "_after_update AFTER UPDATE OF " + price + ", " + quantity +
+                " ON " + BookEntry.TABLE_NAME + " BEGIN " + updateStats("",
+                " + new." + quantity + " - old." + quantity,
+                " + new." + price + " * new." + quantity + " - old." + price + " * old." + quantity,
+                " + (new." + quantity + " = 0) - (old." + quantity + " = 0)") + " END;");
+    }
+
+    // statement that adds each expression to its column of the summary row
+    private static String updateStats(String titleCount, String totalUnits, String stockValue, String outOfStock) {
+        return "UPDATE " + StatsEntry.TABLE_NAME + " SET " +
+                StatsEntry.COLUMN_TITLE_COUNT + " = " + StatsEntry.COLUMN_TITLE_COUNT + titleCount + ", " +
+                StatsEntry.COLUMN_TOTAL_UNITS + " = " + StatsEntry.COLUMN_TOTAL_UNITS + totalUnits + ", " +
+                StatsEntry.COLUMN_STOCK_VALUE + " = " + StatsEntry.COLUMN_STOCK_VALUE + stockValue + ", " +
+                StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + outOfStock +
+                " WHERE " + StatsEntry._ID + " = " + StatsEntry.ROW_ID + ";";
+    }
+
+    // version 6: per book reorder threshold and a partial index over the books at or below it
+    // the index holds only the watchlist rows, so listing them never reads the rest of the table,
+    // and a sale only writes to the index when the book crosses its threshold
+    private static void upgradeToVersion6(SQLiteDatabase db) {
+
+        // ALTER TABLE books ADD COLUMN reorder_threshold INTEGER NOT NULL DEFAULT 0;
+        db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN " +
+                BookEntry.COLUMN_BOOK_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0;");
+
+        createLowStockIndex(db);
+    }
+
+    // the version 6 partial index, created again whenever the books table is rebuilt
+    private static void createLowStockIndex(SQLiteDatabase db) {
+
+        // CREATE INDEX idx_books_low_stock ON books (_id) WHERE quantity <= reorder_threshold;
+        db.execSQL("CREATE INDEX " + INDEX_BOOKS_LOW_STOCK + " ON " + BookEntry.TABLE_NAME +
+                " (" + BookEntry._ID + ") WHERE " + LOW_STOCK_SELECTION + ";");
+    }
+
+    // version 7: append only sales ledger
+    // rows are only ever appended, so the _ID is a plain INTEGER PRIMARY KEY without AUTOINCREMENT,
+    // which saves an update of sqlite_sequence on every sale
+    // the index serves the sales of one book over a time range, for sales velocity
+    private static void upgradeToVersion7(SQLiteDatabase db) {
+
+        // CREATE TABLE sales (_id INTEGER PRIMARY KEY, book_id INTEGER NOT NULL, quantity INTEGER NOT NULL,
+        // price INTEGER NOT NULL, sold_at INTEGER NOT NULL);
+        db.execSQL("CREATE TABLE " + SaleEntry.TABLE_NAME + " (" +
+                SaleEntry._ID + " INTEGER PRIMARY KEY, " +
+                SaleEntry.COLUMN_SALE_BOOK_ID + " INTEGER NOT NULL, " +
+                SaleEntry.COLUMN_SALE_QUANTITY + " INTEGER NOT NULL, " +
+                SaleEntry.COLUMN_SALE_PRICE + " INTEGER NOT NULL, " +
+                SaleEntry.COLUMN_SALE_TIME + " INTEGER NOT NULL);");
+
+        // CREATE INDEX idx_sales_book_time ON sales (book_id, sold_at);
+        db.execSQL("CREATE INDEX " + INDEX_SALES_BOOK_TIME + " ON " + SaleEntry.TABLE_NAME + " (" +
+                SaleEntry.COLUMN_SALE_BOOK_ID + ", " + SaleEntry.COLUMN_SALE_TIME + ");");
+    }
+
+    // version 8: indexes for sorting and range filtering the catalog by price and by quantity
+    // each is ordered by its column and then _ID, the same order the provider sorts by, so a sorted page
+    // is read straight from the index, and a price range or quantity limit is a seek into it
+    // sorting by title or author uses the version 2 indexes, which already end in the row ID
+    // neither index holds any other column, so a sale rewrites the quantity index and never the price index
+    private static void upgradeToVersion8(SQLiteDatabase db) {
+        createSortIndexes(db);
+    }
+
+    // the version 8 indexes, created again whenever the books table is rebuilt
+    private static void createSortIndexes(SQLiteDatabase db) {
+
+        // CREATE INDEX idx_books_price ON books (price, _id);
+        db.execSQL("CREATE INDEX " + INDEX_BOOKS_PRICE + " ON " + BookEntry.TABLE_NAME +
+                " (" + BookEntry.COLUMN_BOOK_PRICE + ", " + BookEntry._ID + ");");
+
+        // CREATE INDEX idx_books_quantity ON books (quantity, _id);
+        db.execSQL("CREATE INDEX " + INDEX_BOOKS_QUANTITY + " ON " + BookEntry.TABLE_NAME +
+                " (" + BookEntry.COLUMN_BOOK_QUANTITY + ", " + BookEntry._ID + ");");
+    }
+
+    // version 9: each distinct supplier is stored once in a suppliers table instead of as text on every book
+    // sqlite can not drop a column, so the books table is rebuilt with a supplier_id in place of supplier_name
+    // and supplier_phone, after every distinct pair of the old columns is copied into suppliers in order of first use
+    // the books_with_suppliers view joins the pair back for reads, and books_fts now reads its supplier text
+    // through a view too, so the search index is rebuilt against it
+    // row IDs, the autoincrement counter, and the inventory summary are kept, as in upgradeToVersion4()
+    private static void upgradeToVersion9(SQLiteDatabase db) {
+
+        String books = BookEntry.TABLE_NAME;
+        String rebuilt = books + "_v9";
+        String suppliers = SupplierEntry.TABLE_NAME;
+        String supplierName = SupplierEntry.COLUMN_SUPPLIER_NAME;
+        String supplierPhone = SupplierEntry.COLUMN_SUPPLIER_PHONE;
+
+        // CREATE TABLE suppliers (_id INTEGER PRIMARY KEY, supplier_name TEXT, supplier_phone TEXT);
+        db.execSQL("CREATE TABLE " + suppliers + " (" +
+                SupplierEntry._ID + " INTEGER PRIMARY KEY, " +
+                supplierName + " TEXT, " +
+                supplierPhone + " TEXT);");
+
+        // finds the supplier row of a pair when a book is written, and lists suppliers by name
+        // CREATE UNIQUE INDEX idx_suppliers_name_phone ON suppliers (supplier_name, supplier_phone);
+        db.execSQL("CREATE UNIQUE INDEX " + INDEX_SUPPLIERS_NAME_PHONE + " ON " + suppliers +
+                " (" + supplierName + ", " + supplierPhone + ");");
+
+        // GROUP BY puts all nulls in one group, so a pair with a missing name or phone is also stored once
+        // INSERT INTO suppliers (supplier_name, supplier_phone) SELECT supplier_name, supplier_phone FROM books
+        // WHERE supplier_name IS NOT NULL OR supplier_phone IS NOT NULL
+        // GROUP BY supplier_name, supplier_phone ORDER BY MIN(_id);
+        db.execSQL("INSERT INTO " + suppliers + " (" + supplierName + ", " + supplierPhone + ") SELECT " +
+                supplierName + ", " + supplierPhone + " FROM " + books + " WHERE " + supplierName +
+                " IS NOT NULL OR " + supplierPhone + " IS NOT NULL GROUP BY " + supplierName + ", " + supplierPhone +
+                " ORDER BY MIN(" + BookEntry._ID + ");");
+
+        // CREATE TABLE books_v9 (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, author TEXT,
+        // price INTEGER NOT NULL DEFAULT 0, quantity INTEGER NOT NULL DEFAULT 0,
+        // reorder_threshold INTEGER NOT NULL DEFAULT 0, supplier_id INTEGER REFERENCES suppliers (_id));
+        db.execSQL("CREATE TABLE " + rebuilt + " (" +
+                BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                BookEntry.COLUMN_BOOK_NAME + " TEXT NOT NULL, " +
+                BookEntry.COLUMN_BOOK_AUTHOR + " TEXT, " +
+                BookEntry.COLUMN_BOOK_PRICE + " INTEGER NOT NULL DEFAULT 0, " +
+                BookEntry.COLUMN_BOOK_QUANTITY + " INTEGER NOT NULL DEFAULT 0, " +
+                BookEntry.COLUMN_BOOK_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0, " +
+                BookEntry.COLUMN_BOOK_SUPPLIER_ID + " INTEGER REFERENCES " + suppliers +
+                " (" + SupplierEntry._ID + "));");
+
+        // each book finds its supplier through the unique index, one branch per combination of nulls
+        // since older sqlite versions can not search an index with IS
+        // INSERT INTO books_v9 (_id, name, author, price, quantity, reorder_threshold, supplier_id)
+        // SELECT _id, name, author, price, quantity, reorder_threshold, CASE
+        // WHEN supplier_name IS NULL AND supplier_phone IS NULL THEN NULL
+        // WHEN supplier_name IS NULL THEN (SELECT _id FROM suppliers AS s
+        //     WHERE s.supplier_name IS NULL AND s.supplier_phone = books.supplier_phone)
+        // WHEN supplier_phone IS NULL THEN (... s.supplier_name = books.supplier_name AND s.supplier_phone IS NULL)
+        // ELSE (... s.supplier_name = books.supplier_name AND s.supplier_phone = books.supplier_phone) END FROM books;
+        String lookup = "(SELECT s." + SupplierEntry._ID + " FROM " + suppliers + " AS s WHERE s." + supplierName;
+        String otherColumns = BookEntry.COLUMN_BOOK_NAME + ", " + BookEntry.COLUMN_BOOK_AUTHOR + ", " +
+                BookEntry.COLUMN_BOOK_PRICE + ", " + BookEntry.COLUMN_BOOK_QUANTITY + ", " +
+                BookEntry.COLUMN_BOOK_REORDER_THRESHOLD;
+        db.execSQL("INSERT INTO " + rebuilt + " (" + BookEntry._ID + ", " + otherColumns + ", " +
+                BookEntry.COLUMN_BOOK_SUPPLIER_ID + ") SELECT " + BookEntry._ID + ", " + otherColumns + ", CASE" +
+                " WHEN " + supplierName + " IS NULL AND " + supplierPhone + " IS NULL THEN NULL" +
+                " WHEN " + supplierName + " IS NULL THEN " + lookup + " IS NULL AND s." + supplierPhone + " = " +
+                books + "." + supplierPhone + ")" +
+                " WHEN " + supplierPhone + " IS NULL THEN " + lookup + " = " + books + "." + supplierName +
+                " AND s." + supplierPhone + " IS NULL)" +
+                " ELSE " + lookup + " = " + books + "." + supplierName + " AND s." + supplierPhone + " = " +
+                books + "." + supplierPhone + ") END FROM " + books + ";");
+
+        // keep the highest ID ever used, deleted rows included, so IDs are still never reused
+        db.execSQL("DELETE FROM sqlite_sequence WHERE name = '" + rebuilt + "';");
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT '" + rebuilt +
+                "', seq FROM sqlite_sequence WHERE name = '" + books + "';");
+
+        // the search index is rebuilt against the new content below, so its table and triggers go first
+        String fts = BookSearch.FTS_TABLE_NAME;
+        db.execSQL("DROP TRIGGER " + fts + "_before_update;");
+        db.execSQL("DROP TRIGGER " + fts + "_before_delete;");
+        db.execSQL("DROP TRIGGER " + fts + "_after_update;");
+        db.execSQL("DROP TRIGGER " + fts + "_after_insert;");
+        db.execSQL("DROP TABLE " + fts + ";");
+
+        // dropping the table also drops its indexes and the summary triggers, the summary row itself is unchanged
+        db.execSQL("DROP TABLE " + books + ";");
+        db.execSQL("ALTER TABLE " + rebuilt + " RENAME TO " + books + ";");
+
+        createIndexes(db, false);
+        createLowStockIndex(db);
+        createSortIndexes(db);
+        createStatsTriggers(db);
+
+        // the books of one supplier, and the books side of a lookup by supplier name
+        // CREATE INDEX idx_books_supplier ON books (supplier_id);
+        db.execSQL("CREATE INDEX " + INDEX_BOOKS_SUPPLIER + " ON " + books +
+                " (" + BookEntry.COLUMN_BOOK_SUPPLIER_ID + ");");
+
+        // a left join keeps the books without a supplier, and sqlite flattens the view into each query
+        // so the books indexes serve its filters and sorts as before
+        // CREATE VIEW books_with_suppliers AS SELECT books._id AS _id, books.name AS name, ...,
+        // suppliers.supplier_name AS supplier_name, suppliers.supplier_phone AS supplier_phone, ...,
+        // books.supplier_id AS supplier_id FROM books LEFT JOIN suppliers ON suppliers._id = books.supplier_id;
+        String join = " FROM " + books + " LEFT JOIN " + suppliers + " ON " + suppliers + "." + SupplierEntry._ID +
+                " = " + books + "." + BookEntry.COLUMN_BOOK_SUPPLIER_ID + ";";
+        db.execSQL("CREATE VIEW " + VIEW_BOOKS + " AS SELECT " +
+                viewColumn(books, BookEntry._ID, BookEntry._ID) + ", " +
+                viewColumn(books, BookEntry.COLUMN_BOOK_NAME, BookEntry.COLUMN_BOOK_NAME) + ", " +
+                viewColumn(books, BookEntry.COLUMN_BOOK_AUTHOR, BookEntry.COLUMN_BOOK_AUTHOR) + ", " +
+                viewColumn(books, BookEntry.COLUMN_BOOK_PRICE, BookEntry.COLUMN_BOOK_PRICE) + ", " +
+                viewColumn(books, BookEntry.COLUMN_BOOK_QUANTITY, BookEntry.COLUMN_BOOK_QUANTITY) + ", " +
+                viewColumn(suppliers, supplierName, BookEntry.COLUMN_BOOK_SUPPLIER_NAME) + ", " +
+                viewColumn(suppliers, supplierPhone, BookEntry.COLUMN_BOOK_SUPPLIER_PHONE) + ", " +
+                viewColumn(books, BookEntry.COLUMN_BOOK_REORDER_THRESHOLD, BookEntry.COLUMN_BOOK_REORDER_THRESHOLD) +
+                ", " + viewColumn(books, BookEntry.COLUMN_BOOK_SUPPLIER_ID, BookEntry.COLUMN_BOOK_SUPPLIER_ID) +
+                join);
+
+        // an external content fts4 table reads the content by rowid, so the view names the book _ID rowid
+        // CREATE VIEW books_fts_content AS SELECT books._id AS rowid, books.name AS name, books.author AS author,
+        // suppliers.supplier_name AS supplier_name FROM books LEFT JOIN suppliers ON suppliers._id = books.supplier_id;
+        db.execSQL("CREATE VIEW " + VIEW_SEARCH_CONTENT + " AS SELECT " +
+                viewColumn(books, BookEntry._ID, "rowid") + ", " +
+                viewColumn(books, BookEntry.COLUMN_BOOK_NAME, BookEntry.COLUMN_BOOK_NAME) + ", " +
+                viewColumn(books, BookEntry.COLUMN_BOOK_AUTHOR, BookEntry.COLUMN_BOOK_AUTHOR) + ", " +
+                viewColumn(suppliers, supplierName, BookEntry.COLUMN_BOOK_SUPPLIER_NAME) + join);
+
+        // CREATE VIRTUAL TABLE books_fts USING fts4(content="books_fts_content", prefix="2,3", name, author,
+        // supplier_name);
+        db.execSQL("CREATE VIRTUAL TABLE " + fts + " USING fts4(content=\"" + VIEW_SEARCH_CONTENT +
+                "\", prefix=\"2,3\", " + BookEntry.COLUMN_BOOK_NAME + ", " + BookEntry.COLUMN_BOOK_AUTHOR + ", " +
+                BookEntry.COLUMN_BOOK_SUPPLIER_NAME + ");");
+
+        // supplier rows are never changed, so only a new supplier_id changes the indexed supplier name
+        // (SELECT supplier_name FROM suppliers WHERE _id = new.supplier_id)
+        createSearchTriggers(db, BookEntry.COLUMN_BOOK_SUPPLIER_ID, "(SELECT " + supplierName + " FROM " +
+                suppliers + " WHERE " + SupplierEntry._ID + " = new." + BookEntry.COLUMN_BOOK_SUPPLIER_ID + ")");
+        db.execSQL("INSERT INTO " + fts + " (" + fts + ") VALUES ('rebuild');");
+    }
+
+    // version 10: progress of each catalog import, written in the same transaction as each chunk of books
+    // the primary key is the import ID, so the provider saves a chunk with a single INSERT OR REPLACE
+    private static void upgradeToVersion10(SQLiteDatabase db) {
+
+        // CREATE TABLE imports (import_id TEXT PRIMARY KEY, import_row INTEGER NOT NULL);
+        db.execSQL("CREATE TABLE " + ImportEntry.TABLE_NAME + " (" +
+                ImportEntry.COLUMN_IMPORT_ID + " TEXT PRIMARY KEY, " +
+                ImportEntry.COLUMN_IMPORT_ROW + " INTEGER NOT NULL);");
+    }
+
+    // "table.column AS alias" for a view
+    private static String viewColumn(String table, String column, String alias) {
+        return table + "." + column + " AS " + alias;
     }
 
 }
@@ -0,0 +1,307 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+
+// streams a catalog feed into the provider in fixed size transactional chunks
+// memory use is bounded by the chunk size no matter how large the feed is
+// the last source row of every chunk is saved in the transaction of the chunk, so an interrupted import
+// resumes after the last committed chunk and never inserts a row twice
+// run() blocks, so it must be called from a background thread
+public class BookImporter {
+
+    // number of rows committed in each bulk insert transaction
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    // report progress at most this often
+    private static final long PROGRESS_INTERVAL_MILLIS = 500;
+
+    // callbacks from the importing thread
+    public interface ProgressListener {
+
+        // called after a chunk is committed, at most every PROGRESS_INTERVAL_MILLIS and once at the end
+        void onProgress(long rowsImported, long rowsRejected, double rowsPerSecond);
+
+        // called for each row that fails validation, the row is skipped and the import continues
+        void onRowRejected(long rowNumber, String reason);
+    }
+
+    // totals for a single run
+    public static final class Result {
+
+        // rows committed during this run
+        public long rowsImported;
+
+        // rows that failed validation during this run
+        public long rowsRejected;
+
+        // rows skipped because an earlier run already committed them
+        public long rowsResumed;
+
+        // wall clock duration of this run
+        public long elapsedMillis;
+
+        // false if the run was cancelled before the end of the feed
+        public boolean completed;
+    }
+
+    private final ContentResolver mContentResolver;
+
+    // identifies the feed, for example the file name and modification time
+    private final String mImportId;
+
+    private final int mChunkSize;
+
+    // set from any thread to stop after the current chunk
+    private volatile boolean mCancelled;
+
+    public BookImporter(Context context, String importId) {
+        this(context, importId, DEFAULT_CHUNK_SIZE);
+    }
+
+    public BookImporter(Context context, String importId, int chunkSize) {
+        mContentResolver = context.getContentResolver();
+        mImportId = importId;
+        mChunkSize = chunkSize;
+    }
+
+    // open a reader for a .csv or .json file, the format is chosen by the file extension
+    public static BookRowReader openReader(File file) throws IOException {
+
+        InputStreamReader reader = new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8"));
+
+        if (file.getName().toLowerCase(Locale.ROOT).endsWith(".json")) {
+            return new JsonBookReader(reader);
+        }
+        return new CsvBookReader(reader);
+    }
+
+    // an import id that changes whenever the file content is replaced
+    public static String importIdFor(File file) {
+        return file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    }
+
+    // stop the import after the chunk in progress, it can be resumed later with run()
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    // forget the checkpoint so the next run starts from the first row
+    public void resetCheckpoint() {
+        mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_CLEAR_IMPORT_CHECKPOINT, mImportId, null);
+    }
+
+    // stream every row from the reader into the provider
+    // the reader is closed when the run ends
+    public Result run(BookRowReader reader, ProgressListener listener) throws IOException {
+
+        Result result = new Result();
+        long startTime = SystemClock.elapsedRealtime();
+        long lastProgressTime = startTime;
+
+        // source rows at or below the checkpoint were committed by an earlier run
+        Bundle saved = mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_GET_IMPORT_CHECKPOINT,
+                mImportId, null);
+        long checkpoint = saved.getLong(BookContract.KEY_IMPORT_ROW);
+
+        // containers are reused for every chunk
+        ContentValues[] chunk = new ContentValues[mChunkSize];
+        for (int i = 0; i < mChunkSize; i++) {
+            chunk[i] = new ContentValues();
+        }
+        ContentValues row = new ContentValues();
+        int chunkCount = 0;
+
+        try {
+
+            while (!mCancelled && reader.readRow(row)) {
+
+                long rowNumber = reader.getRowNumber();
+
+                // already committed before the previous run stopped
+                if (rowNumber <= checkpoint) {
+                    result.rowsResumed++;
+                    continue;
+                }
+
+                // convert and check the raw values, invalid rows are reported and skipped
+                String reason = reader.getRowError();
+                if (reason == null) {
+                    reason = convertRow(row, chunk[chunkCount]);
+                }
+                if (reason != null) {
+                    result.rowsRejected++;
+                    if (listener != null) {
+                        listener.onRowRejected(rowNumber, reason);
+                    }
+                } else {
+                    chunkCount++;
+                }
+
+                // the next row is not read until a full chunk is committed
+                if (chunkCount == mChunkSize) {
+                    result.rowsImported += commitChunk(chunk, chunkCount, rowNumber);
+                    chunkCount = 0;
+
+                    long now = SystemClock.elapsedRealtime();
+                    if (listener != null && now - lastProgressTime >= PROGRESS_INTERVAL_MILLIS) {
+                        listener.onProgress(result.rowsImported, result.rowsRejected,
+                                rowsPerSecond(result.rowsImported, now - startTime));
+                        lastProgressTime = now;
+                    }
+                }
+            }
+
+            // commit the final partial chunk
+            if (chunkCount > 0) {
+                result.rowsImported += commitChunk(chunk, chunkCount, reader.getRowNumber());
+            }
+
+        } finally {
+            reader.close();
+        }
+
+        // a finished import no longer needs its checkpoint
+        result.completed = !mCancelled;
+        if (result.completed) {
+            resetCheckpoint();
+        }
+
+        // fold the imported pages from the write-ahead log back into the database
+        if (result.rowsImported > 0) {
+            mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_CHECKPOINT, null, null);
+        }
+
+        result.elapsedMillis = SystemClock.elapsedRealtime() - startTime;
+        if (listener != null) {
+            listener.onProgress(result.rowsImported, result.rowsRejected,
+                    rowsPerSecond(result.rowsImported, result.elapsedMillis));
+        }
+
+        return result;
+    }
+
+    // insert the chunk in one transaction that also saves the last source row number as the checkpoint
+    // the books and the checkpoint are committed together or not at all
+    private int commitChunk(ContentValues[] chunk, int count, long lastRowNumber) {
+
+        ContentValues[] rows = count == chunk.length ? chunk : Arrays.copyOf(chunk, count);
+        Uri uri = BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_IMPORT_ID, mImportId)
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_IMPORT_ROW, String.valueOf(lastRowNumber))
+                .build();
+        return mContentResolver.bulkInsert(uri, rows);
+    }
+
+    private static double rowsPerSecond(long rows, long elapsedMillis) {
+        return elapsedMillis == 0 ? 0 : rows * 1000.0 / elapsedMillis;
+    }
+
+    // map a feed header or key to a BookEntry column, or null if it is not a book column
+    static String toColumn(String name) {
+
+        switch (name) {
+            case BookEntry.COLUMN_BOOK_NAME:
+            case BookEntry.COLUMN_BOOK_AUTHOR:
+            case BookEntry.COLUMN_BOOK_PRICE:
+            case BookEntry.COLUMN_BOOK_QUANTITY:
+            case BookEntry.COLUMN_BOOK_SUPPLIER_NAME:
+            case BookEntry.COLUMN_BOOK_SUPPLIER_PHONE:
+            case BookEntry.COLUMN_BOOK_REORDER_THRESHOLD:
+                return name;
+            default:
+                return null;
+        }
+    }
+
+    // convert the raw string values of a feed row into typed provider values
+    // the same rules as BookProvider are applied so a bad row never aborts a whole chunk
+    // return null if the row is valid, otherwise the reason it was rejected
+    private static String convertRow(ContentValues raw, ContentValues values) {
+
+        values.clear();
+
+        // book title is required
+        String name = trimmed(raw, BookEntry.COLUMN_BOOK_NAME);
+        if (name == null) {
+            return "missing name";
+        }
+        values.put(BookEntry.COLUMN_BOOK_NAME, name);
+
+        // price is required and can not be negative, the feed has dollars such as "7.99" and cents are stored
+        String priceString = trimmed(raw, BookEntry.COLUMN_BOOK_PRICE);
+        if (priceString == null) {
+            return "missing price";
+        }
+        try {
+            long price = Money.parse(priceString);
+            if (price < 0) {
+                return "negative price";
+            }
+            values.put(BookEntry.COLUMN_BOOK_PRICE, price);
+        } catch (NumberFormatException e) {
+            return "invalid price: " + priceString;
+        }
+
+        // quantity is optional and defaults to 0 in the database
+        String quantityString = trimmed(raw, BookEntry.COLUMN_BOOK_QUANTITY);
+        if (quantityString != null) {
+            try {
+                int quantity = Integer.parseInt(quantityString);
+                if (quantity < 0) {
+                    return "negative quantity";
+                }
+                values.put(BookEntry.COLUMN_BOOK_QUANTITY, quantity);
+            } catch (NumberFormatException e) {
+                return "invalid quantity: " + quantityString;
+            }
+        }
+
+        // reorder threshold is optional and defaults to 0 in the database
+        String thresholdString = trimmed(raw, BookEntry.COLUMN_BOOK_REORDER_THRESHOLD);
+        if (thresholdString != null) {
+            try {
+                int threshold = Integer.parseInt(thresholdString);
+                if (threshold < 0) {
+                    return "negative reorder threshold";
+                }
+                values.put(BookEntry.COLUMN_BOOK_REORDER_THRESHOLD, threshold);
+            } catch (NumberFormatException e) {
+                return "invalid reorder threshold: " + thresholdString;
+            }
+        }
+
+        // the author name, supplier name, and supplier phone are optional
+        values.put(BookEntry.COLUMN_BOOK_AUTHOR, trimmed(raw, BookEntry.COLUMN_BOOK_AUTHOR));
+        values.put(BookEntry.COLUMN_BOOK_SUPPLIER_NAME, trimmed(raw, BookEntry.COLUMN_BOOK_SUPPLIER_NAME));
+        values.put(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE, trimmed(raw, BookEntry.COLUMN_BOOK_SUPPLIER_PHONE));
+
+        return null;
+    }
+
+    // trimmed string value for the column, or null if missing or blank
+    private static String trimmed(ContentValues raw, String column) {
+        String value = raw.getAsString(column);
+        if (value == null) {
+            return null;
+        }
+        value = value.trim();
+        return TextUtils.isEmpty(value) ? null : value;
+    }
+
+}
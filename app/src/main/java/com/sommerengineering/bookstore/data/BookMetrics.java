@@ -0,0 +1,170 @@
+package com.sommerengineering.bookstore.data;
+
+import android.os.Bundle;
+import android.os.Trace;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// latency histograms and counters of every provider query, insert, update, and delete, by URI match code
+// recording only adds to atomic counters, so binder threads never wait on each other or on a reader,
+// and every operation is also a trace section named like "BookProvider query books/#"
+// a reader may see one operation counted in the histogram but not yet in the total, which is fine for metrics
+final class BookMetrics {
+
+    // operations
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int UPDATE = 2;
+    static final int DELETE = 3;
+
+    private static final String[] OPERATION_NAMES = {"query", "insert", "update", "delete"};
+
+    // histogram bucket i counts operations under 2^i microseconds, the last bucket counts everything slower
+    // the second to last bucket ends at about a second
+    static final int BUCKETS = 22;
+
+    // trace section names are limited to 127 characters
+    private static final String TRACE_PREFIX = "BookProvider ";
+
+    // URI match codes in the order of their metrics, any other code is counted under the unknown pattern
+    private final int[] mMatchCodes;
+
+    // one metric per operation and match code, the unknown pattern last in each operation
+    private final Metric[] mMetrics;
+
+    // change notifications requested by the provider
+    private final AtomicLong mNotifications = new AtomicLong();
+
+    // matchCodes and uriPatterns are parallel, for example BOOK_ID and "books/#"
+    BookMetrics(int[] matchCodes, String[] uriPatterns) {
+        mMatchCodes = matchCodes.clone();
+        int slots = matchCodes.length + 1;
+        mMetrics = new Metric[OPERATION_NAMES.length * slots];
+        for (int operation = 0; operation < OPERATION_NAMES.length; operation++) {
+            for (int slot = 0; slot < slots; slot++) {
+                String pattern = slot < matchCodes.length ? uriPatterns[slot] : "unknown";
+                mMetrics[operation * slots + slot] = new Metric(OPERATION_NAMES[operation] + " " + pattern);
+            }
+        }
+    }
+
+    // the metric of an operation on a URI match code
+    Metric get(int operation, int matchCode) {
+        int slot = 0;
+        while (slot < mMatchCodes.length && mMatchCodes[slot] != matchCode) {
+            slot++;
+        }
+        return mMetrics[operation * (mMatchCodes.length + 1) + slot];
+    }
+
+    void countNotification() {
+        mNotifications.incrementAndGet();
+    }
+
+    // every metric that has recorded an operation, see BookContract.METHOD_METRICS
+    Bundle toBundle() {
+        Bundle metrics = new Bundle();
+        for (Metric metric : mMetrics) {
+            if (metric.mCount.get() > 0) {
+                metrics.putBundle(metric.mName, metric.toBundle());
+            }
+        }
+        metrics.putLong(BookContract.KEY_METRIC_NOTIFICATIONS, mNotifications.get());
+        return metrics;
+    }
+
+    // one line per metric that has recorded an operation, for dumpsys
+    void dump(PrintWriter writer) {
+        writer.println("Operations:");
+        for (Metric metric : mMetrics) {
+            long count = metric.mCount.get();
+            if (count > 0) {
+                writer.println("  " + metric.mName + ": count " + count + ", errors " + metric.mErrors.get() +
+                        ", mean " + TimeUnit.NANOSECONDS.toMicros(metric.mTotalNanos.get() / count) + " us" +
+                        ", max " + TimeUnit.NANOSECONDS.toMicros(metric.mMaxNanos.get()) + " us" +
+                        ", rows " + metric.mRows.get());
+            }
+        }
+        writer.println("  notifications: " + mNotifications.get());
+    }
+
+    // counters of a single operation on a single URI pattern
+    static final class Metric {
+
+        // "query books/#", also the trace section name after TRACE_PREFIX
+        private final String mName;
+        private final String mTraceName;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mErrors = new AtomicLong();
+        private final AtomicLong mTotalNanos = new AtomicLong();
+        private final AtomicLong mMaxNanos = new AtomicLong();
+        private final AtomicLong mRows = new AtomicLong();
+
+        private Metric(String name) {
+            mName = name;
+            mTraceName = TRACE_PREFIX + name;
+        }
+
+        // open the trace section and return the start time to pass to end()
+        long begin() {
+            Trace.beginSection(mTraceName);
+            return System.nanoTime();
+        }
+
+        // "query books/#"
+        String name() {
+            return mName;
+        }
+
+        // close the trace section and record the operation, rows is negative if it threw
+        // return the time it took in nanoseconds
+        long end(long start, long rows) {
+
+            long nanos = System.nanoTime() - start;
+            Trace.endSection();
+
+            mCount.incrementAndGet();
+            mTotalNanos.addAndGet(nanos);
+            mBuckets.incrementAndGet(bucket(nanos));
+            if (rows < 0) {
+                mErrors.incrementAndGet();
+            } else {
+                mRows.addAndGet(rows);
+            }
+
+            long max = mMaxNanos.get();
+            while (nanos > max && !mMaxNanos.compareAndSet(max, nanos)) {
+                max = mMaxNanos.get();
+            }
+            return nanos;
+        }
+
+        // index of the first bucket whose bound is above the time
+        static int bucket(long nanos) {
+            long micros = nanos / 1000;
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            return Math.min(bucket, BUCKETS - 1);
+        }
+
+        private Bundle toBundle() {
+            long[] buckets = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = mBuckets.get(i);
+            }
+            Bundle metric = new Bundle();
+            metric.putLong(BookContract.KEY_METRIC_COUNT, mCount.get());
+            metric.putLong(BookContract.KEY_METRIC_ERRORS, mErrors.get());
+            metric.putLong(BookContract.KEY_METRIC_TOTAL_NANOS, mTotalNanos.get());
+            metric.putLong(BookContract.KEY_METRIC_MAX_NANOS, mMaxNanos.get());
+            metric.putLong(BookContract.KEY_METRIC_ROWS, mRows.get());
+            metric.putLongArray(BookContract.KEY_METRIC_HISTOGRAM, buckets);
+            return metric;
+        }
+    }
+
+}
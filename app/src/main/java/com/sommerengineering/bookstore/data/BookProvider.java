@@ -1,16 +1,41 @@
 package com.sommerengineering.bookstore.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.text.TextUtils;
 import android.util.Log;
 
-import java.security.Provider;
 import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookContract.ImportEntry;
+import com.sommerengineering.bookstore.data.BookContract.SaleEntry;
+import com.sommerengineering.bookstore.data.BookContract.StatsEntry;
+import com.sommerengineering.bookstore.data.BookContract.SupplierEntry;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 // content provider
 public class BookProvider extends ContentProvider {
@@ -24,6 +49,84 @@ public class BookProvider extends ContentProvider {
     // codes for URI matcher
     private static final int BOOKS = 100; // entire table
     private static final int BOOK_ID = 101; // specific row
+    private static final int BOOK_SEARCH = 102; // full text search
+    private static final int BOOK_SELL = 103; // sale of a specific row
+    private static final int BOOK_STATS = 104; // inventory summary
+    private static final int BOOK_LOW_STOCK = 105; // books at or below their reorder threshold
+    private static final int BOOK_EXPORT = 106; // every book as comma separated text
+    private static final int SALES = 200; // entire sales ledger
+    private static final int SUPPLIERS = 300; // entire suppliers table
+    private static final int SUPPLIER_ID = 301; // specific supplier
+    private static final int SUPPLIER_BOOKS = 302; // books of a specific supplier
+
+    // URI patterns of the match codes, as they appear in metrics and trace sections
+    private static final int[] MATCH_CODES = {BOOKS, BOOK_ID, BOOK_SEARCH, BOOK_SELL, BOOK_STATS, BOOK_LOW_STOCK,
+            BOOK_EXPORT, SALES, SUPPLIERS, SUPPLIER_ID, SUPPLIER_BOOKS};
+    private static final String[] MATCH_PATTERNS = {"books", "books/#", "books/search/*", "books/#/sell", "books/stats",
+            "books/low_stock", "books/export.csv", "sales", "suppliers", "suppliers/#", "suppliers/#/books"};
+
+    // compiled insert reused for every row of a bulk insert
+    // equivalent to "INSERT INTO books (name, author, price, quantity, reorder_threshold, supplier_id)
+    // VALUES (?,?,?,?,?,?)"
+    private static final String SQL_INSERT_BOOK =
+            "INSERT INTO " + BookEntry.TABLE_NAME + " (" +
+                    BookEntry.COLUMN_BOOK_NAME + ", " +
+                    BookEntry.COLUMN_BOOK_AUTHOR + ", " +
+                    BookEntry.COLUMN_BOOK_PRICE + ", " +
+                    BookEntry.COLUMN_BOOK_QUANTITY + ", " +
+                    BookEntry.COLUMN_BOOK_REORDER_THRESHOLD + ", " +
+                    BookEntry.COLUMN_BOOK_SUPPLIER_ID + ") VALUES (?,?,?,?,?,?)";
+
+    // every column of a single book, read when a point lookup misses the row cache
+    // a constant string is prepared once per connection and found in its statement cache after that
+    // equivalent to "SELECT _id, name, ... reorder_threshold, supplier_id FROM books_with_suppliers WHERE _id=?"
+    private static final String SQL_SELECT_BOOK =
+            "SELECT " + TextUtils.join(", ", BookRowCache.COLUMNS) + " FROM " + BookDbHelper.VIEW_BOOKS +
+                    " WHERE " + BookEntry._ID + "=?";
+
+    // merges and debounces change notifications
+    private BookChangeNotifier mChangeNotifier;
+
+    // URIs changed by the batch the calling thread is applying, null outside of applyBatch()
+    // the notifications are held until the transaction commits and dropped if it rolls back
+    private final ThreadLocal<ArrayList<Uri>> mBatchChanges = new ThreadLocal<>();
+
+    // latency and row counts of every query, insert, update, and delete
+    private final BookMetrics mMetrics = new BookMetrics(MATCH_CODES, MATCH_PATTERNS);
+
+    // operations over the slow threshold, with the plans of their statements
+    private BookSlowQueryLog mSlowQueryLog;
+
+    // full rows of recently read books, for point lookups on a single book URI
+    private final BookRowCache mRowCache = new BookRowCache();
+
+    // URIs whose cached rows were invalidated by the batch the calling thread is applying, null outside of applyBatch()
+    // they are invalidated again once the transaction ends, since another thread may read and cache
+    // the previous committed row between the first invalidation and the commit
+    private final ThreadLocal<ArrayList<Uri>> mBatchInvalidations = new ThreadLocal<>();
+
+    // held for reading by every operation on the database, and for writing while a restore swaps the file
+    // operations never wait on each other through it, only a restore waits for the ones in progress
+    // a cursor returned before a restore keeps the window it holds and ends there, see BookCursor,
+    // and it is notified as soon as the restore is done, without waiting for the debounce of BookChangeNotifier
+    private final ReentrantReadWriteLock mDatabaseLock = new ReentrantReadWriteLock();
+
+    // snapshots of the database file, and restores from them
+    private BookSnapshots mSnapshots;
+
+    // compiled single row statements of the calling thread, see BookStatements
+    private final ThreadLocal<BookStatements> mStatements = new ThreadLocal<>();
+
+    // the statements of every thread, so a restore can close the ones compiled against the replaced file
+    private final ArrayList<BookStatements> mAllStatements = new ArrayList<>();
+
+    // writes the export URI on the background thread of openPipeHelper()
+    private final PipeDataWriter<Void> mExportWriter = new PipeDataWriter<Void>() {
+        @Override
+        public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType, Bundle opts, Void args) {
+            writeExport(output, uri);
+        }
+    };
 
     // UriMatcher object matches a content URI to an integer code
     // the input passed to the constructor the integer code to return if the root URI is passed
@@ -37,6 +140,21 @@ public class BookProvider extends ContentProvider {
         // for example, the first line assigns code 100 to "content://com.sommerengineering.bookstore/books"
         mUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS, BOOKS);
         mUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS + "/#", BOOK_ID);
+        mUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS + "/" +
+                BookContract.PATH_SEARCH + "/*", BOOK_SEARCH);
+        mUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS + "/#/" +
+                BookContract.PATH_SELL, BOOK_SELL);
+        mUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS + "/" +
+                BookContract.PATH_STATS, BOOK_STATS);
+        mUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS + "/" +
+                BookContract.PATH_LOW_STOCK, BOOK_LOW_STOCK);
+        mUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS + "/" +
+                BookContract.PATH_EXPORT, BOOK_EXPORT);
+        mUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_SALES, SALES);
+        mUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_SUPPLIERS, SUPPLIERS);
+        mUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+        mUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_SUPPLIERS + "/#/" +
+                BookContract.PATH_BOOKS, SUPPLIER_BOOKS);
 
     }
 
@@ -46,12 +164,34 @@ public class BookProvider extends ContentProvider {
 
         // create and initialize a database helper object
         mDbHelper = new BookDbHelper(getContext());
+        mSlowQueryLog = new BookSlowQueryLog(mDbHelper);
+        mSnapshots = new BookSnapshots(new File(getContext().getFilesDir(), BookSnapshots.DIRECTORY), mDbHelper);
+        mChangeNotifier = new BookChangeNotifier(getContext().getContentResolver());
         return true;
     }
 
-    // perform a SQL query on a given URI
+    // perform a SQL query on a given URI, recorded in the metrics
+    // the row count is read here, which runs the query before the cursor is returned,
+    // so the time covers the work and not just the compile, a CursorLoader reads the count right away anyway
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        BookMetrics.Metric metric = mMetrics.get(BookMetrics.QUERY, mUriMatcher.match(uri));
+        long start = metric.begin();
+        mSlowQueryLog.begin();
+        long rows = -1;
+        mDatabaseLock.readLock().lock();
+        try {
+            Cursor cursor = runQuery(uri, projection, selection, selectionArgs, sortOrder);
+            rows = cursor.getCount();
+            return cursor;
+        } finally {
+            mSlowQueryLog.end(metric.name(), metric.end(start, rows), rows);
+            mDatabaseLock.readLock().unlock();
+        }
+    }
+
+    // perform a SQL query on a given URI
+    private Cursor runQuery(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
 
         // get reference to readable database
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
@@ -67,29 +207,157 @@ public class BookProvider extends ContentProvider {
             // full books table
             case BOOKS:
 
+                // range filters from the URI narrow the caller selection, and its sort applies if the caller has none
+                ArrayList<String> filterArgs = new ArrayList<>();
+                String filter = buildCatalogFilter(uri, filterArgs);
+                if (filter != null) {
+                    selection = selection == null ? filter : "(" + selection + ") AND " + filter;
+                    selectionArgs = appendArgs(selectionArgs, filterArgs);
+                }
+                if (sortOrder == null) {
+                    sortOrder = buildCatalogSortOrder(uri);
+                }
+
+                // paged query if the URI includes a limit, otherwise the entire books table
+                String limit = uri.getQueryParameter(BookContract.QUERY_PARAMETER_LIMIT);
+                String afterId = uri.getQueryParameter(BookContract.QUERY_PARAMETER_AFTER_ID);
+                if (limit != null || afterId != null) {
+                    cursor = queryPage(database, uri, projection, selection, selectionArgs, sortOrder);
+                    break;
+                }
+
                 // perform a query on the entire books table
-                cursor = database.query(BookEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                String books = booksSource(projection, selection, sortOrder);
+                mSlowQueryLog.recordQuery(books, projection, selection, selectionArgs, sortOrder, null);
+                cursor = database.query(books, projection, selection, selectionArgs, null, null, sortOrder);
                 break;
 
             // specific row in books table
             case BOOK_ID:
 
+                // parseId extracts only the integer id from the content URI
+                long id = ContentUris.parseId(uri);
+
+                // plain columns are served from the row cache, reading the full row through on a miss
+                if (BookRowCache.canServe(projection)) {
+                    cursor = queryCachedRow(database, id, projection);
+                    break;
+                }
+
                 // the ? and array pattern protects against SQL injection hacker attacks
                 // number of ? in selection must match number of elements in selectionArgs[]
                 // equivalent to string "_id=?"
                 selection = BookEntry._ID + "=?";
 
-                // parseId extracts only the integer id from the content URI
                 // creates an string array holding a single element with "#", where # is any integer
-                selectionArgs = new String[] {String.valueOf(ContentUris.parseId(uri))};
+                selectionArgs = new String[] {String.valueOf(id)};
 
                 // perform a query on the books table where _id equals #, resulting in a single row cursor
-                cursor = database.query(BookEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                String book = booksSource(projection, selection, sortOrder);
+                mSlowQueryLog.recordQuery(book, projection, selection, selectionArgs, sortOrder, null);
+                cursor = database.query(book, projection, selection, selectionArgs, null, null, sortOrder);
+
+                break;
+
+            // ranked full text search, the last path segment is the search text
+            case BOOK_SEARCH:
+
+                // an optional limit parameter caps the number of results
+                String searchLimit = uri.getQueryParameter(BookContract.QUERY_PARAMETER_LIMIT);
+                int maxResults = searchLimit == null ? BookSearch.DEFAULT_LIMIT :
+                        (int) parseNonNegative(searchLimit, uri);
+
+                cursor = BookSearch.query(database, uri.getLastPathSegment(), projection, maxResults);
 
+                // text without any words matches nothing
+                if (cursor == null) {
+                    cursor = new MatrixCursor(projection == null ? new String[] {BookEntry._ID} : projection);
+                }
                 break;
 
+            // low stock watchlist, read through the partial index so only the watchlist rows are visited
+            case BOOK_LOW_STOCK:
+
+                // the caller selection narrows the watchlist further
+                String lowStockSelection = selection == null ? BookDbHelper.LOW_STOCK_SELECTION :
+                        "(" + BookDbHelper.LOW_STOCK_SELECTION + ") AND (" + selection + ")";
+
+                // an optional limit parameter caps the number of rows
+                String lowStockLimit = uri.getQueryParameter(BookContract.QUERY_PARAMETER_LIMIT);
+                if (lowStockLimit != null) {
+                    lowStockLimit = String.valueOf(parseNonNegative(lowStockLimit, uri));
+                }
+                String lowStockOrder = sortOrder == null ? BookEntry._ID : sortOrder;
+                String lowStockBooks = booksSource(projection, selection, lowStockOrder);
+                mSlowQueryLog.recordQuery(lowStockBooks, projection, lowStockSelection, selectionArgs,
+                        lowStockOrder, lowStockLimit);
+                cursor = database.query(lowStockBooks, projection, lowStockSelection, selectionArgs,
+                        null, null, lowStockOrder, lowStockLimit);
+                break;
+
+            // sales ledger, for example the sales of one book since a given time
+            case SALES:
+                mSlowQueryLog.recordQuery(SaleEntry.TABLE_NAME, projection, selection, selectionArgs, sortOrder, null);
+                cursor = database.query(SaleEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                break;
+
+            // inventory summary, a single row maintained by triggers
+            case BOOK_STATS:
+
+                mSlowQueryLog.recordQuery(StatsEntry.TABLE_NAME, projection, selection, selectionArgs, sortOrder, null);
+                cursor = database.query(StatsEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+
+                // the summary changes with any book, so it is notified of every change under the books URI
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                return cursor;
+
+            // suppliers of the catalog, in name order through the unique index unless the caller sorts
+            case SUPPLIERS:
+
+                String supplierOrder = sortOrder == null ? SupplierEntry.COLUMN_SUPPLIER_NAME : sortOrder;
+                mSlowQueryLog.recordQuery(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        supplierOrder, null);
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, supplierOrder);
+
+                // supplier rows are only ever added by a book write, so they are notified under the books URI
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                return cursor;
+
+            // specific supplier
+            case SUPPLIER_ID:
+
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[] {String.valueOf(ContentUris.parseId(uri))};
+                mSlowQueryLog.recordQuery(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        sortOrder, null);
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                return cursor;
+
+            // books of a specific supplier, found through the supplier_id index
+            case SUPPLIER_BOOKS:
+
+                // the supplier ID is the second to last path segment, and the caller selection narrows the books
+                String supplierId = String.valueOf(Long.parseLong(uri.getPathSegments().get(1)));
+                String supplierSelection = BookEntry.COLUMN_BOOK_SUPPLIER_ID + "=?";
+                String supplierBooksSelection = selection == null ? supplierSelection :
+                        "(" + selection + ") AND " + supplierSelection;
+                String[] supplierBooksArgs = appendArgs(selectionArgs, Collections.singletonList(supplierId));
+                String supplierBooksOrder = sortOrder == null ? BookEntry._ID : sortOrder;
+                String supplierBooks = booksSource(projection, selection, supplierBooksOrder);
+                mSlowQueryLog.recordQuery(supplierBooks, projection, supplierBooksSelection, supplierBooksArgs,
+                        supplierBooksOrder, null);
+                cursor = database.query(supplierBooks, projection, supplierBooksSelection, supplierBooksArgs,
+                        null, null, supplierBooksOrder);
+
+                // any book may move to or from the supplier, so the list is notified of every change to books
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                return cursor;
+
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI: " + uri);
         }
@@ -102,9 +370,231 @@ public class BookProvider extends ContentProvider {
 
     }
 
-    // insert new data into provider
+    // single book lookup through the row cache
+    // a miss reads every column so the cached row can serve any later projection
+    private Cursor queryCachedRow(SQLiteDatabase database, long id, String[] projection) {
+
+        Cursor cached = mRowCache.get(id, projection);
+        if (cached != null) {
+            return cached;
+        }
+
+        // taken before the read, so a row changed while it is being read is not stored
+        long generation = mRowCache.generation();
+
+        Object[] row = null;
+        String[] args = {String.valueOf(id)};
+        mSlowQueryLog.recordRawQuery(SQL_SELECT_BOOK, args);
+        Cursor cursor = database.rawQuery(SQL_SELECT_BOOK, args);
+        try {
+            if (cursor.moveToFirst()) {
+                row = BookRowCache.readRow(cursor);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // a missing book is not cached, so a new row never has to invalidate anything
+        if (row == null) {
+            return new MatrixCursor(projection == null ? BookRowCache.COLUMNS : projection, 0);
+        }
+
+        mRowCache.put(id, row, generation);
+        return BookRowCache.toCursor(row, projection);
+    }
+
+    // perform a query for a single page of the books table using the paging parameters of the URI
+    // pages are always ordered by _ID unless the caller provides another sort order
+    private Cursor queryPage(SQLiteDatabase database, Uri uri, String[] projection, String selection,
+                             String[] selectionArgs, String sortOrder) {
+
+        String limit = uri.getQueryParameter(BookContract.QUERY_PARAMETER_LIMIT);
+        String offset = uri.getQueryParameter(BookContract.QUERY_PARAMETER_OFFSET);
+        String afterId = uri.getQueryParameter(BookContract.QUERY_PARAMETER_AFTER_ID);
+
+        // keyset paging: seek past the last row of the previous page using the primary key
+        if (afterId != null) {
+
+            // the last ID of a page only marks its end when the rows are in _ID order
+            if (sortOrder != null && !sortOrder.equals(BookEntry._ID)) {
+                throw new IllegalArgumentException("Keyset paging requires the _ID order for: " + uri);
+            }
+
+            // the ID is bound as an argument, the same as any other selection argument
+            String keysetSelection = BookEntry._ID + ">?";
+            selection = selection == null ? keysetSelection : "(" + selection + ") AND " + keysetSelection;
+            selectionArgs = appendArgs(selectionArgs,
+                    Collections.singletonList(String.valueOf(parseNonNegative(afterId, uri))));
+        }
+
+        // rows must come back in a stable order for pages to line up
+        if (sortOrder == null) {
+            sortOrder = BookEntry._ID;
+        }
+
+        // sqlite limit clause in the form "offset,limit"
+        String limitClause = null;
+        if (limit != null) {
+            limitClause = String.valueOf(parseNonNegative(limit, uri));
+            if (offset != null) {
+                limitClause = parseNonNegative(offset, uri) + "," + limitClause;
+            }
+        }
+
+        String books = booksSource(projection, selection, sortOrder);
+        mSlowQueryLog.recordQuery(books, projection, selection, selectionArgs, sortOrder, limitClause);
+        return database.query(books, projection, selection, selectionArgs, null, null, sortOrder, limitClause);
+    }
+
+    // the books table, or the view that joins the supplier name and phone if the query uses either of them
+    // a null projection is every column, which includes both
+    // reading the table directly keeps the join out of the catalog and paging queries that never show a supplier
+    private static String booksSource(String[] projection, String selection, String sortOrder) {
+        if (projection == null || namesSupplier(selection) || namesSupplier(sortOrder)) {
+            return BookDbHelper.VIEW_BOOKS;
+        }
+        for (String column : projection) {
+            if (namesSupplier(column)) {
+                return BookDbHelper.VIEW_BOOKS;
+            }
+        }
+        return BookEntry.TABLE_NAME;
+    }
+
+    // true if the clause mentions the supplier name or phone, which are only columns of the view
+    private static boolean namesSupplier(String clause) {
+        return clause != null && (clause.contains(BookEntry.COLUMN_BOOK_SUPPLIER_NAME) ||
+                clause.contains(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE));
+    }
+
+    // a selection of the books table for a selection that may mention the supplier name or phone
+    // an update or delete can not run against the view, so the view only picks the rows
+    // equivalent to "_id IN (SELECT _id FROM books_with_suppliers WHERE <selection>)"
+    private static String toBookSelection(String selection) {
+        if (!namesSupplier(selection)) {
+            return selection;
+        }
+        return BookEntry._ID + " IN (SELECT " + BookEntry._ID + " FROM " + BookDbHelper.VIEW_BOOKS +
+                " WHERE " + selection + ")";
+    }
+
+    // selection for the range filter parameters of the URI, or null if there are none
+    // the bounds are bound as arguments and added to args in the order of their placeholders
+    private static String buildCatalogFilter(Uri uri, List<String> args) {
+
+        StringBuilder filter = new StringBuilder();
+        appendBound(filter, args, uri, BookContract.QUERY_PARAMETER_MIN_PRICE, BookEntry.COLUMN_BOOK_PRICE + ">=?");
+        appendBound(filter, args, uri, BookContract.QUERY_PARAMETER_MAX_PRICE, BookEntry.COLUMN_BOOK_PRICE + "<=?");
+        appendBound(filter, args, uri, BookContract.QUERY_PARAMETER_QUANTITY_BELOW,
+                BookEntry.COLUMN_BOOK_QUANTITY + "<?");
+        return filter.length() == 0 ? null : filter.toString();
+    }
+
+    // add the comparison to the filter if the URI has the parameter
+    private static void appendBound(StringBuilder filter, List<String> args, Uri uri, String parameter,
+                                    String comparison) {
+
+        String value = uri.getQueryParameter(parameter);
+        if (value == null) {
+            return;
+        }
+        if (filter.length() > 0) {
+            filter.append(" AND ");
+        }
+        filter.append(comparison);
+        args.add(String.valueOf(parseNonNegative(value, uri)));
+    }
+
+    // sort order for the sort parameters of the URI, or null if there are none
+    // ties are broken by _ID in the same direction, which is also the order of every sort index
+    private static String buildCatalogSortOrder(Uri uri) {
+
+        String sort = uri.getQueryParameter(BookContract.QUERY_PARAMETER_SORT);
+        String order = uri.getQueryParameter(BookContract.QUERY_PARAMETER_ORDER);
+        if (sort == null && order == null) {
+            return null;
+        }
+
+        // only the sorts backed by an index are accepted, the column name is never taken from the URI as is
+        String column;
+        if (sort == null) {
+            column = null;
+        } else if (sort.equals(BookContract.SORT_NAME)) {
+            column = BookEntry.COLUMN_BOOK_NAME;
+        } else if (sort.equals(BookContract.SORT_AUTHOR)) {
+            column = BookEntry.COLUMN_BOOK_AUTHOR;
+        } else if (sort.equals(BookContract.SORT_PRICE)) {
+            column = BookEntry.COLUMN_BOOK_PRICE;
+        } else if (sort.equals(BookContract.SORT_QUANTITY)) {
+            column = BookEntry.COLUMN_BOOK_QUANTITY;
+        } else {
+            throw new IllegalArgumentException("Invalid sort " + sort + " for: " + uri);
+        }
+
+        String direction;
+        if (order == null || order.equals(BookContract.ORDER_ASCENDING)) {
+            direction = " ASC";
+        } else if (order.equals(BookContract.ORDER_DESCENDING)) {
+            direction = " DESC";
+        } else {
+            throw new IllegalArgumentException("Invalid order " + order + " for: " + uri);
+        }
+
+        // ascending _ID is the default order, which keyset paging relies on
+        if (column == null) {
+            return direction.equals(" ASC") ? null : BookEntry._ID + direction;
+        }
+
+        // equivalent to "price DESC, _id DESC"
+        return column + direction + ", " + BookEntry._ID + direction;
+    }
+
+    // the caller selection arguments followed by more arguments
+    private static String[] appendArgs(String[] selectionArgs, List<String> moreArgs) {
+        int argCount = selectionArgs == null ? 0 : selectionArgs.length;
+        String[] args = new String[argCount + moreArgs.size()];
+        if (argCount > 0) {
+            System.arraycopy(selectionArgs, 0, args, 0, argCount);
+        }
+        for (int i = 0; i < moreArgs.size(); i++) {
+            args[argCount + i] = moreArgs.get(i);
+        }
+        return args;
+    }
+
+    // paging, range, and filter parameters must be non-negative integers
+    private static long parseNonNegative(String value, Uri uri) {
+        try {
+            long number = Long.parseLong(value);
+            if (number >= 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the exception below
+        }
+        throw new IllegalArgumentException("Invalid query parameter " + value + " for: " + uri);
+    }
+
+    // insert new data into provider, recorded in the metrics
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
+        BookMetrics.Metric metric = mMetrics.get(BookMetrics.INSERT, mUriMatcher.match(uri));
+        long start = metric.begin();
+        mSlowQueryLog.begin();
+        long rows = -1;
+        mDatabaseLock.readLock().lock();
+        try {
+            Uri newUri = runInsert(uri, contentValues);
+            rows = newUri == null ? 0 : 1;
+            return newUri;
+        } finally {
+            mSlowQueryLog.end(metric.name(), metric.end(start, rows), rows);
+            mDatabaseLock.readLock().unlock();
+        }
+    }
+
+    // insert new data into provider
+    private Uri runInsert(Uri uri, ContentValues contentValues) {
 
         // get pattern match code for URI
         final int match = mUriMatcher.match(uri);
@@ -121,7 +611,7 @@ public class BookProvider extends ContentProvider {
 
             // only the full table case is matched, everything else throws exception
             default:
-                throw new IllegalArgumentException("Cannot query unknown URI: " + uri);
+                throw new IllegalArgumentException("Insertion is not supported for: " + uri);
         }
     }
 
@@ -129,6 +619,54 @@ public class BookProvider extends ContentProvider {
     // return content URI address for this new row
     private Uri insertBook(Uri uri, ContentValues values) {
 
+        // check validity of all required book attributes
+        validateBook(values);
+
+        // get reference to writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // insert new row into the books table and get the new row id
+        // a book with a supplier name or phone is stored with the ID of its supplier row,
+        // and the supplier row is found or added in the same transaction as the book
+        long newRowId;
+        if (hasSupplier(values)) {
+            database.beginTransaction();
+            try {
+                ContentValues bookValues = withSupplierId(database, values,
+                        values.getAsString(BookEntry.COLUMN_BOOK_SUPPLIER_NAME),
+                        values.getAsString(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE));
+                newRowId = database.insert(BookEntry.TABLE_NAME, null, bookValues);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        } else {
+            newRowId = database.insert(BookEntry.TABLE_NAME, null, values);
+        }
+
+        // if the insertion failed then newRowId = -1, return null
+        if (newRowId == -1) {
+            Log.e(LOG_TAG, "Insertion failed for: " + uri);
+            return null;
+        }
+
+        // the row cache needs no invalidation, IDs are never reused and missing books are never cached
+
+        // if 1 or more rows of were inserted then notify all listeners to this URI
+        // any cursor pointing to this URI is invalidated when the change notification occurs
+        // and the system calls the provider query() to refresh that cursor
+        if (newRowId > 0) {
+            notifyChange(uri);
+        }
+
+        // return the new URI with the new row ID appended to it
+        return ContentUris.withAppendedId(uri, newRowId);
+    }
+
+    // validation rules for a new book, shared by single and bulk inserts
+    // throws an exception if any required attribute is missing or invalid
+    private void validateBook(ContentValues values) {
+
         // check validity of name value
         // extract the value from the key : value pair
         String name = values.getAsString(BookEntry.COLUMN_BOOK_NAME);
@@ -136,9 +674,8 @@ public class BookProvider extends ContentProvider {
             throw new IllegalArgumentException("Book requires a name!");
         }
 
-        // check validity of the book price
-        // use a capital letter Float rather than float since we are checking for nullity
-        Float price = values.getAsFloat(BookEntry.COLUMN_BOOK_PRICE);
+        // check validity of the book price in cents
+        Long price = getPriceCents(values);
         if (price == null || price < 0) {
             throw new IllegalArgumentException("Book requires a valid price!");
         }
@@ -150,43 +687,309 @@ public class BookProvider extends ContentProvider {
             throw new IllegalArgumentException("Book requires a valid quantity!");
         }
 
+        // check validity of the reorder threshold, null is acceptable as the database will default to 0
+        Integer threshold = values.getAsInteger(BookEntry.COLUMN_BOOK_REORDER_THRESHOLD);
+        if (threshold != null && threshold < 0) {
+            throw new IllegalArgumentException("Book requires a valid reorder threshold!");
+        }
+
+        // a supplier is given either by the ID of its row or by its name and phone, never both
+        if (hasSupplier(values) && values.containsKey(BookEntry.COLUMN_BOOK_SUPPLIER_ID)) {
+            throw new IllegalArgumentException("Book takes either a supplier ID or a supplier name and phone!");
+        }
+
         // the author name, supplier name, and supplier phone can all be null, no need to check
+    }
+
+    // true if the values set the supplier name or phone
+    private static boolean hasSupplier(ContentValues values) {
+        return values.containsKey(BookEntry.COLUMN_BOOK_SUPPLIER_NAME) ||
+                values.containsKey(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE);
+    }
+
+    // the values as columns of the books table, with the supplier name and phone replaced by the ID of the
+    // supplier row for the given pair, must be called inside a transaction, see BookStatements.internSupplier()
+    private ContentValues withSupplierId(SQLiteDatabase database, ContentValues values, String supplierName,
+                                         String supplierPhone) {
+
+        if (values.containsKey(BookEntry.COLUMN_BOOK_SUPPLIER_ID)) {
+            throw new IllegalArgumentException("Book takes either a supplier ID or a supplier name and phone!");
+        }
+
+        ContentValues bookValues = new ContentValues(values);
+        bookValues.remove(BookEntry.COLUMN_BOOK_SUPPLIER_NAME);
+        bookValues.remove(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE);
+        long supplierId = statements(database).internSupplier(supplierName, supplierPhone);
+        if (supplierId == -1) {
+            bookValues.putNull(BookEntry.COLUMN_BOOK_SUPPLIER_ID);
+        } else {
+            bookValues.put(BookEntry.COLUMN_BOOK_SUPPLIER_ID, supplierId);
+        }
+        return bookValues;
+    }
+
+    // price in cents, or null if missing
+    // a fractional value is rejected rather than truncated, since it is almost certainly a price in dollars
+    private static Long getPriceCents(ContentValues values) {
+        Object price = values.get(BookEntry.COLUMN_BOOK_PRICE);
+        if (price instanceof Float || price instanceof Double) {
+            throw new IllegalArgumentException("Book price must be a whole number of cents: " + price);
+        }
+        return values.getAsLong(BookEntry.COLUMN_BOOK_PRICE);
+    }
+
+    // insert many books in a single transaction, recorded in the metrics as one insert of many rows
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] valuesArray) {
+        BookMetrics.Metric metric = mMetrics.get(BookMetrics.INSERT, mUriMatcher.match(uri));
+        long start = metric.begin();
+        mSlowQueryLog.begin();
+        long rows = -1;
+        mDatabaseLock.readLock().lock();
+        try {
+            int rowsInserted = runBulkInsert(uri, valuesArray);
+            rows = rowsInserted;
+            return rowsInserted;
+        } finally {
+            mSlowQueryLog.end(metric.name(), metric.end(start, rows), rows);
+            mDatabaseLock.readLock().unlock();
+        }
+    }
+
+    // insert many books in a single transaction
+    // return integer number of rows inserted
+    private int runBulkInsert(Uri uri, ContentValues[] valuesArray) {
+
+        // get pattern match code for URI
+        final int match = mUriMatcher.match(uri);
+
+        // bulk insert is always with respect to the end of the entire table
+        if (match != BOOKS) {
+            throw new IllegalArgumentException("Bulk insert is not supported for: " + uri);
+        }
+
+        // a chunk of an import names the import and its last source row, checked before anything is written
+        String importId = uri.getQueryParameter(BookContract.QUERY_PARAMETER_IMPORT_ID);
+        long importRow = importId == null ? 0 :
+                parseNonNegative(uri.getQueryParameter(BookContract.QUERY_PARAMETER_IMPORT_ROW), uri);
 
         // get reference to writable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // insert new row into the books table and get the new row id
-        long newRowId = database.insert(BookEntry.TABLE_NAME, null, values);
+        // track the number of rows inserted
+        int rowsInserted = 0;
+
+        // one transaction for all rows means one journal commit instead of one per row
+        // any invalid row throws before setTransactionSuccessful() and the whole batch is rolled back
+        database.beginTransaction();
+        try {
+
+            // compile the insert once and rebind it for every row
+            SQLiteStatement statement = database.compileStatement(SQL_INSERT_BOOK);
+            BookStatements statements = statements(database);
+            try {
+
+                for (ContentValues values : valuesArray) {
+
+                    // same rules as a single insert
+                    validateBook(values);
+
+                    // the few suppliers of a catalog are found with an index lookup after the first row of each
+                    long supplierId;
+                    if (hasSupplier(values)) {
+                        supplierId = statements.internSupplier(values.getAsString(BookEntry.COLUMN_BOOK_SUPPLIER_NAME),
+                                values.getAsString(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE));
+                    } else {
+                        Long id = values.getAsLong(BookEntry.COLUMN_BOOK_SUPPLIER_ID);
+                        supplierId = id == null ? -1 : id;
+                    }
+
+                    // bind this row and execute, a failed insert returns -1
+                    bindBook(statement, values, supplierId);
+                    if (statement.executeInsert() != -1) {
+                        rowsInserted++;
+                    }
+                }
+
+            } finally {
+                statement.close();
+            }
 
-        // if the insertion failed then newRowId = -1, return null
-        if (newRowId == -1) {
-            Log.e(LOG_TAG, "Insertion failed for: " + uri);
-            return null;
+            // the progress of the import commits with its books, so a resumed import never inserts them again
+            if (importId != null) {
+                saveImportRow(database, importId, importRow);
+            }
+
+            database.setTransactionSuccessful();
+
+        } finally {
+            database.endTransaction();
         }
 
-        // if 1 or more rows of were inserted then notify all listeners to this URI
-        // any cursor pointing to this URI is invalidated when the change notification occurs
-        // and the system calls the provider query() to refresh that cursor
-        if (newRowId > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+        // a single notification for the entire batch
+        if (rowsInserted != 0) {
+            notifyChange(uri);
         }
 
-        // return the new URI with the new row ID appended to it
-        return ContentUris.withAppendedId(uri, newRowId);
+        return rowsInserted;
+
     }
 
-    // update data at the given selection
+    // save the last committed source row of an import, must be called inside the transaction of its chunk
+    private static void saveImportRow(SQLiteDatabase database, String importId, long importRow) {
+        ContentValues values = new ContentValues();
+        values.put(ImportEntry.COLUMN_IMPORT_ID, importId);
+        values.put(ImportEntry.COLUMN_IMPORT_ROW, importRow);
+        database.insertWithOnConflict(ImportEntry.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    // bind the book attributes in the content values to the compiled insert statement
+    // the bind indices follow the column order in SQL_INSERT_BOOK, a supplier ID of -1 is bound as null
+    private static void bindBook(SQLiteStatement statement, ContentValues values, long supplierId) {
+
+        // clear any bindings left over from the previous row
+        statement.clearBindings();
+
+        // name and price are validated as non-null
+        statement.bindString(1, values.getAsString(BookEntry.COLUMN_BOOK_NAME));
+        bindStringOrNull(statement, 2, values.getAsString(BookEntry.COLUMN_BOOK_AUTHOR));
+        statement.bindLong(3, values.getAsLong(BookEntry.COLUMN_BOOK_PRICE));
+
+        // binding null would violate NOT NULL, so use the same default of 0 as the table definition
+        Integer quantity = values.getAsInteger(BookEntry.COLUMN_BOOK_QUANTITY);
+        statement.bindLong(4, quantity == null ? 0 : quantity);
+
+        Integer threshold = values.getAsInteger(BookEntry.COLUMN_BOOK_REORDER_THRESHOLD);
+        statement.bindLong(5, threshold == null ? 0 : threshold);
+
+        BookStatements.bindIdOrNull(statement, 6, supplierId);
+    }
+
+    // bindString() does not accept null values
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    // apply a list of insert, update, and delete operations in a single transaction
+    // either every operation is committed or none of them are
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        mDatabaseLock.readLock().lock();
+        try {
+            return runApplyBatch(operations);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+    }
+
+    // apply the operations of a batch, the read lock is reentrant for the insert, update, and delete calls
+    private ContentProviderResult[] runApplyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+
+        // get reference to writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // results for each operation, in the same order as the operations
+        ContentProviderResult[] results;
+
+        // the superclass dispatches each operation to insert(), update(), or delete()
+        // those calls join this transaction and hold back their notifications
+        ArrayList<Uri> changes = new ArrayList<>();
+        ArrayList<Uri> invalidations = new ArrayList<>();
+        database.beginTransaction();
+        mBatchChanges.set(changes);
+        mBatchInvalidations.set(invalidations);
+        try {
+            results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+        } finally {
+            mBatchChanges.set(null);
+            mBatchInvalidations.set(null);
+            database.endTransaction();
+
+            // the rows are committed or rolled back, either way the cache must not hold a copy read before this point
+            for (Uri uri : invalidations) {
+                invalidateRows(uri);
+            }
+        }
+
+        // the held notifications are only sent once the whole batch is committed
+        mChangeNotifier.notifyChange(changes);
+
+        return results;
+
+    }
+
+    // notify all listeners to this URI
+    // any cursor pointing to this URI is invalidated when the change notification occurs
+    // notifications are merged and sent shortly after the change, and inside applyBatch()
+    // they are held until the batch commits
+    private void notifyChange(Uri uri) {
+
+        mMetrics.countNotification();
+
+        ArrayList<Uri> batchChanges = mBatchChanges.get();
+        if (batchChanges != null) {
+            batchChanges.add(uri);
+            return;
+        }
+
+        mChangeNotifier.notifyChange(uri);
+    }
+
+    // notify the watchlist of a change to a single book, a change to the books URI already reaches it
+    private void notifyLowStockChange(Uri uri) {
+        if (mUriMatcher.match(uri) == BOOK_ID) {
+            notifyChange(BookEntry.LOW_STOCK_URI);
+        }
+    }
+
+    // drop the cached rows changed at this URI: the single row for a book URI, otherwise every row
+    // called after the change is written, and again after the commit when inside applyBatch()
+    private void invalidateRows(Uri uri) {
+
+        ArrayList<Uri> batchInvalidations = mBatchInvalidations.get();
+        if (batchInvalidations != null) {
+            batchInvalidations.add(uri);
+        }
+
+        if (mUriMatcher.match(uri) == BOOK_ID) {
+            mRowCache.invalidate(ContentUris.parseId(uri));
+        } else {
+            mRowCache.invalidateAll();
+        }
+    }
+
+    // update data at the given selection, recorded in the metrics
     @Override
     public int update(Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
+        BookMetrics.Metric metric = mMetrics.get(BookMetrics.UPDATE, mUriMatcher.match(uri));
+        long start = metric.begin();
+        mSlowQueryLog.begin();
+        long rows = -1;
+        mDatabaseLock.readLock().lock();
+        try {
+            int rowsUpdated = runUpdate(uri, contentValues, selection, selectionArgs);
+            rows = rowsUpdated;
+            return rowsUpdated;
+        } finally {
+            mSlowQueryLog.end(metric.name(), metric.end(start, rows), rows);
+            mDatabaseLock.readLock().unlock();
+        }
+    }
+
+    // update data at the given selection
+    private int runUpdate(Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
 
         // get format match code for URI
         final int match = mUriMatcher.match(uri);
 
-        // notify all listeners to this URI
-        // any cursor pointing to this URI is invalidated when the change notification occurs
-        // and the system calls the provider query() to refresh that cursor
-        getContext().getContentResolver().notifyChange(uri, null);
-
+        // listeners are notified by the helper methods, and only if something changed
         switch (match) {
 
             // full books table
@@ -210,6 +1013,14 @@ public class BookProvider extends ContentProvider {
                 // helper method returns integer for number of rows updated
                 return updateBook(uri, contentValues, selection, selectionArgs);
 
+            // sale of a specific row, returns 1 if sold and 0 if there were not enough copies
+            case BOOK_SELL:
+
+                // the book ID is the second to last path segment
+                long id = Long.parseLong(uri.getPathSegments().get(1));
+                Integer count = contentValues == null ? null : contentValues.getAsInteger(BookContract.KEY_SELL_COUNT);
+                return sellBook(id, getSellCount(count, uri)).getBoolean(BookContract.KEY_SOLD) ? 1 : 0;
+
             default:
                 throw new IllegalArgumentException("Update failed for: " + uri);
 
@@ -234,8 +1045,8 @@ public class BookProvider extends ContentProvider {
         // check validity of price value, if it exists
         if (values.containsKey(BookEntry.COLUMN_BOOK_PRICE)) {
 
-            // use a capital letter Float rather than float since we are checking for nullity
-            Float price = values.getAsFloat(BookEntry.COLUMN_BOOK_PRICE);
+            // use a capital letter Long rather than long since we are checking for nullity
+            Long price = getPriceCents(values);
             if (price == null || price < 0) {
                 throw new IllegalArgumentException("Book requires a valid price!");
             }
@@ -251,6 +1062,14 @@ public class BookProvider extends ContentProvider {
             }
         }
 
+        // check validity of the reorder threshold, if it exists
+        if (values.containsKey(BookEntry.COLUMN_BOOK_REORDER_THRESHOLD)) {
+            Integer threshold = values.getAsInteger(BookEntry.COLUMN_BOOK_REORDER_THRESHOLD);
+            if (threshold == null || threshold < 0) {
+                throw new IllegalArgumentException("Book requires a valid reorder threshold!");
+            }
+        }
+
         // the author name, supplier name, and supplier phone can all be null, no need to check
 
         // a final check that there is actually something to update
@@ -262,11 +1081,33 @@ public class BookProvider extends ContentProvider {
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
         // update row(s) in books table, and get the number of total rows affected
-        int rowsUpdated = database.update(BookEntry.TABLE_NAME, values, selection, selectionArgs);
+        // a quantity change or a full edit of a single book runs a compiled statement instead
+        // a new supplier name or phone is interned in the same transaction as the update
+        int rowsUpdated;
+        if (hasSupplier(values)) {
+            database.beginTransaction();
+            try {
+                rowsUpdated = updateBookSupplier(database, uri, values, selection, selectionArgs);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        } else if (mUriMatcher.match(uri) == BOOK_ID && BookStatements.canUpdate(values)) {
+            rowsUpdated = statements(database).update(ContentUris.parseId(uri), values);
+        } else {
+            rowsUpdated = updateBookRows(database, values, selection, selectionArgs);
+        }
 
-        // if 1 or more rows of have changed then notify all listeners to this URI
+        // if 1 or more rows of have changed then drop their cached copies and notify all listeners to this URI
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            invalidateRows(uri);
+            notifyChange(uri);
+
+            // a new quantity or threshold may move the book on or off the watchlist
+            if (values.containsKey(BookEntry.COLUMN_BOOK_QUANTITY) ||
+                    values.containsKey(BookEntry.COLUMN_BOOK_REORDER_THRESHOLD)) {
+                notifyLowStockChange(uri);
+            }
         }
 
         // return total number of rows updated
@@ -274,10 +1115,460 @@ public class BookProvider extends ContentProvider {
 
     }
 
-    // delete data at the given selection
-    // return integer number of rows deleted
+    // update books with values that set the supplier name or phone, must be called inside a transaction
+    private int updateBookSupplier(SQLiteDatabase database, Uri uri, ContentValues values, String selection,
+                                   String[] selectionArgs) {
+
+        // a full edit of a single book, as the editor saves it
+        if (mUriMatcher.match(uri) == BOOK_ID && BookStatements.canUpdate(values)) {
+            return statements(database).update(ContentUris.parseId(uri), values);
+        }
+
+        // both halves of the pair are given, so every row gets the same supplier
+        boolean hasName = values.containsKey(BookEntry.COLUMN_BOOK_SUPPLIER_NAME);
+        boolean hasPhone = values.containsKey(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE);
+        if (hasName && hasPhone) {
+            ContentValues bookValues = withSupplierId(database, values,
+                    values.getAsString(BookEntry.COLUMN_BOOK_SUPPLIER_NAME),
+                    values.getAsString(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE));
+            return updateBookRows(database, bookValues, selection, selectionArgs);
+        }
+
+        // only one half is given, so each row keeps the other half of its own pair and may get another supplier
+        // the rows are read before any is written, since the update may change what the selection matches
+        String keptColumn = hasName ? BookEntry.COLUMN_BOOK_SUPPLIER_PHONE : BookEntry.COLUMN_BOOK_SUPPLIER_NAME;
+        String[] columns = {BookEntry._ID, keptColumn};
+        mSlowQueryLog.recordQuery(BookDbHelper.VIEW_BOOKS, columns, selection, selectionArgs, null, null);
+        Cursor cursor = database.query(BookDbHelper.VIEW_BOOKS, columns, selection, selectionArgs,
+                null, null, null);
+        long[] ids;
+        String[] kept;
+        try {
+            ids = new long[cursor.getCount()];
+            kept = new String[ids.length];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+                kept[i] = cursor.getString(1);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        int rowsUpdated = 0;
+        String given = values.getAsString(hasName ? BookEntry.COLUMN_BOOK_SUPPLIER_NAME :
+                BookEntry.COLUMN_BOOK_SUPPLIER_PHONE);
+        for (int i = 0; i < ids.length; i++) {
+            ContentValues bookValues = withSupplierId(database, values, hasName ? given : kept[i],
+                    hasName ? kept[i] : given);
+            String[] idArgs = {String.valueOf(ids[i])};
+            mSlowQueryLog.recordUpdate(BookEntry.TABLE_NAME, bookValues, BookEntry._ID + "=?", idArgs);
+            rowsUpdated += database.update(BookEntry.TABLE_NAME, bookValues, BookEntry._ID + "=?", idArgs);
+        }
+        return rowsUpdated;
+    }
+
+    // update the books at a selection that may mention the supplier name or phone
+    private int updateBookRows(SQLiteDatabase database, ContentValues values, String selection,
+                               String[] selectionArgs) {
+        String bookSelection = toBookSelection(selection);
+        mSlowQueryLog.recordUpdate(BookEntry.TABLE_NAME, values, bookSelection, selectionArgs);
+        return database.update(BookEntry.TABLE_NAME, values, bookSelection, selectionArgs);
+    }
+
+    // provider methods that do not fit query, insert, update, or delete
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+
+        // a restore waits for every other operation to finish, so it must not hold the read lock itself
+        if (BookContract.METHOD_RESTORE.equals(method)) {
+            restoreSnapshot(arg);
+            return null;
+        }
+
+        mDatabaseLock.readLock().lock();
+        try {
+            return runCall(method, arg, extras);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+    }
+
+    // run a call() method other than a restore
+    private Bundle runCall(String method, String arg, Bundle extras) {
+
+        // sell copies of a book, arg is the row ID
+        if (BookContract.METHOD_SELL.equals(method)) {
+
+            long id;
+            try {
+                id = Long.parseLong(arg);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Sale requires a book ID: " + arg);
+            }
+            Integer count = null;
+            if (extras != null && extras.containsKey(BookContract.KEY_SELL_COUNT)) {
+                count = extras.getInt(BookContract.KEY_SELL_COUNT);
+            }
+
+            // the result carries the remaining quantity so the caller never has to re-read the row
+            return sellBook(id, getSellCount(count, BookEntry.CONTENT_URI));
+        }
+
+        // sell a batch of sale events in one transaction, the extras hold parallel arrays
+        if (BookContract.METHOD_SELL_BATCH.equals(method)) {
+
+            long[] ids = extras == null ? null : extras.getLongArray(BookContract.KEY_BOOK_IDS);
+            int[] counts = extras == null ? null : extras.getIntArray(BookContract.KEY_SELL_COUNTS);
+            long[] times = extras == null ? null : extras.getLongArray(BookContract.KEY_SALE_TIMES);
+            if (ids == null || counts == null || counts.length != ids.length ||
+                    (times != null && times.length != ids.length)) {
+                throw new IllegalArgumentException("Batch sale requires a count for every book ID");
+            }
+            for (int count : counts) {
+                getSellCount(count, SaleEntry.CONTENT_URI);
+            }
+
+            // sales without a time were rung up now
+            if (times == null) {
+                times = new long[ids.length];
+                Arrays.fill(times, System.currentTimeMillis());
+            }
+
+            return sellBatch(ids, counts, times);
+        }
+
+        // copy the database into a new snapshot while sales and edits keep committing
+        if (BookContract.METHOD_SNAPSHOT.equals(method)) {
+            File snapshot;
+            try {
+                snapshot = mSnapshots.take();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot take a snapshot", e);
+            }
+            Bundle result = new Bundle();
+            result.putString(BookContract.KEY_SNAPSHOT_NAME, snapshot.getName());
+            result.putLong(BookContract.KEY_SNAPSHOT_BYTES, snapshot.length());
+            return result;
+        }
+
+        // copy the write-ahead log back into the database
+        if (BookContract.METHOD_CHECKPOINT.equals(method)) {
+            mDbHelper.checkpoint();
+            return null;
+        }
+
+        // last source row committed by an import, arg is the import ID
+        if (BookContract.METHOD_GET_IMPORT_CHECKPOINT.equals(method)) {
+            if (arg == null) {
+                throw new IllegalArgumentException("Import checkpoint requires an import ID");
+            }
+            Bundle checkpoint = new Bundle();
+            checkpoint.putLong(BookContract.KEY_IMPORT_ROW, DatabaseUtils.longForQuery(
+                    mDbHelper.getReadableDatabase(),
+                    "SELECT IFNULL(MAX(" + ImportEntry.COLUMN_IMPORT_ROW + "), 0) FROM " + ImportEntry.TABLE_NAME +
+                            " WHERE " + ImportEntry.COLUMN_IMPORT_ID + "=?", new String[] {arg}));
+            return checkpoint;
+        }
+
+        // forget the progress of an import, arg is the import ID
+        if (BookContract.METHOD_CLEAR_IMPORT_CHECKPOINT.equals(method)) {
+            if (arg == null) {
+                throw new IllegalArgumentException("Import checkpoint requires an import ID");
+            }
+            mDbHelper.getWritableDatabase().delete(ImportEntry.TABLE_NAME, ImportEntry.COLUMN_IMPORT_ID + "=?",
+                    new String[] {arg});
+            return null;
+        }
+
+        // counters of the row cache, the hit ratio is hits / (hits + misses)
+        if (BookContract.METHOD_ROW_CACHE_STATS.equals(method)) {
+            Bundle stats = new Bundle();
+            stats.putLong(BookContract.KEY_CACHE_HITS, mRowCache.hits());
+            stats.putLong(BookContract.KEY_CACHE_MISSES, mRowCache.misses());
+            stats.putInt(BookContract.KEY_CACHE_SIZE, mRowCache.size());
+            return stats;
+        }
+
+        // latency histograms and counters of every operation so far
+        if (BookContract.METHOD_METRICS.equals(method)) {
+            return mMetrics.toBundle();
+        }
+
+        // slow operations with the plans of their statements
+        if (BookContract.METHOD_SLOW_QUERIES.equals(method)) {
+            return mSlowQueryLog.toBundle();
+        }
+
+        // log operations at least this many milliseconds long from now on
+        if (BookContract.METHOD_SET_SLOW_QUERY_THRESHOLD.equals(method)) {
+            try {
+                mSlowQueryLog.setThresholdMillis(Long.parseLong(arg));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Slow query threshold requires milliseconds: " + arg);
+            }
+            return null;
+        }
+
+        return super.call(method, arg, extras);
+    }
+
+    // the export URI is a pipe the caller reads while a background thread writes every book into it
+    // nothing else is a file
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (mUriMatcher.match(uri) != BOOK_EXPORT) {
+            throw new FileNotFoundException("No file at URI: " + uri);
+        }
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Cannot open " + uri + " with mode " + mode + ", the export is read only");
+        }
+        return openPipeHelper(uri, BookEntry.EXPORT_TYPE, null, null, mExportWriter);
+    }
+
+    // write every book into the pipe, recorded in the metrics as a query of the export URI
+    // the framework closes the write end once this returns, which is the end of file for the caller
+    private void writeExport(ParcelFileDescriptor output, Uri uri) {
+        BookMetrics.Metric metric = mMetrics.get(BookMetrics.QUERY, BOOK_EXPORT);
+        long start = metric.begin();
+        long rows = -1;
+        mDatabaseLock.readLock().lock();
+        try {
+
+            // not closed here, closing the stream would close the descriptor the framework still owns
+            OutputStream out = new FileOutputStream(output.getFileDescriptor());
+            rows = new CsvBookWriter(out).writeAll(mDbHelper.getReadableDatabase());
+        } catch (IOException e) {
+
+            // the caller closed its end before the last row
+            Log.w(LOG_TAG, "Export stopped: " + uri, e);
+        } finally {
+            metric.end(start, rows);
+            mDatabaseLock.readLock().unlock();
+        }
+    }
+
+    // replace the database with a snapshot, see BookContract.METHOD_RESTORE
+    // the snapshot is copied and checked while operations continue, and they only wait for the file swap
+    private void restoreSnapshot(String name) {
+
+        File staged;
+        try {
+            staged = mSnapshots.stage(name);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read snapshot: " + name, e);
+        }
+
+        mDatabaseLock.writeLock().lock();
+        try {
+
+            // no operation is running, so the statements of every thread can be closed with the old file,
+            // each thread compiles a new set against the restored file the next time it writes
+            synchronized (mAllStatements) {
+                for (BookStatements statements : mAllStatements) {
+                    statements.close();
+                }
+                mAllStatements.clear();
+            }
+            mSnapshots.restore(staged);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot restore snapshot: " + name, e);
+        } finally {
+
+            // no row read from the previous file may be served again
+            mRowCache.invalidateAll();
+            mDatabaseLock.writeLock().unlock();
+        }
+
+        // every URI of the provider is below the base URI, so every open cursor is told to query again right away
+        mMetrics.countNotification();
+        mChangeNotifier.notifyChangeNow(BookContract.BASE_CONTENT_URI);
+    }
+
+    // operation metrics and the slow operation log
+    // for example "adb shell dumpsys activity provider com.sommerengineering.bookstore/.data.BookProvider"
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        mMetrics.dump(writer);
+        mSlowQueryLog.dump(writer);
+    }
+
+    // a sale must be for at least 1 copy, a missing count means a single copy
+    private static int getSellCount(Integer count, Uri uri) {
+        if (count == null) {
+            return 1;
+        }
+        if (count < 1) {
+            throw new IllegalArgumentException("Sale requires a count of at least 1 for: " + uri);
+        }
+        return count;
+    }
+
+    // sell the given number of copies of a book
+    // return a bundle with KEY_SOLD, KEY_LOW_STOCK and, if the book exists, its remaining quantity
+    private Bundle sellBook(long id, int count) {
+
+        SaleOutcome sale = sellBooks(new long[] {id}, new int[] {count}, new long[] {System.currentTimeMillis()})[0];
+
+        Bundle result = new Bundle();
+        result.putBoolean(BookContract.KEY_SOLD, sale.sold);
+        result.putBoolean(BookContract.KEY_LOW_STOCK, sale.crossedThreshold);
+        if (sale.quantity >= 0) {
+            result.putInt(BookEntry.COLUMN_BOOK_QUANTITY, (int) sale.quantity);
+        }
+        return result;
+    }
+
+    // sell a batch of sale events, each given by the same index of the three arrays
+    // return a bundle with the KEY_SOLD, KEY_LOW_STOCK, and KEY_QUANTITIES arrays
+    private Bundle sellBatch(long[] ids, int[] counts, long[] times) {
+
+        SaleOutcome[] sales = sellBooks(ids, counts, times);
+
+        boolean[] sold = new boolean[sales.length];
+        boolean[] lowStock = new boolean[sales.length];
+        int[] quantities = new int[sales.length];
+        for (int i = 0; i < sales.length; i++) {
+            sold[i] = sales[i].sold;
+            lowStock[i] = sales[i].crossedThreshold;
+            quantities[i] = (int) sales[i].quantity;
+        }
+
+        Bundle result = new Bundle();
+        result.putBooleanArray(BookContract.KEY_SOLD, sold);
+        result.putBooleanArray(BookContract.KEY_LOW_STOCK, lowStock);
+        result.putIntArray(BookContract.KEY_QUANTITIES, quantities);
+        return result;
+    }
+
+    // result of a single sale event
+    private static final class SaleOutcome {
+
+        // true if the copies were in stock and the sale was recorded in the ledger
+        boolean sold;
+
+        // quantity after the sale, -1 if there is no such book
+        long quantity = -1;
+
+        // true if the quantity is at or below the reorder threshold after the sale, so the book is on the watchlist
+        boolean lowStock;
+
+        // true if the quantity was above the reorder threshold before the sale and is at or below it now
+        boolean crossedThreshold;
+    }
+
+    // decrement the stock and append a ledger row for each sale that can be made, all in one transaction
+    // the ledger row is only written when the decrement succeeds, so the ledger and the stock always agree,
+    // and a batch commits with a single sync of the log no matter how many sales it holds
+    private SaleOutcome[] sellBooks(long[] ids, int[] counts, long[] times) {
+
+        // get reference to writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        SaleOutcome[] sales = new SaleOutcome[ids.length];
+
+        // each read of the new quantity is in the same transaction as its decrement,
+        // so the reported quantity is exactly the result of that sale
+        BookStatements statements = statements(database);
+        database.beginTransaction();
+        try {
+
+            for (int i = 0; i < ids.length; i++) {
+
+                SaleOutcome sale = new SaleOutcome();
+                sales[i] = sale;
+                sale.sold = statements.sell(ids[i], counts[i]);
+
+                // the ledger keeps the price the copies were sold at
+                if (sale.sold) {
+                    statements.recordSale(ids[i], counts[i], times[i]);
+                }
+
+                // a rejected sale of a missing book reads -1, the threshold only matters for a sold book
+                sale.quantity = statements.selectQuantity(ids[i]);
+                if (sale.sold) {
+                    long threshold = statements.selectThreshold(ids[i]);
+                    sale.lowStock = sale.quantity <= threshold;
+                    sale.crossedThreshold = sale.lowStock && sale.quantity + counts[i] > threshold;
+                }
+            }
+
+            database.setTransactionSuccessful();
+
+        } finally {
+            database.endTransaction();
+        }
+
+        // only the sold rows changed, nothing changed when a sale is rejected
+        // the cached row is dropped rather than patched with the new quantity: this runs after the commit,
+        // so two sales of the same book could patch it out of commit order and leave the older quantity cached
+        boolean anySold = false;
+        boolean anyLowStock = false;
+        for (int i = 0; i < sales.length; i++) {
+
+            if (!sales[i].sold) {
+                continue;
+            }
+            anySold = true;
+            anyLowStock |= sales[i].lowStock;
+
+            Uri bookUri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, ids[i]);
+            invalidateRows(bookUri);
+            notifyChange(bookUri);
+        }
+
+        if (anySold) {
+            notifyChange(SaleEntry.CONTENT_URI);
+        }
+
+        // the watchlist hears about every sale of a book on it, the ones that add the book and the ones that
+        // lower the quantity it shows, but not about sales of books that stay above their threshold
+        if (anyLowStock) {
+            notifyChange(BookEntry.LOW_STOCK_URI);
+        }
+
+        return sales;
+    }
+
+    // the compiled statements of the calling thread for this database
+    // a statement is only ever bound and executed by the thread that owns it, so no lock is needed,
+    // and each thread compiles its own set the first time it writes
+    private BookStatements statements(SQLiteDatabase database) {
+        BookStatements statements = mStatements.get();
+        if (statements == null || !statements.isFor(database)) {
+            synchronized (mAllStatements) {
+                if (statements != null) {
+                    statements.close();
+                    mAllStatements.remove(statements);
+                }
+                statements = new BookStatements(database);
+                mAllStatements.add(statements);
+            }
+            mStatements.set(statements);
+        }
+        return statements;
+    }
+
+    // delete data at the given selection, recorded in the metrics
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        BookMetrics.Metric metric = mMetrics.get(BookMetrics.DELETE, mUriMatcher.match(uri));
+        long start = metric.begin();
+        mSlowQueryLog.begin();
+        long rows = -1;
+        mDatabaseLock.readLock().lock();
+        try {
+            int rowsDeleted = runDelete(uri, selection, selectionArgs);
+            rows = rowsDeleted;
+            return rowsDeleted;
+        } finally {
+            mSlowQueryLog.end(metric.name(), metric.end(start, rows), rows);
+            mDatabaseLock.readLock().unlock();
+        }
+    }
+
+    // delete data at the given selection
+    // return integer number of rows deleted
+    private int runDelete(Uri uri, String selection, String[] selectionArgs) {
 
         // get reference to writable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
@@ -294,23 +1585,18 @@ public class BookProvider extends ContentProvider {
             case BOOKS:
 
                 // delete all rows at the selection and selection arguments
-                rowsDeleted = database.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
+                // supplier rows are kept when their last book is deleted, a supplier is usually stocked again
+                String bookSelection = toBookSelection(selection);
+                mSlowQueryLog.recordDelete(BookEntry.TABLE_NAME, bookSelection, selectionArgs);
+                rowsDeleted = database.delete(BookEntry.TABLE_NAME, bookSelection, selectionArgs);
                 break;
 
             // specific row in books table
             case BOOK_ID:
 
-                // the ? and array pattern protects against SQL injection hacker attacks
-                // number of ? in selection must match number of elements in selectionArgs[]
-                // equivalent to string "_id=?"
-                selection = BookEntry._ID + "=?";
-
                 // parseId extracts only the integer id from the content URI
-                // creates an string array holding a single element with "#", where # is any integer
-                selectionArgs = new String[] {String.valueOf(ContentUris.parseId(uri))};
-
-                // delete a single row given by the ID in the URI
-                rowsDeleted = database.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
+                // delete a single row given by the ID in the URI, with the compiled statement of this thread
+                rowsDeleted = statements(database).delete(ContentUris.parseId(uri));
                 break;
 
             default:
@@ -318,9 +1604,12 @@ public class BookProvider extends ContentProvider {
 
         }
 
-        // if 1 or more rows of were deleted then notify all listeners to this URI
+        // if 1 or more rows of were deleted then drop their cached copies and notify all listeners to this URI
+        // the deleted book may have been on the watchlist
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            invalidateRows(uri);
+            notifyChange(uri);
+            notifyLowStockChange(uri);
         }
 
         return rowsDeleted;
@@ -344,6 +1633,42 @@ public class BookProvider extends ContentProvider {
             case BOOK_ID:
                 return BookEntry.CONTENT_ITEM_TYPE;
 
+            // search results are a list of books
+            case BOOK_SEARCH:
+                return BookEntry.CONTENT_LIST_TYPE;
+
+            // a sale refers to a single book
+            case BOOK_SELL:
+                return BookEntry.CONTENT_ITEM_TYPE;
+
+            // the watchlist is a list of books
+            case BOOK_LOW_STOCK:
+                return BookEntry.CONTENT_LIST_TYPE;
+
+            // the ledger is a list of sales
+            case SALES:
+                return SaleEntry.CONTENT_LIST_TYPE;
+
+            // the export is a file of comma separated text
+            case BOOK_EXPORT:
+                return BookEntry.EXPORT_TYPE;
+
+            // the summary is a single row
+            case BOOK_STATS:
+                return StatsEntry.CONTENT_ITEM_TYPE;
+
+            // the suppliers table
+            case SUPPLIERS:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+
+            // specific supplier
+            case SUPPLIER_ID:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
+
+            // the books of a supplier are a list of books
+            case SUPPLIER_BOOKS:
+                return BookEntry.CONTENT_LIST_TYPE;
+
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri + " with match = " + match);
         }
@@ -0,0 +1,155 @@
+package com.sommerengineering.bookstore.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// bounded cache of complete book rows keyed by _ID, for point lookups on a single book URI
+// the least recently used row is dropped once MAX_ROWS rows are held
+// rows are read through: a miss queries every column, stores the row, and serves the requested projection from it
+// every change to a row must invalidate it after the change is committed, see BookProvider
+final class BookRowCache {
+
+    // maximum number of rows held
+    static final int MAX_ROWS = 256;
+
+    // every column of a book, in the order of the books_with_suppliers view, which is also the order of a cached row
+    // a null projection gets all of them whether the row is cached or not
+    static final String[] COLUMNS = {BookEntry._ID, BookEntry.COLUMN_BOOK_NAME, BookEntry.COLUMN_BOOK_AUTHOR,
+            BookEntry.COLUMN_BOOK_PRICE, BookEntry.COLUMN_BOOK_QUANTITY,
+            BookEntry.COLUMN_BOOK_SUPPLIER_NAME, BookEntry.COLUMN_BOOK_SUPPLIER_PHONE,
+            BookEntry.COLUMN_BOOK_REORDER_THRESHOLD, BookEntry.COLUMN_BOOK_SUPPLIER_ID};
+
+    // cached rows are never modified, a change replaces or removes the whole array
+    private final LruCache<Long, Object[]> mRows = new LruCache<>(MAX_ROWS);
+
+    // incremented by every invalidation, under the cache lock
+    // a row read from the database is only stored if no invalidation happened since the read started,
+    // otherwise a slow read could put back a row that was changed while it was being read
+    private long mGeneration;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    // generation to pass to put() for a row about to be read from the database
+    synchronized long generation() {
+        return mGeneration;
+    }
+
+    // cursor over the cached row for the projection, or null on a miss
+    Cursor get(long id, String[] projection) {
+
+        Object[] row;
+        synchronized (this) {
+            row = mRows.get(id);
+        }
+
+        if (row == null) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+        mHits.incrementAndGet();
+        return toCursor(row, projection);
+    }
+
+    // store a row read with the full COLUMNS projection, unless it was invalidated since generation()
+    synchronized void put(long id, Object[] row, long generation) {
+        if (generation == mGeneration) {
+            mRows.put(id, row);
+        }
+    }
+
+    // forget a single row
+    synchronized void invalidate(long id) {
+        mGeneration++;
+        mRows.remove(id);
+    }
+
+    // forget every row, when a change may touch rows that are not known in advance
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mRows.evictAll();
+    }
+
+    long hits() {
+        return mHits.get();
+    }
+
+    long misses() {
+        return mMisses.get();
+    }
+
+    synchronized int size() {
+        return mRows.size();
+    }
+
+    // true if every column of the projection is a plain table column the cache can serve
+    // expressions such as "COUNT(*)" go to the database
+    static boolean canServe(String[] projection) {
+        if (projection == null) {
+            return true;
+        }
+        for (String column : projection) {
+            if (columnIndex(column) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // copy the current row of a cursor queried with the COLUMNS projection
+    static Object[] readRow(Cursor cursor) {
+        Object[] row = new Object[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    row[i] = cursor.getLong(i);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    row[i] = cursor.getDouble(i);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    row[i] = cursor.getString(i);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    row[i] = cursor.getBlob(i);
+                    break;
+                default:
+                    row[i] = null;
+            }
+        }
+        return row;
+    }
+
+    // single row cursor with the columns of the projection, a null projection means every column
+    static Cursor toCursor(Object[] row, String[] projection) {
+
+        if (projection == null) {
+            MatrixCursor cursor = new MatrixCursor(COLUMNS, 1);
+            cursor.addRow(row);
+            return cursor;
+        }
+
+        Object[] values = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            values[i] = row[columnIndex(projection[i])];
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(values);
+        return cursor;
+    }
+
+    private static int columnIndex(String column) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.ContentValues;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// source of book rows for the catalog importer
+// rows are read one at a time so the whole feed is never held in memory
+public interface BookRowReader extends Closeable {
+
+    // clear the given container and fill it with the next row as BookEntry column : value pairs
+    // return false when the end of the feed is reached
+    boolean readRow(ContentValues values) throws IOException;
+
+    // number of rows read so far, the first row is 1
+    long getRowNumber();
+
+    // the reason the last row read can not be imported, for example a field over the length limit,
+    // or null if its values can be converted
+    String getRowError();
+
+}
@@ -0,0 +1,110 @@
+package com.sommerengineering.bookstore.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookContract.SupplierEntry;
+
+// full text search over the books table using the books_fts shadow table
+// the shadow table is kept in sync with books by triggers, see BookDbHelper
+final class BookSearch {
+
+    // name of the fts4 shadow table
+    static final String FTS_TABLE_NAME = "books_fts";
+
+    // default maximum number of results
+    static final int DEFAULT_LIMIT = 50;
+
+    // matches ranked per search, a very short prefix can match most of the catalog
+    // and ranking every match would cost far more than a type-ahead keystroke allows
+    private static final int CANDIDATE_LIMIT = 500;
+
+    // every column of the books URI, the result of a search without a projection
+    private static final String[] BOOK_COLUMNS = {BookEntry._ID, BookEntry.COLUMN_BOOK_NAME,
+            BookEntry.COLUMN_BOOK_AUTHOR, BookEntry.COLUMN_BOOK_PRICE, BookEntry.COLUMN_BOOK_QUANTITY,
+            BookEntry.COLUMN_BOOK_SUPPLIER_NAME, BookEntry.COLUMN_BOOK_SUPPLIER_PHONE,
+            BookEntry.COLUMN_BOOK_REORDER_THRESHOLD, BookEntry.COLUMN_BOOK_SUPPLIER_ID};
+
+    // all methods are static
+    private BookSearch() {}
+
+    // convert user text into an fts match expression where every word is a prefix term
+    // anything other than letters and digits separates words, so quotes and operators are never passed through
+    // for example "david mea" becomes "david* mea*", return null if there are no words
+    static String toMatchExpression(String text) {
+
+        if (text == null) {
+            return null;
+        }
+
+        StringBuilder expression = new StringBuilder();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+
+            // skip separators
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+
+            // copy the word and mark it as a prefix
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                if (expression.length() > 0) {
+                    expression.append(' ');
+                }
+                expression.append(text, start, i).append('*');
+            }
+        }
+
+        return expression.length() == 0 ? null : expression.toString();
+    }
+
+    // search titles, authors, and suppliers, returning rows of the books table
+    // titles that match rank first, then rows with the most matching words
+    // return null if the text contains no words
+    static Cursor query(SQLiteDatabase database, String text, String[] projection, int limit) {
+
+        String match = toMatchExpression(text);
+        if (match == null) {
+            return null;
+        }
+
+        // columns of the books table, qualified since the fts table has columns with the same names
+        // the supplier name and phone come from the suppliers table, the same columns as the books URI
+        String[] bookColumns = projection == null ? BOOK_COLUMNS : projection;
+        StringBuilder columns = new StringBuilder();
+        for (int i = 0; i < bookColumns.length; i++) {
+            if (i > 0) {
+                columns.append(", ");
+            }
+            String column = bookColumns[i];
+            boolean supplierColumn = column.equals(BookEntry.COLUMN_BOOK_SUPPLIER_NAME) ||
+                    column.equals(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE);
+            columns.append(supplierColumn ? SupplierEntry.TABLE_NAME : BookEntry.TABLE_NAME).append('.').append(column);
+        }
+
+        // offsets() lists every matching word as "column term byte size", ordered by column
+        // the name is column 0, so a list starting with "0 " means the title matched
+        // SELECT books._id, ..., suppliers.supplier_name, ... FROM (SELECT docid, offsets(books_fts) AS hits
+        // FROM books_fts WHERE books_fts MATCH ? LIMIT 500) AS matches JOIN books ON books._id = matches.docid
+        // LEFT JOIN suppliers ON suppliers._id = books.supplier_id
+        // ORDER BY substr(hits, 1, 2) = '0 ' DESC, length(hits) DESC, books.name LIMIT 50
+        String sql = "SELECT " + columns + " FROM (SELECT docid, offsets(" + FTS_TABLE_NAME + ") AS hits" +
+                " FROM " + FTS_TABLE_NAME + " WHERE " + FTS_TABLE_NAME + " MATCH ? LIMIT " + CANDIDATE_LIMIT +
+                ") AS matches JOIN " + BookEntry.TABLE_NAME +
+                " ON " + BookEntry.TABLE_NAME + "." + BookEntry._ID + " = matches.docid" +
+                " LEFT JOIN " + SupplierEntry.TABLE_NAME + " ON " + SupplierEntry.TABLE_NAME + "." +
+                SupplierEntry._ID + " = " + BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_BOOK_SUPPLIER_ID +
+                " ORDER BY substr(matches.hits, 1, 2) = '0 ' DESC, length(matches.hits) DESC, " +
+                BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_BOOK_NAME +
+                " LIMIT " + limit;
+
+        return database.rawQuery(sql, new String[] {match});
+    }
+
+}
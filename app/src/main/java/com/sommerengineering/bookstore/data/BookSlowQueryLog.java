@@ -0,0 +1,287 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.os.Bundle;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// bounded log of provider operations that took longer than a threshold, with the plan sqlite chose for them
+// every query, update, and delete site records the last statement it ran on the calling thread, which only
+// stores references, and the SQL text and its EXPLAIN QUERY PLAN are only built once an operation is slow
+// a full scan shows up as "SCAN TABLE books" and an in-memory sort as "USE TEMP B-TREE FOR ORDER BY"
+final class BookSlowQueryLog {
+
+    // operations at least this slow are logged unless the threshold is changed
+    static final long DEFAULT_THRESHOLD_MILLIS = 50;
+
+    // entries kept, the oldest is dropped first
+    static final int CAPACITY = 64;
+
+    // kinds of recorded statement
+    private static final int NONE = 0;
+    private static final int SELECT = 1;
+    private static final int UPDATE = 2;
+    private static final int DELETE = 3;
+    private static final int RAW = 4;
+
+    private final BookDbHelper mDbHelper;
+
+    private volatile long mThresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_THRESHOLD_MILLIS);
+
+    // the statement the current operation of each thread ran last, reused for every operation of that thread
+    private final ThreadLocal<Statement> mStatements = new ThreadLocal<Statement>() {
+        @Override
+        protected Statement initialValue() {
+            return new Statement();
+        }
+    };
+
+    // ring buffer of entries, guarded by this, only slow operations ever take the lock
+    private final Entry[] mEntries = new Entry[CAPACITY];
+    private int mNextEntry;
+    private long mLoggedCount;
+
+    BookSlowQueryLog(BookDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    // operations at least this slow are logged, 0 logs every operation
+    void setThresholdMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Slow query threshold must not be negative: " + millis);
+        }
+        mThresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    // forget the statement of the previous operation on this thread
+    void begin() {
+        mStatements.get().mKind = NONE;
+    }
+
+    // the arguments of the SQLiteDatabase call about to run
+    void recordQuery(String table, String[] columns, String selection, String[] selectionArgs, String orderBy,
+                     String limit) {
+        Statement statement = record(SELECT, table, selection, selectionArgs);
+        statement.mColumns = columns;
+        statement.mOrderBy = orderBy;
+        statement.mLimit = limit;
+    }
+
+    void recordUpdate(String table, ContentValues values, String selection, String[] selectionArgs) {
+        record(UPDATE, table, selection, selectionArgs).mValues = values;
+    }
+
+    void recordDelete(String table, String selection, String[] selectionArgs) {
+        record(DELETE, table, selection, selectionArgs);
+    }
+
+    void recordRawQuery(String sql, String[] selectionArgs) {
+        record(RAW, null, null, selectionArgs).mSql = sql;
+    }
+
+    private Statement record(int kind, String table, String selection, String[] selectionArgs) {
+        Statement statement = mStatements.get();
+        statement.mKind = kind;
+        statement.mTable = table;
+        statement.mSelection = selection;
+        statement.mArgs = selectionArgs;
+        return statement;
+    }
+
+    // log the operation of this thread if it took at least the threshold, rows is negative if it threw
+    void end(String operation, long nanos, long rows) {
+
+        if (nanos < mThresholdNanos) {
+            return;
+        }
+
+        Statement statement = mStatements.get();
+        Entry entry = new Entry();
+        entry.mTime = System.currentTimeMillis();
+        entry.mOperation = operation;
+        entry.mNanos = nanos;
+        entry.mRows = rows;
+        if (statement.mKind != NONE) {
+            entry.mSql = statement.toSql();
+            entry.mArguments = argumentShapes(statement.mArgs);
+            entry.mPlan = explain(entry.mSql);
+        }
+        statement.mKind = NONE;
+
+        synchronized (this) {
+            mEntries[mNextEntry] = entry;
+            mNextEntry = (mNextEntry + 1) % CAPACITY;
+            mLoggedCount++;
+        }
+    }
+
+    // the plan of a statement, one line per step
+    // arguments are left unbound, sqlite picks the same plan whatever their values are
+    private String explain(String sql) {
+        try {
+            Cursor cursor = mDbHelper.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+            try {
+                int detail = cursor.getColumnIndexOrThrow("detail");
+                StringBuilder plan = new StringBuilder();
+                while (cursor.moveToNext()) {
+                    if (plan.length() > 0) {
+                        plan.append('\n');
+                    }
+                    plan.append(cursor.getString(detail));
+                }
+                return plan.toString();
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLiteException | IllegalArgumentException e) {
+            return "explain failed: " + e.getMessage();
+        }
+    }
+
+    // type and length of each argument, the values themselves may be customer data and are never logged
+    // for example "integer, text(12), null"
+    private static String argumentShapes(String[] args) {
+        if (args == null || args.length == 0) {
+            return "";
+        }
+        StringBuilder shapes = new StringBuilder();
+        for (String arg : args) {
+            if (shapes.length() > 0) {
+                shapes.append(", ");
+            }
+            if (arg == null) {
+                shapes.append("null");
+            } else if (isInteger(arg)) {
+                shapes.append("integer");
+            } else {
+                shapes.append("text(").append(arg.length()).append(')');
+            }
+        }
+        return shapes.toString();
+    }
+
+    private static boolean isInteger(String arg) {
+        try {
+            Long.parseLong(arg);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // every entry, oldest first, as parallel arrays, see BookContract.METHOD_SLOW_QUERIES
+    Bundle toBundle() {
+
+        Entry[] entries = snapshot();
+        long[] times = new long[entries.length];
+        String[] operations = new String[entries.length];
+        long[] nanos = new long[entries.length];
+        long[] rows = new long[entries.length];
+        String[] sql = new String[entries.length];
+        String[] arguments = new String[entries.length];
+        String[] plans = new String[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            times[i] = entries[i].mTime;
+            operations[i] = entries[i].mOperation;
+            nanos[i] = entries[i].mNanos;
+            rows[i] = entries[i].mRows;
+            sql[i] = entries[i].mSql;
+            arguments[i] = entries[i].mArguments;
+            plans[i] = entries[i].mPlan;
+        }
+
+        Bundle log = new Bundle();
+        log.putLongArray(BookContract.KEY_SLOW_TIMES, times);
+        log.putStringArray(BookContract.KEY_SLOW_OPERATIONS, operations);
+        log.putLongArray(BookContract.KEY_SLOW_NANOS, nanos);
+        log.putLongArray(BookContract.KEY_SLOW_ROWS, rows);
+        log.putStringArray(BookContract.KEY_SLOW_SQL, sql);
+        log.putStringArray(BookContract.KEY_SLOW_ARGUMENTS, arguments);
+        log.putStringArray(BookContract.KEY_SLOW_PLANS, plans);
+        synchronized (this) {
+            log.putLong(BookContract.KEY_SLOW_LOGGED_COUNT, mLoggedCount);
+        }
+        return log;
+    }
+
+    // every entry, oldest first, for dumpsys
+    void dump(PrintWriter writer) {
+        Entry[] entries = snapshot();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        writer.println("Slow operations, threshold " + TimeUnit.NANOSECONDS.toMillis(mThresholdNanos) + " ms:");
+        for (Entry entry : entries) {
+            writer.println("  " + format.format(new Date(entry.mTime)) + " " + entry.mOperation + " " +
+                    TimeUnit.NANOSECONDS.toMicros(entry.mNanos) + " us, rows " + entry.mRows);
+            if (entry.mSql != null) {
+                writer.println("    sql: " + entry.mSql);
+                writer.println("    arguments: " + entry.mArguments);
+                writer.println("    plan: " + entry.mPlan.replace("\n", "\n          "));
+            }
+        }
+    }
+
+    private synchronized Entry[] snapshot() {
+        int count = (int) Math.min(mLoggedCount, CAPACITY);
+        Entry[] entries = new Entry[count];
+        int first = (mNextEntry - count + CAPACITY) % CAPACITY;
+        for (int i = 0; i < count; i++) {
+            entries[i] = mEntries[(first + i) % CAPACITY];
+        }
+        return entries;
+    }
+
+    // the last statement of an operation, as the arguments it was run with
+    private static final class Statement {
+
+        int mKind;
+        String mTable;
+        String[] mColumns;
+        ContentValues mValues;
+        String mSelection;
+        String[] mArgs;
+        String mOrderBy;
+        String mLimit;
+        String mSql;
+
+        // the SQL SQLiteDatabase built for the call
+        String toSql() {
+            String where = mSelection == null || mSelection.isEmpty() ? "" : " WHERE " + mSelection;
+            switch (mKind) {
+                case SELECT:
+                    return SQLiteQueryBuilder.buildQueryString(false, mTable, mColumns, mSelection,
+                            null, null, mOrderBy, mLimit);
+                case UPDATE:
+                    StringBuilder sql = new StringBuilder("UPDATE ").append(mTable).append(" SET ");
+                    int column = 0;
+                    for (String key : mValues.keySet()) {
+                        sql.append(column++ > 0 ? "," : "").append(key).append("=?");
+                    }
+                    return sql.append(where).toString();
+                case DELETE:
+                    return "DELETE FROM " + mTable + where;
+                default:
+                    return mSql;
+            }
+        }
+    }
+
+    // a logged operation
+    private static final class Entry {
+        long mTime;
+        String mOperation;
+        long mNanos;
+        long mRows;
+        String mSql;
+        String mArguments;
+        String mPlan;
+    }
+
+}
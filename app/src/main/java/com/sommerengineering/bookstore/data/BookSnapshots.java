@@ -0,0 +1,156 @@
+package com.sommerengineering.bookstore.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+// consistent copies of the live database taken while sales and edits keep committing, and restores from them
+// a snapshot is a single self-contained database file, named by the time it was taken,
+// for example "inventory-20240101-093000-123.db"
+// android has no sqlite backup API and VACUUM INTO needs a newer sqlite than minSdk ships,
+// so the live files are copied with checkpoints held off, see BookDbHelper.copyTo()
+final class BookSnapshots {
+
+    // tag for log messages
+    private static final String LOG_TAG = BookSnapshots.class.getSimpleName();
+
+    // directory of the app files that holds the snapshots
+    static final String DIRECTORY = "snapshots";
+
+    private static final String PREFIX = "inventory-";
+    private static final String SUFFIX = ".db";
+
+    // a snapshot while it is copied and checked, renamed once it is complete
+    private static final String PARTIAL_SUFFIX = ".partial";
+
+    // a snapshot copied next to the database file, renamed over it by a restore
+    private static final String STAGED_SUFFIX = "-restore";
+
+    private final File mDirectory;
+    private final BookDbHelper mDbHelper;
+
+    BookSnapshots(File directory, BookDbHelper dbHelper) {
+        mDirectory = directory;
+        mDbHelper = dbHelper;
+    }
+
+    // copy the database into a new snapshot and return its file
+    // only one snapshot is taken at a time, reads and writes of the database continue throughout
+    synchronized File take() throws IOException {
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+        String time = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.US).format(new Date());
+        File snapshot = new File(mDirectory, PREFIX + time + SUFFIX);
+        File partial = new File(snapshot.getPath() + PARTIAL_SUFFIX);
+
+        try {
+            mDbHelper.copyTo(partial);
+            consolidate(partial);
+            check(partial);
+            if (!partial.renameTo(snapshot)) {
+                throw new IOException("Cannot rename " + partial + " to " + snapshot);
+            }
+        } finally {
+            delete(partial);
+        }
+        return snapshot;
+    }
+
+    // copy a snapshot next to the database file and check it, ready for restore()
+    // nothing waits on this, so a large snapshot only holds up operations for the rename in restore()
+    File stage(String name) throws IOException {
+
+        File snapshot = find(name);
+        File staged = new File(mDbHelper.getDatabaseFile().getPath() + STAGED_SUFFIX);
+        delete(staged);
+
+        boolean checked = false;
+        try {
+            BookDbHelper.copyFile(snapshot, staged);
+            check(staged);
+            checked = true;
+        } finally {
+            if (!checked) {
+                delete(staged);
+            }
+        }
+        return staged;
+    }
+
+    // replace the database with a staged snapshot and open it
+    // the caller makes sure nothing uses the database meanwhile, see BookProvider
+    void restore(File staged) throws IOException {
+        try {
+            mDbHelper.replaceWith(staged);
+        } finally {
+            delete(staged);
+        }
+    }
+
+    // the snapshot with this file name, a name with a path in it is refused
+    private File find(String name) {
+        if (name == null || !name.startsWith(PREFIX) || !name.endsWith(SUFFIX) ||
+                name.indexOf(File.separatorChar) >= 0) {
+            throw new IllegalArgumentException("Not a snapshot name: " + name);
+        }
+        File snapshot = new File(mDirectory, name);
+        if (!snapshot.isFile()) {
+            throw new IllegalArgumentException("No snapshot named " + name);
+        }
+        return snapshot;
+    }
+
+    // recover the copied log into the copied database file and leave it with a rollback journal,
+    // so the snapshot is one file that needs nothing else to open
+    private static void consolidate(File copy) {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(copy.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            BookDbHelper.runPragma(db, "wal_checkpoint(TRUNCATE)");
+            BookDbHelper.runPragma(db, "journal_mode = DELETE");
+        } finally {
+            db.close();
+        }
+        BookDbHelper.deleteJournals(copy);
+    }
+
+    // refuse a database this version of the app can not open, or one with a page that can not be read
+    private static void check(File file) {
+        SQLiteDatabase db;
+        try {
+            db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        } catch (SQLiteException e) {
+            throw new IllegalArgumentException("Not a database: " + file.getName(), e);
+        }
+        try {
+            int version = db.getVersion();
+            if (version < 1 || version > BookDbHelper.DATABASE_VERSION) {
+                throw new IllegalArgumentException("Snapshot " + file.getName() + " has database version " +
+                        version + ", this app opens versions 1 to " + BookDbHelper.DATABASE_VERSION);
+            }
+            String result = DatabaseUtils.stringForQuery(db, "PRAGMA quick_check", null);
+            if (!"ok".equals(result)) {
+                throw new IllegalArgumentException("Snapshot " + file.getName() + " is damaged: " + result);
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    // delete a database file and its journals if they exist
+    private static void delete(File file) {
+        BookDbHelper.deleteJournals(file);
+        if (file.exists() && !file.delete()) {
+            Log.w(LOG_TAG, "Cannot delete " + file);
+        }
+    }
+
+}
@@ -0,0 +1,304 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookContract.SaleEntry;
+import com.sommerengineering.bookstore.data.BookContract.SupplierEntry;
+
+// compiled statements for the single row reads and writes BookProvider runs on every sale, edit, and delete
+// each statement is compiled on first use and rebound for every call, so none of them builds SQL text,
+// a selection array, or walks a ContentValues map the way query(), update(), and delete() do
+// a statement holds its bound arguments between bind and execute, so a set must only be used by one thread,
+// see BookProvider.statements() which keeps one set per thread
+final class BookStatements {
+
+    // columns of a full edit of a book, as the editor saves it
+    static final String[] UPDATE_COLUMNS = {BookEntry.COLUMN_BOOK_NAME, BookEntry.COLUMN_BOOK_AUTHOR,
+            BookEntry.COLUMN_BOOK_PRICE, BookEntry.COLUMN_BOOK_QUANTITY, BookEntry.COLUMN_BOOK_SUPPLIER_NAME,
+            BookEntry.COLUMN_BOOK_SUPPLIER_PHONE, BookEntry.COLUMN_BOOK_REORDER_THRESHOLD};
+
+    // the columns of a full edit stored in the books table, in the bind order of SQL_UPDATE_BOOK
+    // the supplier name and phone are bound as the ID of their supplier row after these
+    private static final String[] BOOK_COLUMNS = {BookEntry.COLUMN_BOOK_NAME, BookEntry.COLUMN_BOOK_AUTHOR,
+            BookEntry.COLUMN_BOOK_PRICE, BookEntry.COLUMN_BOOK_QUANTITY, BookEntry.COLUMN_BOOK_REORDER_THRESHOLD};
+
+    // equivalent to "SELECT quantity FROM books WHERE _id = ?"
+    private static final String SQL_SELECT_QUANTITY =
+            "SELECT " + BookEntry.COLUMN_BOOK_QUANTITY + " FROM " + BookEntry.TABLE_NAME +
+                    " WHERE " + BookEntry._ID + " = ?";
+
+    // equivalent to "SELECT reorder_threshold FROM books WHERE _id = ?"
+    private static final String SQL_SELECT_THRESHOLD =
+            "SELECT " + BookEntry.COLUMN_BOOK_REORDER_THRESHOLD + " FROM " + BookEntry.TABLE_NAME +
+                    " WHERE " + BookEntry._ID + " = ?";
+
+    // equivalent to "UPDATE books SET quantity = ? WHERE _id = ?"
+    private static final String SQL_UPDATE_QUANTITY =
+            "UPDATE " + BookEntry.TABLE_NAME + " SET " + BookEntry.COLUMN_BOOK_QUANTITY + " = ? WHERE " +
+                    BookEntry._ID + " = ?";
+
+    // equivalent to "UPDATE books SET name = ?, author = ?, price = ?, quantity = ?, reorder_threshold = ?,
+    // supplier_id = ? WHERE _id = ?"
+    private static final String SQL_UPDATE_BOOK = buildUpdateBook();
+
+    // equivalent to "DELETE FROM books WHERE _id = ?"
+    private static final String SQL_DELETE_BOOK =
+            "DELETE FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry._ID + " = ?";
+
+    // atomic stock decrement, the quantity check and the decrement happen in a single statement
+    // so concurrent sales of the last copy can never both succeed
+    // equivalent to "UPDATE books SET quantity = quantity - ? WHERE _id = ? AND quantity >= ?"
+    private static final String SQL_SELL_BOOK =
+            "UPDATE " + BookEntry.TABLE_NAME + " SET " +
+                    BookEntry.COLUMN_BOOK_QUANTITY + " = " + BookEntry.COLUMN_BOOK_QUANTITY + " - ? WHERE " +
+                    BookEntry._ID + " = ? AND " + BookEntry.COLUMN_BOOK_QUANTITY + " >= ?";
+
+    // ledger row for a sale, with the current price of the book
+    // equivalent to "INSERT INTO sales (book_id, quantity, price, sold_at) SELECT _id, ?, price, ? FROM books WHERE _id = ?"
+    private static final String SQL_RECORD_SALE =
+            "INSERT INTO " + SaleEntry.TABLE_NAME + " (" +
+                    SaleEntry.COLUMN_SALE_BOOK_ID + ", " +
+                    SaleEntry.COLUMN_SALE_QUANTITY + ", " +
+                    SaleEntry.COLUMN_SALE_PRICE + ", " +
+                    SaleEntry.COLUMN_SALE_TIME + ") SELECT " +
+                    BookEntry._ID + ", ?, " + BookEntry.COLUMN_BOOK_PRICE + ", ? FROM " +
+                    BookEntry.TABLE_NAME + " WHERE " + BookEntry._ID + " = ?";
+
+    // supplier row of a name and phone, through the unique index
+    // equivalent to "SELECT _id FROM suppliers WHERE supplier_name = ? AND supplier_phone = ?"
+    private static final String SQL_SELECT_SUPPLIER =
+            "SELECT " + SupplierEntry._ID + " FROM " + SupplierEntry.TABLE_NAME + " WHERE " +
+                    SupplierEntry.COLUMN_SUPPLIER_NAME + " = ? AND " + SupplierEntry.COLUMN_SUPPLIER_PHONE + " = ?";
+
+    // the same for a pair with a missing name or phone, IS also matches null
+    // older sqlite versions can not search an index with IS, but such suppliers are rare
+    // equivalent to "SELECT _id FROM suppliers WHERE supplier_name IS ? AND supplier_phone IS ?"
+    private static final String SQL_SELECT_SUPPLIER_WITH_NULL =
+            "SELECT " + SupplierEntry._ID + " FROM " + SupplierEntry.TABLE_NAME + " WHERE " +
+                    SupplierEntry.COLUMN_SUPPLIER_NAME + " IS ? AND " + SupplierEntry.COLUMN_SUPPLIER_PHONE + " IS ?";
+
+    // equivalent to "INSERT INTO suppliers (supplier_name, supplier_phone) VALUES (?, ?)"
+    private static final String SQL_INSERT_SUPPLIER =
+            "INSERT INTO " + SupplierEntry.TABLE_NAME + " (" + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " +
+                    SupplierEntry.COLUMN_SUPPLIER_PHONE + ") VALUES (?, ?)";
+
+    // the database the statements were compiled against
+    private final SQLiteDatabase mDatabase;
+
+    private SQLiteStatement mSelectQuantity;
+    private SQLiteStatement mSelectThreshold;
+    private SQLiteStatement mUpdateQuantity;
+    private SQLiteStatement mUpdateBook;
+    private SQLiteStatement mDeleteBook;
+    private SQLiteStatement mSellBook;
+    private SQLiteStatement mRecordSale;
+    private SQLiteStatement mSelectSupplier;
+    private SQLiteStatement mSelectSupplierWithNull;
+    private SQLiteStatement mInsertSupplier;
+
+    // set by close(), a closed set is never used again
+    private boolean mClosed;
+
+    BookStatements(SQLiteDatabase database) {
+        mDatabase = database;
+    }
+
+    // true if the statements belong to this database and are still open
+    // a helper that was closed and opened again has a new one, and a restore closes every set, see BookProvider
+    boolean isFor(SQLiteDatabase database) {
+        return !mClosed && mDatabase == database;
+    }
+
+    // quantity of a book, or -1 if there is no such book
+    long selectQuantity(long id) {
+        if (mSelectQuantity == null) {
+            mSelectQuantity = mDatabase.compileStatement(SQL_SELECT_QUANTITY);
+        }
+        return selectLong(mSelectQuantity, id);
+    }
+
+    // reorder threshold of a book, or -1 if there is no such book
+    long selectThreshold(long id) {
+        if (mSelectThreshold == null) {
+            mSelectThreshold = mDatabase.compileStatement(SQL_SELECT_THRESHOLD);
+        }
+        return selectLong(mSelectThreshold, id);
+    }
+
+    // a point select that finds no row throws rather than returning a value
+    private static long selectLong(SQLiteStatement statement, long id) {
+        statement.bindLong(1, id);
+        try {
+            return statement.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return -1;
+        }
+    }
+
+    // true if update() has a compiled statement for exactly these columns
+    static boolean canUpdate(ContentValues values) {
+        if (values.size() == 1) {
+            return values.containsKey(BookEntry.COLUMN_BOOK_QUANTITY);
+        }
+        if (values.size() != UPDATE_COLUMNS.length) {
+            return false;
+        }
+        for (String column : UPDATE_COLUMNS) {
+            if (!values.containsKey(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // update a single book with values accepted by canUpdate(), return the number of rows updated
+    // values are bound with the same conversions as SQLiteDatabase.update()
+    // a full edit interns its supplier, so it must run inside a transaction, see internSupplier()
+    int update(long id, ContentValues values) {
+
+        SQLiteStatement statement;
+        int idIndex;
+        if (values.size() == 1) {
+            if (mUpdateQuantity == null) {
+                mUpdateQuantity = mDatabase.compileStatement(SQL_UPDATE_QUANTITY);
+            }
+            statement = mUpdateQuantity;
+            DatabaseUtils.bindObjectToProgram(statement, 1, values.get(BookEntry.COLUMN_BOOK_QUANTITY));
+            idIndex = 2;
+        } else {
+            if (mUpdateBook == null) {
+                mUpdateBook = mDatabase.compileStatement(SQL_UPDATE_BOOK);
+            }
+            statement = mUpdateBook;
+            for (int i = 0; i < BOOK_COLUMNS.length; i++) {
+                DatabaseUtils.bindObjectToProgram(statement, i + 1, values.get(BOOK_COLUMNS[i]));
+            }
+            long supplierId = internSupplier(values.getAsString(BookEntry.COLUMN_BOOK_SUPPLIER_NAME),
+                    values.getAsString(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE));
+            bindIdOrNull(statement, BOOK_COLUMNS.length + 1, supplierId);
+            idIndex = BOOK_COLUMNS.length + 2;
+        }
+
+        // the ID is always the last argument
+        statement.bindLong(idIndex, id);
+        return statement.executeUpdateDelete();
+    }
+
+    // ID of the supplier row with this name and phone, inserting the row the first time a pair is seen
+    // return -1 for a book without a supplier, when both are null
+    // must be called inside a transaction, so no other writer can insert the same pair between the lookup
+    // and the insert, and a new supplier row commits together with the book written with it
+    long internSupplier(String name, String phone) {
+
+        if (name == null && phone == null) {
+            return -1;
+        }
+
+        SQLiteStatement select;
+        if (name != null && phone != null) {
+            if (mSelectSupplier == null) {
+                mSelectSupplier = mDatabase.compileStatement(SQL_SELECT_SUPPLIER);
+            }
+            select = mSelectSupplier;
+        } else {
+            if (mSelectSupplierWithNull == null) {
+                mSelectSupplierWithNull = mDatabase.compileStatement(SQL_SELECT_SUPPLIER_WITH_NULL);
+            }
+            select = mSelectSupplierWithNull;
+        }
+        bindStringOrNull(select, 1, name);
+        bindStringOrNull(select, 2, phone);
+        try {
+            return select.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            // a new supplier, inserted below
+        }
+
+        if (mInsertSupplier == null) {
+            mInsertSupplier = mDatabase.compileStatement(SQL_INSERT_SUPPLIER);
+        }
+        bindStringOrNull(mInsertSupplier, 1, name);
+        bindStringOrNull(mInsertSupplier, 2, phone);
+        return mInsertSupplier.executeInsert();
+    }
+
+    // bindString() does not accept null values
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    // a supplier ID from internSupplier(), -1 is bound as null
+    static void bindIdOrNull(SQLiteStatement statement, int index, long id) {
+        if (id == -1) {
+            statement.bindNull(index);
+        } else {
+            statement.bindLong(index, id);
+        }
+    }
+
+    // delete a single book, return the number of rows deleted
+    int delete(long id) {
+        if (mDeleteBook == null) {
+            mDeleteBook = mDatabase.compileStatement(SQL_DELETE_BOOK);
+        }
+        mDeleteBook.bindLong(1, id);
+        return mDeleteBook.executeUpdateDelete();
+    }
+
+    // decrement the stock of a book if it has enough copies, return true if it did
+    boolean sell(long id, int count) {
+        if (mSellBook == null) {
+            mSellBook = mDatabase.compileStatement(SQL_SELL_BOOK);
+        }
+        mSellBook.bindLong(1, count);
+        mSellBook.bindLong(2, id);
+        mSellBook.bindLong(3, count);
+        return mSellBook.executeUpdateDelete() != 0;
+    }
+
+    // append a ledger row for a sale at the current price of the book
+    void recordSale(long id, int count, long time) {
+        if (mRecordSale == null) {
+            mRecordSale = mDatabase.compileStatement(SQL_RECORD_SALE);
+        }
+        mRecordSale.bindLong(1, count);
+        mRecordSale.bindLong(2, time);
+        mRecordSale.bindLong(3, id);
+        mRecordSale.executeInsert();
+    }
+
+    // release every compiled statement
+    // close every compiled statement, only the first call closes them
+    void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        SQLiteStatement[] statements = {mSelectQuantity, mSelectThreshold, mUpdateQuantity, mUpdateBook,
+                mDeleteBook, mSellBook, mRecordSale, mSelectSupplier, mSelectSupplierWithNull, mInsertSupplier};
+        for (SQLiteStatement statement : statements) {
+            if (statement != null) {
+                statement.close();
+            }
+        }
+    }
+
+    private static String buildUpdateBook() {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(BookEntry.TABLE_NAME).append(" SET ");
+        for (String column : BOOK_COLUMNS) {
+            sql.append(column).append(" = ?, ");
+        }
+        sql.append(BookEntry.COLUMN_BOOK_SUPPLIER_ID).append(" = ?");
+        return sql.append(" WHERE ").append(BookEntry._ID).append(" = ?").toString();
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.sommerengineering.bookstore.data;
+
+// sqlite connection settings applied by BookDbHelper every time the database is opened
+// DEFAULT is tuned for the catalog: readers never wait on the sale button or an import
+// SQLITE_DEFAULTS keeps the settings of the first release and exists for comparison in benchmarks
+public final class BookStorageProfile {
+
+    // values for the synchronous setting, see https://sqlite.org/pragma.html#pragma_synchronous
+    // NORMAL is durable in WAL mode except for the last commits before a power loss
+    public static final String SYNCHRONOUS_OFF = "OFF";
+    public static final String SYNCHRONOUS_NORMAL = "NORMAL";
+    public static final String SYNCHRONOUS_FULL = "FULL";
+
+    // write-ahead logging, 8MB page cache and memory map, checkpoint every 1000 pages (about 4MB)
+    public static final BookStorageProfile DEFAULT =
+            new BookStorageProfile(true, SYNCHRONOUS_NORMAL, 8 * 1024, 8 * 1024 * 1024, 1000);
+
+    // rollback journal and sqlite defaults, a cache or mmap size of 0 or less keeps the sqlite default
+    public static final BookStorageProfile SQLITE_DEFAULTS =
+            new BookStorageProfile(false, SYNCHRONOUS_FULL, 0, 0, 0);
+
+    // true for write-ahead logging, which lets readers use their own connections while a write is in progress
+    // android opens a pool of reader connections for the database only in this mode
+    public final boolean writeAheadLogging;
+
+    // one of the SYNCHRONOUS_ constants
+    public final String synchronous;
+
+    // page cache per connection in kibibytes
+    public final int cacheSizeKb;
+
+    // bytes of the database file that are memory mapped instead of read through system calls
+    public final long mmapSizeBytes;
+
+    // the log is copied back into the database once it holds this many pages, only used with write-ahead logging
+    public final int walAutoCheckpointPages;
+
+    public BookStorageProfile(boolean writeAheadLogging, String synchronous, int cacheSizeKb,
+                              long mmapSizeBytes, int walAutoCheckpointPages) {
+        this.writeAheadLogging = writeAheadLogging;
+        this.synchronous = synchronous;
+        this.cacheSizeKb = cacheSizeKb;
+        this.mmapSizeBytes = mmapSizeBytes;
+        this.walAutoCheckpointPages = walAutoCheckpointPages;
+    }
+
+}
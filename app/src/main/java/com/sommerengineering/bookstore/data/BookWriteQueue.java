@@ -0,0 +1,447 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// single writer queue for every insert, update, delete, and sale from the UI
+// writes run in order on one background thread and results are delivered on the main thread
+// consecutive edits of one row are merged into a single update
+// sales are buffered and group committed: up to MAX_SALES_PER_COMMIT sales share one transaction,
+// and a sale waits at most SALE_COMMIT_DELAY_MILLIS for others to join it, so a checkout rush
+// costs one sync of the log per group instead of one per sale, and the UI thread never waits on either
+// buffered sales are lost if the process dies before they commit, so call flush() when the app is backgrounded
+public final class BookWriteQueue {
+
+    private static final String LOG_TAG = BookWriteQueue.class.getSimpleName();
+
+    // maximum number of writes committed in a single transaction
+    // small transactions keep the write lock short so readers are never blocked for long
+    private static final int MAX_TRANSACTION_SIZE = 20;
+
+    // maximum number of sales committed in a single transaction
+    // a sale is a short indexed update and a ledger insert, so a much larger group still holds the lock briefly
+    private static final int MAX_SALES_PER_COMMIT = 256;
+
+    // longest time a sale waits in the buffer for other sales to share its commit
+    private static final long SALE_COMMIT_DELAY_MILLIS = 50;
+
+    // kinds of write
+    private static final int TYPE_INSERT = 0;
+    private static final int TYPE_UPDATE = 1;
+    private static final int TYPE_DELETE = 2;
+    private static final int TYPE_SELL = 3;
+
+    // called on the main thread once a write is committed or has failed
+    public interface Callback {
+        void onWriteComplete(Result result);
+    }
+
+    // outcome of a single write, merged writes share the same result
+    public static final class Result {
+
+        // URI of the new row for an insert, otherwise the URI that was written
+        public final Uri uri;
+
+        // number of rows changed, 0 if nothing changed
+        public final int count;
+
+        // provider call() result for a sale, otherwise null
+        public final Bundle extras;
+
+        // exception thrown by the provider, null if the write succeeded
+        public final Exception error;
+
+        Result(Uri uri, int count, Bundle extras, Exception error) {
+            this.uri = uri;
+            this.count = count;
+            this.extras = extras;
+            this.error = error;
+        }
+    }
+
+    // a queued write and everyone waiting for its result
+    private static final class PendingWrite {
+
+        final int type;
+        final Uri uri;
+        final ContentValues values;
+        final ArrayList<Callback> callbacks = new ArrayList<>(1);
+
+        // sale only
+        long bookId;
+        int sellCount;
+        long soldAt;
+
+        PendingWrite(int type, Uri uri, ContentValues values, Callback callback) {
+            this.type = type;
+            this.uri = uri;
+            this.values = values;
+            addCallback(callback);
+        }
+
+        void addCallback(Callback callback) {
+            if (callback != null) {
+                callbacks.add(callback);
+            }
+        }
+
+        // fold the next write into this one if both write the same row in the same way
+        // inserts are never merged since each creates its own row,
+        // and sales are never merged since each is its own row in the sales ledger
+        boolean merge(PendingWrite next) {
+
+            if (next.type != type || type == TYPE_INSERT || type == TYPE_SELL) {
+                return false;
+            }
+
+            switch (type) {
+
+                // the later values win, as they would if both updates ran
+                case TYPE_UPDATE:
+                    if (!uri.equals(next.uri)) {
+                        return false;
+                    }
+                    values.putAll(next.values);
+                    break;
+
+                // deleting the same row twice is a single delete
+                case TYPE_DELETE:
+                    if (!uri.equals(next.uri)) {
+                        return false;
+                    }
+                    break;
+            }
+
+            callbacks.addAll(next.callbacks);
+            return true;
+        }
+    }
+
+    private static BookWriteQueue sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    // writes waiting for the background thread, guarded by itself
+    private final ArrayDeque<PendingWrite> mPending = new ArrayDeque<>();
+
+    // number of sales in mPending, guarded by mPending
+    private int mPendingSales;
+
+    // true while a drain is posted to the executor or running, guarded by mPending
+    private boolean mDrainScheduled;
+
+    // the posted drain while it is still waiting out the sale commit delay, otherwise null, guarded by mPending
+    private ScheduledFuture<?> mDelayedDrain;
+
+    // drains the queue on the background thread
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    private BookWriteQueue(Context context) {
+        mContentResolver = context.getApplicationContext().getContentResolver();
+    }
+
+    // one queue per process, so every write goes through a single writer
+    public static synchronized BookWriteQueue getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BookWriteQueue(context);
+        }
+        return sInstance;
+    }
+
+    // insert a new book, the result URI is the new row
+    public void insert(ContentValues values, Callback callback) {
+        enqueue(new PendingWrite(TYPE_INSERT, BookEntry.CONTENT_URI, new ContentValues(values), callback));
+    }
+
+    // update the books at the URI
+    public void update(Uri uri, ContentValues values, Callback callback) {
+        enqueue(new PendingWrite(TYPE_UPDATE, uri, new ContentValues(values), callback));
+    }
+
+    // delete the books at the URI
+    public void delete(Uri uri, Callback callback) {
+        enqueue(new PendingWrite(TYPE_DELETE, uri, null, callback));
+    }
+
+    // sell copies of a book, the result extras hold KEY_SOLD, KEY_LOW_STOCK, and the remaining quantity
+    // the sale is recorded in the ledger with the time of this call, not the time it is committed
+    public void sell(long bookId, int count, Callback callback) {
+        PendingWrite write = new PendingWrite(TYPE_SELL, BookEntry.buildSellUri(bookId), null, callback);
+        write.bookId = bookId;
+        write.sellCount = count;
+        write.soldAt = System.currentTimeMillis();
+        enqueue(write);
+    }
+
+    // commit the buffered sales now instead of waiting for more sales to share the commit
+    // returns right away, the commit runs on the background thread
+    // call when the app leaves the foreground, since the process can then be killed without warning
+    public void flush() {
+        synchronized (mPending) {
+            if (!mPending.isEmpty()) {
+                scheduleDrain(true);
+            }
+        }
+    }
+
+    // add the write to the queue, merging it into the last queued write when possible
+    private void enqueue(PendingWrite write) {
+        synchronized (mPending) {
+
+            PendingWrite last = mPending.peekLast();
+            if (last == null || !last.merge(write)) {
+                mPending.addLast(write);
+                if (write.type == TYPE_SELL) {
+                    mPendingSales++;
+                }
+            }
+
+            // a sale waits for others to share its commit unless a full group is already waiting,
+            // every other write is committed right away along with any sales queued before it
+            scheduleDrain(write.type != TYPE_SELL || mPendingSales >= MAX_SALES_PER_COMMIT);
+        }
+    }
+
+    // post a drain, either right away or after the sale commit delay, called with mPending held
+    // a drain that is still waiting out the delay is brought forward when a drain is needed right away
+    private void scheduleDrain(boolean now) {
+
+        if (mDrainScheduled) {
+            if (now && mDelayedDrain != null && mDelayedDrain.cancel(false)) {
+                mDelayedDrain = null;
+                mExecutor.execute(mDrain);
+            }
+            return;
+        }
+
+        mDrainScheduled = true;
+        if (now) {
+            mExecutor.execute(mDrain);
+        } else {
+            mDelayedDrain = mExecutor.schedule(mDrain, SALE_COMMIT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // commit queued writes until the queue is empty
+    // sales that arrive while a group is committing do not wait out the delay again, they form the next group
+    private void drain() {
+
+        while (true) {
+
+            // take the next group of writes, either consecutive sales or consecutive other writes,
+            // so writes are always committed in the order they were queued
+            ArrayList<PendingWrite> group = new ArrayList<>();
+            boolean sales;
+            synchronized (mPending) {
+
+                mDelayedDrain = null;
+                if (mPending.isEmpty()) {
+                    mDrainScheduled = false;
+                    return;
+                }
+
+                sales = mPending.peekFirst().type == TYPE_SELL;
+                int maxSize = sales ? MAX_SALES_PER_COMMIT : MAX_TRANSACTION_SIZE;
+                while (group.size() < maxSize && !mPending.isEmpty() &&
+                        (mPending.peekFirst().type == TYPE_SELL) == sales) {
+                    group.add(mPending.pollFirst());
+                }
+                if (sales) {
+                    mPendingSales -= group.size();
+                }
+            }
+
+            if (sales) {
+                commitSales(group);
+            } else {
+                commitGroup(group);
+            }
+        }
+    }
+
+    // sell the group through the provider in a single transaction, one ledger row per sale
+    // if the batch fails, each sale is retried on its own so one bad sale does not fail the others
+    private void commitSales(ArrayList<PendingWrite> group) {
+
+        try {
+            Bundle[] sales = sellBatch(group);
+            for (int i = 0; i < group.size(); i++) {
+                PendingWrite write = group.get(i);
+                deliver(write, new Result(write.uri, sales[i].getBoolean(BookContract.KEY_SOLD) ? 1 : 0, sales[i], null));
+            }
+            return;
+        } catch (RuntimeException e) {
+            Log.w(LOG_TAG, "Batch of " + group.size() + " sales failed, retrying one at a time", e);
+        }
+
+        for (PendingWrite write : group) {
+            commitSale(write);
+        }
+    }
+
+    // sell a single book in its own transaction
+    private void commitSale(PendingWrite write) {
+
+        Result result;
+        try {
+            Bundle sale = sellBatch(Collections.singletonList(write))[0];
+            result = new Result(write.uri, sale.getBoolean(BookContract.KEY_SOLD) ? 1 : 0, sale, null);
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Sale failed for: " + write.uri, e);
+            result = new Result(write.uri, 0, null, e);
+        }
+
+        deliver(write, result);
+    }
+
+    // sell through the provider, which checks and decrements the stock and appends the ledger rows in one transaction
+    // return the same extras a single sale returns for each sale, in order
+    private Bundle[] sellBatch(List<PendingWrite> sales) {
+
+        int size = sales.size();
+        long[] ids = new long[size];
+        int[] counts = new int[size];
+        long[] times = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = sales.get(i).bookId;
+            counts[i] = sales.get(i).sellCount;
+            times[i] = sales.get(i).soldAt;
+        }
+
+        Bundle extras = new Bundle();
+        extras.putLongArray(BookContract.KEY_BOOK_IDS, ids);
+        extras.putIntArray(BookContract.KEY_SELL_COUNTS, counts);
+        extras.putLongArray(BookContract.KEY_SALE_TIMES, times);
+        Bundle batch = mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SELL_BATCH, null, extras);
+
+        boolean[] sold = batch.getBooleanArray(BookContract.KEY_SOLD);
+        boolean[] lowStock = batch.getBooleanArray(BookContract.KEY_LOW_STOCK);
+        int[] quantities = batch.getIntArray(BookContract.KEY_QUANTITIES);
+
+        Bundle[] results = new Bundle[size];
+        for (int i = 0; i < size; i++) {
+            results[i] = new Bundle();
+            results[i].putBoolean(BookContract.KEY_SOLD, sold[i]);
+            results[i].putBoolean(BookContract.KEY_LOW_STOCK, lowStock[i]);
+            if (quantities[i] >= 0) {
+                results[i].putInt(BookEntry.COLUMN_BOOK_QUANTITY, quantities[i]);
+            }
+        }
+        return results;
+    }
+
+    // commit the group in a single transaction using the provider applyBatch()
+    // if the batch fails, each write is retried on its own so one bad write does not fail the others
+    private void commitGroup(ArrayList<PendingWrite> group) {
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(group.size());
+        for (PendingWrite write : group) {
+            operations.add(toOperation(write));
+        }
+
+        try {
+            ContentProviderResult[] results = mContentResolver.applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+            for (int i = 0; i < group.size(); i++) {
+                deliver(group.get(i), toResult(group.get(i), results[i]));
+            }
+            return;
+        } catch (RemoteException | OperationApplicationException | RuntimeException e) {
+            Log.w(LOG_TAG, "Batch of " + group.size() + " writes failed, retrying one at a time", e);
+        }
+
+        for (PendingWrite write : group) {
+            commitSingle(write);
+        }
+    }
+
+    // commit a single write in its own transaction
+    private void commitSingle(PendingWrite write) {
+
+        Result result;
+        try {
+            switch (write.type) {
+                case TYPE_INSERT:
+                    Uri newUri = mContentResolver.insert(write.uri, write.values);
+                    result = new Result(newUri, newUri == null ? 0 : 1, null, null);
+                    break;
+                case TYPE_UPDATE:
+                    result = new Result(write.uri, mContentResolver.update(write.uri, write.values, null, null), null, null);
+                    break;
+                default:
+                    result = new Result(write.uri, mContentResolver.delete(write.uri, null, null), null, null);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Write failed for: " + write.uri, e);
+            result = new Result(write.uri, 0, null, e);
+        }
+
+        deliver(write, result);
+    }
+
+    private static ContentProviderOperation toOperation(PendingWrite write) {
+        switch (write.type) {
+            case TYPE_INSERT:
+                return ContentProviderOperation.newInsert(write.uri).withValues(write.values).build();
+            case TYPE_UPDATE:
+                return ContentProviderOperation.newUpdate(write.uri).withValues(write.values).build();
+            default:
+                return ContentProviderOperation.newDelete(write.uri).build();
+        }
+    }
+
+    private static Result toResult(PendingWrite write, ContentProviderResult result) {
+
+        // an insert reports the new row URI, everything else reports a row count
+        if (write.type == TYPE_INSERT) {
+            return new Result(result.uri, result.uri == null ? 0 : 1, null, null);
+        }
+        return new Result(write.uri, result.count == null ? 0 : result.count, null, null);
+    }
+
+    // hand the result to every callback waiting on the write, on the main thread
+    private void deliver(final PendingWrite write, final Result result) {
+
+        if (write.callbacks.isEmpty()) {
+            return;
+        }
+
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Callback callback : write.callbacks) {
+                    callback.onWriteComplete(result);
+                }
+            }
+        });
+    }
+
+}
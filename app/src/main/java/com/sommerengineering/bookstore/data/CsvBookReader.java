@@ -0,0 +1,200 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.ContentValues;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+// streams book rows from a comma separated feed
+// the first record is a header naming a BookEntry column for each field, unknown columns are ignored
+// fields may be quoted with " and a quoted field may contain commas, line breaks, and "" escaped quotes
+// a record is held in memory only up to MAX_FIELD_LENGTH characters per field and MAX_FIELDS fields,
+// the rest of a longer record is read and dropped and the row is rejected, so a quote that is never closed
+// costs one rejected row instead of buffering the rest of the feed
+public class CsvBookReader implements BookRowReader {
+
+    // longest field kept, far beyond any title, name, or phone number
+    static final int MAX_FIELD_LENGTH = 16 * 1024;
+
+    // most fields kept in a record, far beyond the columns of a book
+    static final int MAX_FIELDS = 256;
+
+    // buffered source of characters
+    private final BufferedReader mReader;
+
+    // BookEntry column name for each field position, null for ignored fields
+    private String[] mColumns;
+
+    // fields of the current record, reused for every record
+    private final ArrayList<String> mFields = new ArrayList<>();
+
+    // characters of the current field, reused for every field
+    private final StringBuilder mField = new StringBuilder();
+
+    // true if the current record had a field or a field count over the limits
+    private boolean mRecordTooLong;
+
+    // reason the last row can not be imported, null if it can
+    private String mRowError;
+
+    // number of data rows read so far, the header is not counted
+    private long mRowNumber;
+
+    public CsvBookReader(Reader reader) {
+        mReader = new BufferedReader(reader);
+    }
+
+    @Override
+    public boolean readRow(ContentValues values) throws IOException {
+
+        // the header is read lazily with the first row
+        if (mColumns == null) {
+
+            // an empty feed has no header and no rows
+            if (!readRecord()) {
+                return false;
+            }
+            if (mRecordTooLong) {
+                throw new IOException("Header has a field over " + MAX_FIELD_LENGTH + " characters or over " +
+                        MAX_FIELDS + " fields");
+            }
+
+            mColumns = new String[mFields.size()];
+            for (int i = 0; i < mFields.size(); i++) {
+                mColumns[i] = BookImporter.toColumn(mFields.get(i).trim());
+            }
+        }
+
+        // skip blank lines between records
+        do {
+            if (!readRecord()) {
+                return false;
+            }
+        } while (mFields.size() == 1 && mFields.get(0).isEmpty());
+
+        mRowNumber++;
+
+        // a record over the limits is cut short, so none of its values are returned
+        values.clear();
+        if (mRecordTooLong) {
+            mRowError = "field over " + MAX_FIELD_LENGTH + " characters or over " + MAX_FIELDS + " fields";
+            return true;
+        }
+        mRowError = null;
+
+        // map each field to its column, extra fields beyond the header are ignored
+        int count = Math.min(mFields.size(), mColumns.length);
+        for (int i = 0; i < count; i++) {
+            if (mColumns[i] != null) {
+                values.put(mColumns[i], mFields.get(i));
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public long getRowNumber() {
+        return mRowNumber;
+    }
+
+    @Override
+    public String getRowError() {
+        return mRowError;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    // read the next record into mFields
+    // return false if the end of the stream is reached before any character of the record
+    private boolean readRecord() throws IOException {
+
+        mFields.clear();
+        mField.setLength(0);
+        mRecordTooLong = false;
+
+        boolean quoted = false;
+        boolean started = false;
+
+        while (true) {
+
+            int c = mReader.read();
+
+            // end of stream terminates the final record
+            if (c == -1) {
+                if (!started) {
+                    return false;
+                }
+                addField();
+                return true;
+            }
+
+            started = true;
+
+            if (quoted) {
+
+                if (c == '"') {
+
+                    // a doubled quote is an escaped quote, anything else closes the quoted section
+                    mReader.mark(1);
+                    if (mReader.read() == '"') {
+                        appendToField('"');
+                    } else {
+                        mReader.reset();
+                        quoted = false;
+                    }
+
+                } else {
+                    appendToField((char) c);
+                }
+
+            } else if (c == '"') {
+                quoted = true;
+
+            } else if (c == ',') {
+                addField();
+                mField.setLength(0);
+
+            } else if (c == '\n' || c == '\r') {
+
+                // treat \r\n as a single line break
+                if (c == '\r') {
+                    mReader.mark(1);
+                    if (mReader.read() != '\n') {
+                        mReader.reset();
+                    }
+                }
+
+                addField();
+                return true;
+
+            } else {
+                appendToField((char) c);
+            }
+        }
+    }
+
+    // add a character to the current field, or drop it once the field is at the length limit
+    private void appendToField(char c) {
+        if (mField.length() < MAX_FIELD_LENGTH) {
+            mField.append(c);
+        } else {
+            mRecordTooLong = true;
+        }
+    }
+
+    // end the current field, or drop it once the record is at the field limit
+    private void addField() {
+        if (mFields.size() < MAX_FIELDS) {
+            mFields.add(mField.toString());
+        } else {
+            mRecordTooLong = true;
+        }
+    }
+
+}
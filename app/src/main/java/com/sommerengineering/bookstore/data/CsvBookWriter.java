@@ -0,0 +1,212 @@
+package com.sommerengineering.bookstore.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+// streams every book as UTF-8 comma separated text in the format CsvBookReader reads, for BookEntry.EXPORT_URI
+// books are read in pages of _ID order, each a short query whose cursor window is filled once, and every field is
+// encoded straight into one reused byte buffer, so an export of any size holds a single page and a single buffer
+// no read transaction is held across pages, so sales keep committing, a book changed during the export is written
+// as it was when its page was read, and every book that exists for the whole export is written exactly once
+public final class CsvBookWriter {
+
+    // fields of each row in order, the header names them so an export can be imported again
+    // the _ID field is ignored on import, and the supplier is written as its name and phone rather than its row ID
+    static final String[] COLUMNS = {BookEntry._ID, BookEntry.COLUMN_BOOK_NAME, BookEntry.COLUMN_BOOK_AUTHOR,
+            BookEntry.COLUMN_BOOK_PRICE, BookEntry.COLUMN_BOOK_QUANTITY,
+            BookEntry.COLUMN_BOOK_SUPPLIER_NAME, BookEntry.COLUMN_BOOK_SUPPLIER_PHONE,
+            BookEntry.COLUMN_BOOK_REORDER_THRESHOLD};
+
+    // rows read by each page query, a page of typical books fits well inside a 2 MB cursor window
+    static final int PAGE_ROWS = 1000;
+
+    // bytes encoded before each write to the stream, the size of a pipe buffer
+    static final int BUFFER_BYTES = 64 * 1024;
+
+    // position of the price in COLUMNS, stored in cents and written in dollars as the importer reads it
+    private static final int PRICE_FIELD = 3;
+
+    // next page of books after the last _ID of the previous one
+    // equivalent to "SELECT _id, name, ... reorder_threshold FROM books_with_suppliers WHERE _id>? ORDER BY _id
+    // LIMIT 1000"
+    private static final String SQL_SELECT_PAGE =
+            "SELECT " + TextUtils.join(", ", COLUMNS) + " FROM " + BookDbHelper.VIEW_BOOKS +
+                    " WHERE " + BookEntry._ID + ">? ORDER BY " + BookEntry._ID + " LIMIT " + PAGE_ROWS;
+
+    // destination of the text, only written in whole buffers
+    private final OutputStream mOut;
+
+    // encoded bytes not yet written
+    private final byte[] mBuffer = new byte[BUFFER_BYTES];
+    private int mLength;
+
+    // bytes written to the stream so far
+    private long mBytesWritten;
+
+    // digits of numbers, reused for every field
+    // prices are always written with '.' in the US locale, which is the only separator Money.parse accepts
+    private final Money.Formatter mFormatter = new Money.Formatter(Locale.US);
+    private final char[] mDigits = new char[Money.Formatter.MAX_LENGTH];
+
+    public CsvBookWriter(OutputStream out) {
+        mOut = out;
+    }
+
+    // write the header and every book, and flush the stream
+    // return the number of books written
+    public long writeAll(SQLiteDatabase database) throws IOException {
+
+        writeHeader();
+
+        long rows = 0;
+        String[] args = {"0"};
+        while (true) {
+
+            int pageRows = 0;
+            Cursor cursor = database.rawQuery(SQL_SELECT_PAGE, args);
+            try {
+                while (cursor.moveToNext()) {
+                    writeRow(cursor);
+                    pageRows++;
+                }
+
+                // the last _ID of the page is where the next one starts
+                if (pageRows > 0) {
+                    cursor.moveToLast();
+                    args[0] = String.valueOf(cursor.getLong(0));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            rows += pageRows;
+            if (pageRows < PAGE_ROWS) {
+                break;
+            }
+        }
+
+        flush();
+        return rows;
+    }
+
+    // bytes written to the stream so far, buffered bytes are counted once they are flushed
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    // a line naming every column
+    private void writeHeader() throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                put(',');
+            }
+            writeText(COLUMNS[i]);
+        }
+        put('\n');
+    }
+
+    // a line of the current row of a cursor with COLUMNS, a null is an empty field
+    private void writeRow(Cursor cursor) throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                put(',');
+            }
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    long value = cursor.getLong(i);
+                    writeDigits(i == PRICE_FIELD ? mFormatter.format(value, mDigits, 0) :
+                            mFormatter.formatInteger(value, mDigits, 0));
+                    break;
+                default:
+                    writeText(cursor.getString(i));
+                    break;
+            }
+        }
+        put('\n');
+    }
+
+    // the first length chars of mDigits, which are all ASCII
+    private void writeDigits(int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            put(mDigits[i]);
+        }
+    }
+
+    // a text field encoded as UTF-8, quoted if it contains a separator, a line break, or a quote
+    private void writeText(String text) throws IOException {
+
+        boolean quoted = needsQuotes(text);
+        if (quoted) {
+            put('"');
+        }
+
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                put('"');
+                put('"');
+            } else if (c < 0x80) {
+                put(c);
+            } else if (c < 0x800) {
+                put(0xc0 | (c >> 6));
+                put(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                    Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                put(0xf0 | (codePoint >> 18));
+                put(0x80 | ((codePoint >> 12) & 0x3f));
+                put(0x80 | ((codePoint >> 6) & 0x3f));
+                put(0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+
+                // an unpaired surrogate is not a character, replaced the same as String.getBytes does
+                put('?');
+            } else {
+                put(0xe0 | (c >> 12));
+                put(0x80 | ((c >> 6) & 0x3f));
+                put(0x80 | (c & 0x3f));
+            }
+        }
+
+        if (quoted) {
+            put('"');
+        }
+    }
+
+    private static boolean needsQuotes(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // append one byte, writing the buffer first if it is full
+    private void put(int b) throws IOException {
+        if (mLength == mBuffer.length) {
+            flush();
+        }
+        mBuffer[mLength++] = (byte) b;
+    }
+
+    // write every buffered byte and flush the stream
+    private void flush() throws IOException {
+        mOut.write(mBuffer, 0, mLength);
+        mOut.flush();
+        mBytesWritten += mLength;
+        mLength = 0;
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.ContentValues;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+// streams book rows from a JSON feed
+// the feed is a single array of objects, each object key is a BookEntry column name
+// for example: [ {"name": "The Spot", "price": 7.99, "quantity": 12}, ... ]
+public class JsonBookReader implements BookRowReader {
+
+    // pull parser only holds the current token in memory
+    private final JsonReader mReader;
+
+    // true once the opening bracket of the array has been consumed
+    private boolean mStarted;
+
+    // number of rows read so far
+    private long mRowNumber;
+
+    public JsonBookReader(Reader reader) {
+        mReader = new JsonReader(reader);
+    }
+
+    @Override
+    public boolean readRow(ContentValues values) throws IOException {
+
+        if (!mStarted) {
+            mReader.beginArray();
+            mStarted = true;
+        }
+
+        // closing bracket of the array is the end of the feed
+        if (!mReader.hasNext()) {
+            mReader.endArray();
+            return false;
+        }
+
+        mRowNumber++;
+        values.clear();
+
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+
+            String column = BookImporter.toColumn(mReader.nextName());
+            JsonToken token = mReader.peek();
+
+            // unknown keys, nested values, and nulls are skipped
+            // numbers and booleans are read as strings and converted by the importer
+            if (column == null || token == JsonToken.NULL || token == JsonToken.BEGIN_ARRAY
+                    || token == JsonToken.BEGIN_OBJECT) {
+                mReader.skipValue();
+            } else if (token == JsonToken.BOOLEAN) {
+                values.put(column, String.valueOf(mReader.nextBoolean()));
+            } else {
+                values.put(column, mReader.nextString());
+            }
+        }
+        mReader.endObject();
+
+        return true;
+    }
+
+    @Override
+    public long getRowNumber() {
+        return mRowNumber;
+    }
+
+    // every string is read whole by JsonReader, so a row is never cut short
+    @Override
+    public String getRowError() {
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.sommerengineering.bookstore.data;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+// prices are stored and passed around as a long number of cents, so sums and valuations are exact
+// this class converts between cents and text without going through float, double, or String.format
+public final class Money {
+
+    // cents in one dollar
+    public static final int CENTS_PER_UNIT = 100;
+
+    // digits after the decimal separator
+    private static final int FRACTION_DIGITS = 2;
+
+    // constants only, use a Formatter for output
+    private Money() {}
+
+    // parse a plain decimal amount such as "7.99", "7.9", "7", or ".99" into cents
+    // the separator is always '.', as in a catalog feed
+    public static long parse(String text) {
+        return parse(text, '.');
+    }
+
+    // parse an amount typed in the given locale, either its decimal separator or '.' is accepted
+    public static long parse(String text, Locale locale) {
+        return parse(text, DecimalFormatSymbols.getInstance(locale).getDecimalSeparator());
+    }
+
+    // throws NumberFormatException for anything but digits with at most one separator,
+    // for a value too large for a long, or for a non-zero digit past the cents, since that can not be stored exactly
+    private static long parse(String text, char decimalSeparator) {
+
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        // accumulated as a negative number so the most negative long can be parsed
+        long cents = 0;
+        int fractionDigits = -1;
+        boolean anyDigit = false;
+        for (; i < length; i++) {
+
+            char c = text.charAt(i);
+            if (c == decimalSeparator || c == '.') {
+                if (fractionDigits >= 0) {
+                    throw invalid(text);
+                }
+                fractionDigits = 0;
+                continue;
+            }
+
+            int digit = Character.digit(c, 10);
+            if (digit < 0) {
+                throw invalid(text);
+            }
+            anyDigit = true;
+
+            // digits past the cents may only be trailing zeros
+            if (fractionDigits >= FRACTION_DIGITS) {
+                if (digit != 0) {
+                    throw invalid(text);
+                }
+                continue;
+            }
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+
+            if (cents < (Long.MIN_VALUE + digit) / 10) {
+                throw invalid(text);
+            }
+            cents = cents * 10 - digit;
+        }
+
+        if (!anyDigit) {
+            throw invalid(text);
+        }
+
+        // scale whole units and single fraction digits up to cents
+        for (int scale = Math.max(fractionDigits, 0); scale < FRACTION_DIGITS; scale++) {
+            if (cents < Long.MIN_VALUE / 10) {
+                throw invalid(text);
+            }
+            cents *= 10;
+        }
+
+        if (negative) {
+            return cents;
+        }
+        if (cents == Long.MIN_VALUE) {
+            throw invalid(text);
+        }
+        return -cents;
+    }
+
+    private static NumberFormatException invalid(String text) {
+        return new NumberFormatException("Invalid amount: \"" + text + "\"");
+    }
+
+    // writes amounts in cents with the digits and decimal separator of a locale
+    // the char array methods allocate nothing, so they can run for every row bound while a list scrolls
+    public static final class Formatter {
+
+        // largest amount is "-" followed by 17 digits, the separator, and 2 digits
+        public static final int MAX_LENGTH = 21;
+
+        // locale symbols are looked up once instead of for every amount
+        private final char mZeroDigit;
+        private final char mDecimalSeparator;
+        private final char mMinusSign;
+
+        public Formatter(Locale locale) {
+            DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+            mZeroDigit = symbols.getZeroDigit();
+            mDecimalSeparator = symbols.getDecimalSeparator();
+            mMinusSign = symbols.getMinusSign();
+        }
+
+        // the amount as a string such as "7.99", for text that is not on a hot path, like an edit field
+        public String format(long cents) {
+            char[] chars = new char[MAX_LENGTH];
+            return new String(chars, 0, format(cents, chars, 0));
+        }
+
+        // write the amount such as "7.99" at offset, return the index after the last char
+        public int format(long cents, char[] dest, int offset) {
+
+            // digits are written from a value that is zero or negative, so Long.MIN_VALUE needs no special case
+            if (cents < 0) {
+                dest[offset++] = mMinusSign;
+            } else {
+                cents = -cents;
+            }
+            offset = appendDigits(cents / CENTS_PER_UNIT, 1, dest, offset);
+            dest[offset++] = mDecimalSeparator;
+            return appendDigits(cents % CENTS_PER_UNIT, FRACTION_DIGITS, dest, offset);
+        }
+
+        // write a whole number with the same locale digits at offset, return the index after the last char
+        public int formatInteger(long value, char[] dest, int offset) {
+            if (value < 0) {
+                dest[offset++] = mMinusSign;
+            } else {
+                value = -value;
+            }
+            return appendDigits(value, 1, dest, offset);
+        }
+
+        // write the digits of a value that is zero or negative, padded with zeros to minDigits
+        private int appendDigits(long negativeValue, int minDigits, char[] dest, int offset) {
+
+            int digits = 1;
+            for (long remaining = negativeValue / 10; remaining != 0; remaining /= 10) {
+                digits++;
+            }
+            int end = offset + Math.max(digits, minDigits);
+
+            // the remainder of a negative value is between -9 and 0
+            for (int i = end - 1; i >= offset; i--) {
+                dest[i] = (char) (mZeroDigit - negativeValue % 10);
+                negativeValue /= 10;
+            }
+            return end;
+        }
+    }
+
+}
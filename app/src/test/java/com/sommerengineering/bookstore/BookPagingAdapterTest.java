@@ -0,0 +1,146 @@
+package com.sommerengineering.bookstore;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.widget.FrameLayout;
+
+import com.sommerengineering.bookstore.data.BookContract;
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+// the loaded pages of the catalog follow the table when rows are deleted underneath them
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookPagingAdapterTest {
+
+    // longest wait for the background thread of the adapter
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private ContentResolver mContentResolver;
+    private BookPagingAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+        mAdapter = new BookPagingAdapter(RuntimeEnvironment.application,
+                new BookPagingAdapter.OnBookClickListener() {
+                    @Override
+                    public void onBookClick(long id, String name, long price, int quantity) {
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        mAdapter.shutdown();
+    }
+
+    // a refresh of a window whose rows are all gone comes back empty instead of looping on the empty cursor
+    @Test
+    public void deleteWindowRows_whileAWindowIsLoaded_shrinksTheList() throws InterruptedException {
+
+        int books = BookPagingAdapter.PAGE_SIZE * 2 + 20;
+        insertBooks(books);
+        BookPagingAdapter.BookViewHolder holder = loadLastPage(books);
+
+        // only rows before the window are left, so the window query returns no rows at all
+        int kept = 10;
+        long lastKeptId = bookIdAt(kept - 1);
+        mContentResolver.delete(BookEntry.CONTENT_URI, BookEntry._ID + " > ?",
+                new String[] {String.valueOf(lastKeptId)});
+        mAdapter.swapCount(kept);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (mAdapter.getItemCount() != kept) {
+            assertTrue("window refresh never finished", System.currentTimeMillis() < deadline);
+            waitForAdapter();
+        }
+        assertTrue(mAdapter.getItemId(BookPagingAdapter.PAGE_SIZE) < 0);
+
+        // the first page loads again
+        mAdapter.onBindViewHolder(holder, 0);
+        awaitLoaded(0);
+    }
+
+    // a count of zero, as sent when the table is emptied or the loader is reset, drops every row without a query
+    @Test
+    public void swapCountZero_whileAWindowIsLoaded_emptiesTheListAtOnce() throws InterruptedException {
+
+        int books = BookPagingAdapter.PAGE_SIZE * 2 + 20;
+        ContentValues[] values = insertBooks(books);
+        BookPagingAdapter.BookViewHolder holder = loadLastPage(books);
+
+        mContentResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mAdapter.swapCount(0);
+        assertEquals(0, mAdapter.getItemCount());
+        assertTrue(mAdapter.getItemId(BookPagingAdapter.PAGE_SIZE) < 0);
+
+        // the list fills again from the first row
+        mContentResolver.bulkInsert(BookEntry.CONTENT_URI, new ContentValues[] {values[0]});
+        mAdapter.swapCount(1);
+        mAdapter.onBindViewHolder(holder, 0);
+        awaitLoaded(0);
+    }
+
+    // insert the given number of books and return their values
+    private ContentValues[] insertBooks(int books) {
+        ContentValues[] values = new ContentValues[books];
+        for (int i = 0; i < books; i++) {
+            values[i] = new ContentValues();
+            values[i].put(BookEntry.COLUMN_BOOK_NAME, "Book " + i);
+            values[i].put(BookEntry.COLUMN_BOOK_PRICE, 799L);
+        }
+        mContentResolver.bulkInsert(BookEntry.CONTENT_URI, values);
+        return values;
+    }
+
+    // ID of the book at the position, in the default _ID order
+    private long bookIdAt(int position) {
+        Cursor cursor = mContentResolver.query(BookEntry.CONTENT_URI, new String[] {BookEntry._ID}, null, null, null);
+        try {
+            assertTrue(cursor.moveToPosition(position));
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // bind the last row of a catalog of the given size, which loads its page and the one before it
+    private BookPagingAdapter.BookViewHolder loadLastPage(int books) throws InterruptedException {
+        mAdapter.swapCount(books);
+        BookPagingAdapter.BookViewHolder holder =
+                mAdapter.onCreateViewHolder(new FrameLayout(RuntimeEnvironment.application), 0);
+        mAdapter.onBindViewHolder(holder, books - 1);
+        awaitLoaded(books - 1);
+        assertTrue(mAdapter.getItemId(BookPagingAdapter.PAGE_SIZE) >= 0);
+        return holder;
+    }
+
+    // wait until the page holding the position is loaded and handed to the main thread
+    private void awaitLoaded(int position) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (mAdapter.getItemId(position) < 0) {
+            assertTrue("page never loaded", System.currentTimeMillis() < deadline);
+            waitForAdapter();
+        }
+    }
+
+    // let the background thread run, then deliver what it posted to the main thread
+    private static void waitForAdapter() throws InterruptedException {
+        Thread.sleep(10);
+        Robolectric.flushForegroundThreadScheduler();
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.sommerengineering.bookstore;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+// the per row text work of BookPagingAdapter.bindView, which has to run without allocating while the list scrolls
+public class BookRowFormatterTest {
+
+    private static final int ROWS = 100000;
+
+    private final BookRowFormatter mFormatter = new BookRowFormatter(Locale.US);
+    private final char[] mPriceChars = new char[BookRowFormatter.PRICE_CAPACITY];
+    private final char[] mQuantityChars = new char[BookRowFormatter.QUANTITY_CAPACITY];
+
+    @Test
+    public void formatPrice_matchesStringFormat() {
+        assertEquals("$7.99", price(799));
+        assertEquals("$0.05", price(5));
+        assertEquals("$0.00", price(0));
+        assertEquals("$1234.50", price(123450));
+        assertEquals("$-1.25", price(-125));
+        assertEquals("$-92233720368547758.08", price(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void formatQuantity_matchesStringFormat() {
+        assertEquals("0", quantity(0));
+        assertEquals("12", quantity(12));
+        assertEquals("-3", quantity(-3));
+        assertEquals(String.valueOf(Integer.MAX_VALUE), quantity(Integer.MAX_VALUE));
+        assertEquals(String.valueOf(Integer.MIN_VALUE), quantity(Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void formatPrice_usesLocaleSeparator() {
+        BookRowFormatter formatter = new BookRowFormatter(Locale.GERMANY);
+        int length = formatter.formatPrice(799, mPriceChars);
+        assertEquals("$7,99", new String(mPriceChars, 0, length));
+    }
+
+    // binds every row of a scrolled list again and again, the thread must not allocate a single object
+    @Test
+    public void bindingScrolledRows_allocatesNothing() {
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // warm up so the loop is compiled before it is measured
+        bindRows();
+        bindRows();
+
+        // reading the counter can allocate a little itself, so that cost is measured and subtracted
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        long baseline = threadBean.getThreadAllocatedBytes(threadId) - before;
+        before = threadBean.getThreadAllocatedBytes(threadId);
+        int checksum = bindRows();
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before - baseline;
+
+        // even the smallest object per row would add up to far more than a byte per row
+        assertTrue("binding " + ROWS + " rows allocated " + allocated + " bytes", allocated < ROWS);
+        assertTrue(checksum > 0);
+    }
+
+    private int bindRows() {
+        int checksum = 0;
+        for (int row = 0; row < ROWS; row++) {
+            checksum += mFormatter.formatPrice(row * 7L, mPriceChars);
+            checksum += mFormatter.formatQuantity(row % 1000, mQuantityChars);
+        }
+        return checksum;
+    }
+
+    private String price(long cents) {
+        return new String(mPriceChars, 0, mFormatter.formatPrice(cents, mPriceChars));
+    }
+
+    private String quantity(int quantity) {
+        return new String(mQuantityChars, 0, mFormatter.formatQuantity(quantity, mQuantityChars));
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.sommerengineering.bookstore;
+
+import android.content.ContentValues;
+import android.widget.FrameLayout;
+
+import com.sommerengineering.bookstore.data.BookContract;
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+// leaving the catalog stops its adapter, and the loader reset that follows must not start any more queries
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class CatalogActivityTest {
+
+    // longest wait for the loader and the background thread of the adapter
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private static final int BOOKS = BookPagingAdapter.PAGE_SIZE + 10;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        ContentValues[] values = new ContentValues[BOOKS];
+        for (int i = 0; i < BOOKS; i++) {
+            values[i] = new ContentValues();
+            values[i].put(BookEntry.COLUMN_BOOK_NAME, "Book " + i);
+            values[i].put(BookEntry.COLUMN_BOOK_PRICE, 799L);
+        }
+        RuntimeEnvironment.application.getContentResolver().bulkInsert(BookEntry.CONTENT_URI, values);
+    }
+
+    // the activity destroys its loader after onDestroy() has shut the adapter down,
+    // which resets the row count while a page is still held
+    @Test
+    public void destroy_withAPageLoaded_clearsTheListWithoutAQuery() throws InterruptedException {
+
+        ActivityController<CatalogActivity> controller = Robolectric.buildActivity(CatalogActivity.class).setup();
+        BookPagingAdapter adapter = controller.get().mAdapter;
+
+        // the loader delivers the row count, then binding the first row loads its page
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (adapter.getItemCount() != BOOKS) {
+            assertTrue("row count never loaded", System.currentTimeMillis() < deadline);
+            waitForMainThread();
+        }
+        BookPagingAdapter.BookViewHolder holder =
+                adapter.onCreateViewHolder(new FrameLayout(controller.get()), 0);
+        adapter.onBindViewHolder(holder, 0);
+        while (adapter.getItemId(0) < 0) {
+            assertTrue("page never loaded", System.currentTimeMillis() < deadline);
+            waitForMainThread();
+        }
+
+        controller.pause().stop().destroy();
+        assertEquals(0, adapter.getItemCount());
+
+        // a bind that arrives after the activity is gone is left as a placeholder
+        adapter.onBindViewHolder(holder, 0);
+        waitForMainThread();
+        assertTrue(adapter.getItemId(0) < 0);
+    }
+
+    // let background threads run, then deliver what they posted to the main thread
+    private static void waitForMainThread() throws InterruptedException {
+        Thread.sleep(10);
+        Robolectric.flushForegroundThreadScheduler();
+    }
+
+}
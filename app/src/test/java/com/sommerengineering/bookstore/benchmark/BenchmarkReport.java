@@ -0,0 +1,92 @@
+package com.sommerengineering.bookstore.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Locale;
+
+// collects benchmark measurements and writes them as JSON so results can be compared between releases
+// one file per suite in the directory given by the bookstore.benchmark.output system property, for example
+// {"suite": "BookProviderBenchmark", "timestamp": 1700000000000, "results": [
+//   {"operation": "bulk_insert", "rows": 1000, "iterations": 1000, "nanosPerOp": 5321.0, "opsPerSecond": 187934.6}]}
+final class BenchmarkReport {
+
+    // a single measurement
+    private static final class Result {
+        String operation;
+        long rows;
+        long iterations;
+        double nanosPerOp;
+        double opsPerSecond;
+        double bytesPerSecond;
+    }
+
+    private final String mSuite;
+    private final ArrayList<Result> mResults = new ArrayList<>();
+
+    BenchmarkReport(String suite) {
+        mSuite = suite;
+    }
+
+    // true when the build was run with -Pbenchmark, see app/build.gradle
+    static boolean isEnabled() {
+        return Boolean.getBoolean("bookstore.benchmark");
+    }
+
+    // largest dataset to measure, a million rows takes several minutes on the JVM
+    static long maxRows() {
+        return Long.getLong("bookstore.benchmark.maxRows", 100000);
+    }
+
+    // record iterations of an operation that took elapsedNanos in total over a dataset of the given size
+    void add(String operation, long rows, long iterations, long elapsedNanos) {
+        add(operation, rows, iterations, elapsedNanos, 0);
+    }
+
+    // same as add(), also recording throughput in bytes
+    void add(String operation, long rows, long iterations, long elapsedNanos, long bytes) {
+
+        Result result = new Result();
+        result.operation = operation;
+        result.rows = rows;
+        result.iterations = iterations;
+        result.nanosPerOp = (double) elapsedNanos / iterations;
+        result.opsPerSecond = iterations * 1e9 / elapsedNanos;
+        result.bytesPerSecond = bytes * 1e9 / elapsedNanos;
+        mResults.add(result);
+
+        System.out.println(String.format(Locale.US, "%s %-24s rows=%-8d %12.1f ns/op %14.1f ops/s",
+                mSuite, operation, rows, result.nanosPerOp, result.opsPerSecond));
+    }
+
+    // write every result to <output>/<suite>.json
+    void write() throws IOException {
+
+        File directory = new File(System.getProperty("bookstore.benchmark.output", "build/benchmarks"));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(directory, mSuite + ".json")),
+                Charset.forName("UTF-8"));
+        try {
+            writer.write("{\"suite\": \"" + mSuite + "\", \"timestamp\": " + System.currentTimeMillis() +
+                    ", \"results\": [\n");
+            for (int i = 0; i < mResults.size(); i++) {
+                Result result = mResults.get(i);
+                writer.write(String.format(Locale.US, "  {\"operation\": \"%s\", \"rows\": %d, \"iterations\": %d, " +
+                                "\"nanosPerOp\": %.1f, \"opsPerSecond\": %.1f, \"bytesPerSecond\": %.1f}%s\n",
+                        result.operation, result.rows, result.iterations, result.nanosPerOp,
+                        result.opsPerSecond, result.bytesPerSecond, i < mResults.size() - 1 ? "," : ""));
+            }
+            writer.write("]}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.sommerengineering.bookstore.benchmark;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.sommerengineering.bookstore.data.BookDbHelper;
+import com.sommerengineering.bookstore.data.CsvBookWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assume.assumeTrue;
+
+// export of the whole inventory as CSV, the text written by CsvBookWriter for BookEntry.EXPORT_URI,
+// against reading every column of every book through a single cursor as a client of the books URI would
+// the CSV measurements record their bytes, so the report has the export throughput in bytesPerSecond
+// run with: ./gradlew testDebugUnitTest -Pbenchmark --tests '*BookExportBenchmark'
+// results are written to app/build/benchmarks/BookExportBenchmark.json
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookExportBenchmark {
+
+    // dataset sizes, sizes above the bookstore.benchmark.maxRows property are skipped
+    private static final long[] DATASET_SIZES = {1000, 10000, 100000, 1000000};
+
+    // suppliers the books are spread over
+    private static final int SUPPLIERS = 20;
+
+    // measurements before the timed one, so every path is compiled
+    private static final int WARMUP_ROUNDS = 2;
+
+    private BookDbHelper mHelper;
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        assumeTrue("benchmarks run with -Pbenchmark", BenchmarkReport.isEnabled());
+        mHelper = new BookDbHelper(RuntimeEnvironment.application);
+        mDatabase = mHelper.getWritableDatabase();
+
+        // supplier IDs 1 to SUPPLIERS
+        for (int i = 0; i < SUPPLIERS; i++) {
+            mDatabase.execSQL("INSERT INTO suppliers (_id, supplier_name, supplier_phone) VALUES (?, ?, ?)",
+                    new Object[] {i + 1, "Supplier " + i, "800-455-8234"});
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (mHelper != null) {
+            mHelper.close();
+        }
+    }
+
+    @Test
+    public void csvExport() throws Exception {
+
+        BenchmarkReport report = new BenchmarkReport(getClass().getSimpleName());
+
+        int rows = 0;
+        for (long size : DATASET_SIZES) {
+            if (size > BenchmarkReport.maxRows()) {
+                continue;
+            }
+            fillTable(rows, (int) size);
+            rows = (int) size;
+            measureDataset(report, rows);
+        }
+
+        report.write();
+    }
+
+    private void measureDataset(BenchmarkReport report, int size) throws IOException {
+
+        File file = new File(RuntimeEnvironment.application.getCacheDir(), "export.csv");
+
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+
+            // every column of every book through one cursor, the work a client export would start from
+            long start = System.nanoTime();
+            Cursor cursor = mDatabase.rawQuery("SELECT * FROM books_with_suppliers ORDER BY _id", null);
+            try {
+                int columns = cursor.getColumnCount();
+                while (cursor.moveToNext()) {
+                    for (int i = 0; i < columns; i++) {
+                        cursor.getString(i);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            long cursorScan = System.nanoTime() - start;
+
+            // the export into a stream that drops every byte, the cost of reading and encoding alone
+            CountingOutputStream counter = new CountingOutputStream();
+            start = System.nanoTime();
+            new CsvBookWriter(counter).writeAll(mDatabase);
+            long exportMemory = System.nanoTime() - start;
+
+            // the export into a file, as the reading end of the pipe would save it, the writer does its own buffering
+            OutputStream out = new FileOutputStream(file);
+            start = System.nanoTime();
+            try {
+                new CsvBookWriter(out).writeAll(mDatabase);
+            } finally {
+                out.close();
+            }
+            long exportFile = System.nanoTime() - start;
+
+            if (round == WARMUP_ROUNDS) {
+                report.add("cursor_scan", size, 1, cursorScan);
+                report.add("export_csv", size, 1, exportMemory, counter.mBytes);
+                report.add("export_csv_file", size, 1, exportFile, file.length());
+            }
+        }
+
+        if (!file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+
+    // insert the books from..to in one transaction
+    private void fillTable(int from, int to) {
+        SQLiteStatement insert = mDatabase.compileStatement(
+                "INSERT INTO books (name, author, price, quantity, reorder_threshold, supplier_id) " +
+                        "VALUES (?,?,?,?,?,?)");
+        mDatabase.beginTransaction();
+        try {
+            for (int i = from; i < to; i++) {
+                insert.bindString(1, "Book " + i);
+                insert.bindString(2, "Author " + (i % 500));
+                insert.bindLong(3, 799 + i % 2000);
+                insert.bindLong(4, i % 1000);
+                insert.bindLong(5, 5);
+                insert.bindLong(6, 1 + i % SUPPLIERS);
+                insert.executeInsert();
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+            insert.close();
+        }
+    }
+
+    // counts the bytes written to it and keeps none of them
+    private static final class CountingOutputStream extends OutputStream {
+
+        long mBytes;
+
+        @Override
+        public void write(int b) {
+            mBytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            mBytes += len;
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+package com.sommerengineering.bookstore.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.sommerengineering.bookstore.data.BookContract;
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookContract.SupplierEntry;
+import com.sommerengineering.bookstore.data.BookProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assume.assumeTrue;
+
+// BookProvider CRUD and query paths against sqlite on the JVM, for datasets from 1k up to 1M rows
+// run with: ./gradlew testDebugUnitTest -Pbenchmark --tests '*BookProviderBenchmark'
+// results are written to app/build/benchmarks/BookProviderBenchmark.json
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookProviderBenchmark {
+
+    // dataset sizes, sizes above the bookstore.benchmark.maxRows property are skipped
+    private static final long[] DATASET_SIZES = {1000, 10000, 100000, 1000000};
+
+    // rows in each bulk insert call while filling a dataset
+    private static final int BULK_INSERT_CHUNK = 1000;
+
+    // operations timed for each single row measurement
+    private static final int ITERATIONS = 1000;
+
+    // distinct books read by the hot point query, well under the row cache size
+    private static final int HOT_BOOKS = 50;
+
+    // sales in each batch call, ITERATIONS is a multiple of it
+    private static final int SALE_BATCH = 250;
+
+    private ContentResolver mContentResolver;
+    private final Random mRandom = new Random(42);
+
+    @Before
+    public void setUp() {
+        assumeTrue("benchmarks run with -Pbenchmark", BenchmarkReport.isEnabled());
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void crudAndQueryPaths() throws Exception {
+
+        BenchmarkReport report = new BenchmarkReport(getClass().getSimpleName());
+
+        for (long size : DATASET_SIZES) {
+            if (size > BenchmarkReport.maxRows()) {
+                continue;
+            }
+            measureDataset(report, (int) size);
+        }
+
+        report.write();
+    }
+
+    private void measureDataset(BenchmarkReport report, int size) {
+
+        // bulk insert, measured while filling the dataset
+        ContentValues[] chunk = new ContentValues[BULK_INSERT_CHUNK];
+        long elapsed = 0;
+        for (int inserted = 0; inserted < size; inserted += BULK_INSERT_CHUNK) {
+            for (int i = 0; i < BULK_INSERT_CHUNK; i++) {
+                chunk[i] = newBook(inserted + i);
+            }
+            long start = System.nanoTime();
+            mContentResolver.bulkInsert(BookEntry.CONTENT_URI, chunk);
+            elapsed += System.nanoTime() - start;
+        }
+        report.add("bulk_insert", size, size, elapsed);
+
+        long firstId = queryLong("MIN(" + BookEntry._ID + ")");
+        long lastId = queryLong("MAX(" + BookEntry._ID + ")");
+
+        // single insert, each call its own transaction
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            mContentResolver.insert(BookEntry.CONTENT_URI, newBook(i));
+        }
+        report.add("single_insert", size, ITERATIONS, System.nanoTime() - start);
+
+        // point query by BOOK_ID, including filling the cursor window
+        String[] projection = {BookEntry._ID, BookEntry.COLUMN_BOOK_NAME, BookEntry.COLUMN_BOOK_AUTHOR,
+                BookEntry.COLUMN_BOOK_PRICE, BookEntry.COLUMN_BOOK_QUANTITY,
+                BookEntry.COLUMN_BOOK_SUPPLIER_NAME, BookEntry.COLUMN_BOOK_SUPPLIER_PHONE};
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            Uri uri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, randomId(firstId, lastId));
+            Cursor cursor = mContentResolver.query(uri, projection, null, null, null);
+            try {
+                cursor.moveToFirst();
+            } finally {
+                cursor.close();
+            }
+        }
+        report.add("point_query", size, ITERATIONS, System.nanoTime() - start);
+
+        // point query of a few hot books, served from the provider row cache after the first read of each
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            Uri uri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, firstId + i % HOT_BOOKS);
+            Cursor cursor = mContentResolver.query(uri, projection, null, null, null);
+            try {
+                cursor.moveToFirst();
+            } finally {
+                cursor.close();
+            }
+        }
+        report.add("point_query_hot", size, ITERATIONS, System.nanoTime() - start);
+
+        // full scan of the catalog projection, reading every row
+        String[] catalogProjection = {BookEntry._ID, BookEntry.COLUMN_BOOK_NAME,
+                BookEntry.COLUMN_BOOK_PRICE, BookEntry.COLUMN_BOOK_QUANTITY};
+        start = System.nanoTime();
+        Cursor cursor = mContentResolver.query(BookEntry.CONTENT_URI, catalogProjection, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getString(1);
+            }
+        } finally {
+            cursor.close();
+        }
+        report.add("full_scan", size, 1, System.nanoTime() - start);
+
+        // every book of one of the 20 suppliers, through the supplier_id index with the supplier joined in
+        Cursor suppliers = mContentResolver.query(SupplierEntry.CONTENT_URI, null, null, null, null);
+        long supplierId;
+        try {
+            suppliers.moveToFirst();
+            supplierId = suppliers.getLong(suppliers.getColumnIndex(SupplierEntry._ID));
+        } finally {
+            suppliers.close();
+        }
+        start = System.nanoTime();
+        cursor = mContentResolver.query(SupplierEntry.buildBooksUri(supplierId), projection, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getString(5);
+            }
+        } finally {
+            cursor.close();
+        }
+        report.add("supplier_books", size, 1, System.nanoTime() - start);
+
+        // sale decrement of a random book
+        Bundle extras = new Bundle();
+        extras.putInt(BookContract.KEY_SELL_COUNT, 1);
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SELL,
+                    String.valueOf(randomId(firstId, lastId)), extras);
+        }
+        report.add("sale_decrement", size, ITERATIONS, System.nanoTime() - start);
+
+        // the same number of sales group committed the way the write queue sends them, a transaction per batch
+        long[] ids = new long[SALE_BATCH];
+        int[] counts = new int[SALE_BATCH];
+        Arrays.fill(counts, 1);
+        Bundle batchExtras = new Bundle();
+        batchExtras.putIntArray(BookContract.KEY_SELL_COUNTS, counts);
+        start = System.nanoTime();
+        for (int sold = 0; sold < ITERATIONS; sold += SALE_BATCH) {
+            for (int i = 0; i < SALE_BATCH; i++) {
+                ids[i] = randomId(firstId, lastId);
+            }
+            batchExtras.putLongArray(BookContract.KEY_BOOK_IDS, ids);
+            mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SELL_BATCH, null, batchExtras);
+        }
+        report.add("sale_batch", size, ITERATIONS, System.nanoTime() - start);
+
+        // quantity edit of a random book, each call its own transaction
+        ContentValues quantity = new ContentValues();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            quantity.put(BookEntry.COLUMN_BOOK_QUANTITY, 1000 + i);
+            mContentResolver.update(ContentUris.withAppendedId(BookEntry.CONTENT_URI, randomId(firstId, lastId)),
+                    quantity, null, null);
+        }
+        report.add("update_quantity", size, ITERATIONS, System.nanoTime() - start);
+
+        // full edit of a random book, as the editor saves it
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            ContentValues values = newBook(i);
+            values.put(BookEntry.COLUMN_BOOK_REORDER_THRESHOLD, 5);
+            mContentResolver.update(ContentUris.withAppendedId(BookEntry.CONTENT_URI, randomId(firstId, lastId)),
+                    values, null, null);
+        }
+        report.add("update_row", size, ITERATIONS, System.nanoTime() - start);
+
+        // delete by ID of the first rows, so every call removes one
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            mContentResolver.delete(ContentUris.withAppendedId(BookEntry.CONTENT_URI, firstId + i), null, null);
+        }
+        report.add("delete_by_id", size, ITERATIONS, System.nanoTime() - start);
+
+        // delete all, which also resets the table for the next dataset
+        start = System.nanoTime();
+        mContentResolver.delete(BookEntry.CONTENT_URI, null, null);
+        report.add("delete_all", size, 1, System.nanoTime() - start);
+    }
+
+    // value of a single aggregate over the books table
+    private long queryLong(String aggregate) {
+        Cursor cursor = mContentResolver.query(BookEntry.CONTENT_URI, new String[] {aggregate}, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long randomId(long firstId, long lastId) {
+        return firstId + mRandom.nextInt((int) (lastId - firstId + 1));
+    }
+
+    private ContentValues newBook(int i) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, "Book " + i);
+        values.put(BookEntry.COLUMN_BOOK_AUTHOR, "Author " + (i % 500));
+        values.put(BookEntry.COLUMN_BOOK_PRICE, 799L);
+        values.put(BookEntry.COLUMN_BOOK_QUANTITY, 1000);
+        values.put(BookEntry.COLUMN_BOOK_SUPPLIER_NAME, "Supplier " + (i % 20));
+        values.put(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE, "800-455-8234");
+        return values;
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.sommerengineering.bookstore.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+
+import com.sommerengineering.bookstore.data.BookContract;
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assume.assumeTrue;
+
+// sale latency on its own and while snapshots are taken back to back on another thread,
+// and the time of a snapshot and a restore through BookProvider
+// the latency of each sale is kept, so the slowest one in a hundred is reported next to the mean:
+// the nanosPerOp of a "_p99" operation is that sale, not an average
+// run with: ./gradlew testDebugUnitTest -Pbenchmark --tests '*BookSnapshotBenchmark'
+// results are written to app/build/benchmarks/BookSnapshotBenchmark.json
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookSnapshotBenchmark {
+
+    // dataset sizes, sizes above the bookstore.benchmark.maxRows property are skipped
+    private static final long[] DATASET_SIZES = {10000, 100000};
+
+    // rows in each bulk insert call while filling a dataset
+    private static final int BULK_INSERT_CHUNK = 1000;
+
+    // sales timed for each latency measurement
+    private static final int SALES = 5000;
+
+    private ContentResolver mContentResolver;
+    private final Random mRandom = new Random(42);
+
+    @Before
+    public void setUp() {
+        assumeTrue("benchmarks run with -Pbenchmark", BenchmarkReport.isEnabled());
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void writeLatencyDuringSnapshot() throws Exception {
+
+        BenchmarkReport report = new BenchmarkReport(getClass().getSimpleName());
+
+        int rows = 0;
+        for (long size : DATASET_SIZES) {
+            if (size > BenchmarkReport.maxRows()) {
+                continue;
+            }
+            fillTable(rows, (int) size);
+            rows = (int) size;
+            measureDataset(report, rows);
+        }
+
+        report.write();
+    }
+
+    private void measureDataset(BenchmarkReport report, int size) throws Exception {
+
+        long firstId = queryLong("MIN(" + BookEntry._ID + ")");
+        long lastId = queryLong("MAX(" + BookEntry._ID + ")");
+
+        // sales with nothing else running, the first round warms up every path
+        long[] latencies = new long[SALES];
+        sell(firstId, lastId, latencies);
+        long total = sell(firstId, lastId, latencies);
+        report.add("sale", size, SALES, total);
+        report.add("sale_p99", size, 1, percentile(latencies, 99));
+
+        // a single snapshot, its size gives the copy throughput
+        long start = System.nanoTime();
+        Bundle snapshot = mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SNAPSHOT, null, null);
+        report.add("snapshot", size, 1, System.nanoTime() - start,
+                snapshot.getLong(BookContract.KEY_SNAPSHOT_BYTES));
+
+        // the same sales while another thread takes one snapshot after the other, each deleted once it is complete
+        final File directory = new File(RuntimeEnvironment.application.getFilesDir(), "snapshots");
+        final AtomicBoolean selling = new AtomicBoolean(true);
+        final AtomicInteger snapshots = new AtomicInteger();
+        Thread snapshotter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (selling.get()) {
+                    Bundle taken = mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SNAPSHOT,
+                            null, null);
+                    if (!new File(directory, taken.getString(BookContract.KEY_SNAPSHOT_NAME)).delete()) {
+                        throw new IllegalStateException("Cannot delete snapshot");
+                    }
+                    snapshots.incrementAndGet();
+                }
+            }
+        });
+        snapshotter.start();
+        try {
+            total = sell(firstId, lastId, latencies);
+        } finally {
+            selling.set(false);
+            snapshotter.join();
+        }
+        report.add("sale_during_snapshot", size, SALES, total);
+        report.add("sale_during_snapshot_p99", size, 1, percentile(latencies, 99));
+        System.out.println("snapshots taken during the sales: " + snapshots.get());
+
+        // a restore of the first snapshot, including the reopen of the database
+        start = System.nanoTime();
+        mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_RESTORE,
+                snapshot.getString(BookContract.KEY_SNAPSHOT_NAME), null);
+        report.add("restore", size, 1, System.nanoTime() - start,
+                snapshot.getLong(BookContract.KEY_SNAPSHOT_BYTES));
+    }
+
+    // sell a copy of a random book SALES times, store the latency of each sale, and return the total
+    private long sell(long firstId, long lastId, long[] latencies) {
+        Bundle extras = new Bundle();
+        extras.putInt(BookContract.KEY_SELL_COUNT, 1);
+        long total = 0;
+        for (int i = 0; i < SALES; i++) {
+            String id = String.valueOf(firstId + mRandom.nextInt((int) (lastId - firstId + 1)));
+            long start = System.nanoTime();
+            mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SELL, id, extras);
+            latencies[i] = System.nanoTime() - start;
+            total += latencies[i];
+        }
+        return total;
+    }
+
+    // the latency below which the given percent of the sales finished
+    private static long percentile(long[] latencies, int percent) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+
+    // insert the books from..to with enough stock for every sale
+    private void fillTable(int from, int to) {
+        ContentValues[] chunk = new ContentValues[BULK_INSERT_CHUNK];
+        for (int inserted = from; inserted < to; inserted += BULK_INSERT_CHUNK) {
+            for (int i = 0; i < BULK_INSERT_CHUNK; i++) {
+                ContentValues values = new ContentValues();
+                values.put(BookEntry.COLUMN_BOOK_NAME, "Book " + (inserted + i));
+                values.put(BookEntry.COLUMN_BOOK_AUTHOR, "Author " + ((inserted + i) % 500));
+                values.put(BookEntry.COLUMN_BOOK_PRICE, 799L);
+                values.put(BookEntry.COLUMN_BOOK_QUANTITY, 100000);
+                values.put(BookEntry.COLUMN_BOOK_SUPPLIER_NAME, "Supplier " + ((inserted + i) % 20));
+                values.put(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE, "800-455-8234");
+                chunk[i] = values;
+            }
+            mContentResolver.bulkInsert(BookEntry.CONTENT_URI, chunk);
+        }
+    }
+
+    // value of a single aggregate over the books table
+    private long queryLong(String aggregate) {
+        Cursor cursor = mContentResolver.query(BookEntry.CONTENT_URI, new String[] {aggregate}, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
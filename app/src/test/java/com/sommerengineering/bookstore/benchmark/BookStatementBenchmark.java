@@ -0,0 +1,236 @@
+package com.sommerengineering.bookstore.benchmark;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookDbHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assume.assumeTrue;
+
+// single row reads and writes by _ID through SQLiteDatabase query, update, and delete,
+// against the same statements compiled once and rebound for every call, as BookProvider runs them
+// every measured loop runs in one transaction, so the numbers are the per call cost and not the log sync
+// run with: ./gradlew testDebugUnitTest -Pbenchmark --tests '*BookStatementBenchmark'
+// results are written to app/build/benchmarks/BookStatementBenchmark.json
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookStatementBenchmark {
+
+    // books in the table, every operation picks one at random
+    private static final int ROWS = 10000;
+
+    // suppliers the books are spread over
+    private static final int SUPPLIERS = 20;
+
+    // operations timed for each measurement
+    private static final int ITERATIONS = 2000;
+
+    // measurements before the timed one, so every path is compiled
+    private static final int WARMUP_ROUNDS = 2;
+
+    private BookDbHelper mHelper;
+    private SQLiteDatabase mDatabase;
+    private final Random mRandom = new Random(42);
+
+    @Before
+    public void setUp() {
+        assumeTrue("benchmarks run with -Pbenchmark", BenchmarkReport.isEnabled());
+        mHelper = new BookDbHelper(RuntimeEnvironment.application);
+        mDatabase = mHelper.getWritableDatabase();
+
+        // supplier IDs 1 to SUPPLIERS
+        for (int i = 0; i < SUPPLIERS; i++) {
+            mDatabase.execSQL("INSERT INTO suppliers (_id, supplier_name, supplier_phone) VALUES (?, ?, ?)",
+                    new Object[] {i + 1, "Supplier " + i, "800-455-8234"});
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (mHelper != null) {
+            mHelper.close();
+        }
+    }
+
+    @Test
+    public void frameworkCallsAgainstCompiledStatements() throws Exception {
+
+        BenchmarkReport report = new BenchmarkReport(getClass().getSimpleName());
+
+        SQLiteStatement selectQuantity = mDatabase.compileStatement(
+                "SELECT quantity FROM books WHERE _id = ?");
+        SQLiteStatement updateQuantity = mDatabase.compileStatement(
+                "UPDATE books SET quantity = ? WHERE _id = ?");
+        SQLiteStatement updateBook = mDatabase.compileStatement(
+                "UPDATE books SET name = ?, author = ?, price = ?, quantity = ?, reorder_threshold = ?, " +
+                        "supplier_id = ? WHERE _id = ?");
+        SQLiteStatement deleteBook = mDatabase.compileStatement("DELETE FROM books WHERE _id = ?");
+
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+
+            // every round deletes rows, so each one starts from a full table
+            mDatabase.delete(BookEntry.TABLE_NAME, null, null);
+            long firstId = fillTable();
+
+            long[] elapsed = new long[8];
+
+            mDatabase.beginTransaction();
+            try {
+
+                long start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    Cursor cursor = mDatabase.query(BookEntry.TABLE_NAME,
+                            new String[] {BookEntry.COLUMN_BOOK_QUANTITY}, BookEntry._ID + "=?",
+                            new String[] {String.valueOf(randomId(firstId))}, null, null, null);
+                    try {
+                        cursor.moveToFirst();
+                        cursor.getLong(0);
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                elapsed[0] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    selectQuantity.bindLong(1, randomId(firstId));
+                    selectQuantity.simpleQueryForLong();
+                }
+                elapsed[1] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    ContentValues values = new ContentValues();
+                    values.put(BookEntry.COLUMN_BOOK_QUANTITY, i);
+                    mDatabase.update(BookEntry.TABLE_NAME, values, BookEntry._ID + "=?",
+                            new String[] {String.valueOf(randomId(firstId))});
+                }
+                elapsed[2] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    updateQuantity.bindLong(1, i);
+                    updateQuantity.bindLong(2, randomId(firstId));
+                    updateQuantity.executeUpdateDelete();
+                }
+                elapsed[3] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    mDatabase.update(BookEntry.TABLE_NAME, newBook(i), BookEntry._ID + "=?",
+                            new String[] {String.valueOf(randomId(firstId))});
+                }
+                elapsed[4] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    bindBook(updateBook, i);
+                    updateBook.bindLong(7, randomId(firstId));
+                    updateBook.executeUpdateDelete();
+                }
+                elapsed[5] = System.nanoTime() - start;
+
+                // each delete path removes its own range of rows, so every call deletes one
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    mDatabase.delete(BookEntry.TABLE_NAME, BookEntry._ID + "=?",
+                            new String[] {String.valueOf(firstId + i)});
+                }
+                elapsed[6] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    deleteBook.bindLong(1, firstId + ITERATIONS + i);
+                    deleteBook.executeUpdateDelete();
+                }
+                elapsed[7] = System.nanoTime() - start;
+
+                mDatabase.setTransactionSuccessful();
+
+            } finally {
+                mDatabase.endTransaction();
+            }
+
+            if (round == WARMUP_ROUNDS) {
+                report.add("point_select_query", ROWS, ITERATIONS, elapsed[0]);
+                report.add("point_select_compiled", ROWS, ITERATIONS, elapsed[1]);
+                report.add("update_quantity_values", ROWS, ITERATIONS, elapsed[2]);
+                report.add("update_quantity_compiled", ROWS, ITERATIONS, elapsed[3]);
+                report.add("update_row_values", ROWS, ITERATIONS, elapsed[4]);
+                report.add("update_row_compiled", ROWS, ITERATIONS, elapsed[5]);
+                report.add("delete_values", ROWS, ITERATIONS, elapsed[6]);
+                report.add("delete_compiled", ROWS, ITERATIONS, elapsed[7]);
+            }
+        }
+
+        selectQuantity.close();
+        updateQuantity.close();
+        updateBook.close();
+        deleteBook.close();
+
+        report.write();
+    }
+
+    // insert ROWS books in one transaction, return the first new ID
+    private long fillTable() {
+        SQLiteStatement insert = mDatabase.compileStatement(
+                "INSERT INTO books (name, author, price, quantity, reorder_threshold, supplier_id) " +
+                        "VALUES (?,?,?,?,?,?)");
+        long firstId = -1;
+        mDatabase.beginTransaction();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                bindBook(insert, i);
+                long id = insert.executeInsert();
+                if (firstId < 0) {
+                    firstId = id;
+                }
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+            insert.close();
+        }
+        return firstId;
+    }
+
+    // random ID among the rows that no delete measurement removes
+    private long randomId(long firstId) {
+        return firstId + 2 * ITERATIONS + mRandom.nextInt(ROWS - 2 * ITERATIONS);
+    }
+
+    // the six stored columns of a full edit, in the order of the statements above
+    private static void bindBook(SQLiteStatement statement, int i) {
+        statement.bindString(1, "Book " + i);
+        statement.bindString(2, "Author " + (i % 500));
+        statement.bindLong(3, 799);
+        statement.bindLong(4, 1000);
+        statement.bindLong(5, 5);
+        statement.bindLong(6, 1 + i % SUPPLIERS);
+    }
+
+    private static ContentValues newBook(int i) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, "Book " + i);
+        values.put(BookEntry.COLUMN_BOOK_AUTHOR, "Author " + (i % 500));
+        values.put(BookEntry.COLUMN_BOOK_PRICE, 799L);
+        values.put(BookEntry.COLUMN_BOOK_QUANTITY, 1000);
+        values.put(BookEntry.COLUMN_BOOK_REORDER_THRESHOLD, 5);
+        values.put(BookEntry.COLUMN_BOOK_SUPPLIER_ID, 1 + i % SUPPLIERS);
+        return values;
+    }
+
+}
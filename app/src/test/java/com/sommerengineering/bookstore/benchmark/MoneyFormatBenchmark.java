@@ -0,0 +1,104 @@
+package com.sommerengineering.bookstore.benchmark;
+
+import com.sommerengineering.bookstore.data.Money;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assume.assumeTrue;
+
+// price text throughput of Money against the String.format and Double.parseDouble it replaced
+// run with: ./gradlew testDebugUnitTest -Pbenchmark --tests '*MoneyFormatBenchmark'
+// results are written to app/build/benchmarks/MoneyFormatBenchmark.json
+public class MoneyFormatBenchmark {
+
+    // prices formatted or parsed in each measurement
+    private static final int ITERATIONS = 1000000;
+
+    // measurements before the timed one, so every path is compiled
+    private static final int WARMUP_ROUNDS = 3;
+
+    @Before
+    public void setUp() {
+        assumeTrue("benchmarks run with -Pbenchmark", BenchmarkReport.isEnabled());
+    }
+
+    @Test
+    public void formatAndParse() throws Exception {
+
+        BenchmarkReport report = new BenchmarkReport(getClass().getSimpleName());
+
+        // the result of each loop is kept so the work can not be optimized away
+        long sink = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+
+            long start = System.nanoTime();
+            sink += stringFormat();
+            long stringFormat = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += moneyFormat();
+            long moneyFormat = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += parseDouble();
+            long parseDouble = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += moneyParse();
+            long moneyParse = System.nanoTime() - start;
+
+            if (round == WARMUP_ROUNDS) {
+                report.add("string_format", 0, ITERATIONS, stringFormat);
+                report.add("money_format", 0, ITERATIONS, moneyFormat);
+                report.add("double_parse", 0, ITERATIONS, parseDouble);
+                report.add("money_parse", 0, ITERATIONS, moneyParse);
+            }
+        }
+
+        System.out.println("checksum " + sink);
+        report.write();
+    }
+
+    // the list item price before the change
+    private static long stringFormat() {
+        long length = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            length += String.format(Locale.getDefault(), "$%.2f", i / 100f).length();
+        }
+        return length;
+    }
+
+    // the list item price now, written into a reused array
+    private static long moneyFormat() {
+        Money.Formatter formatter = new Money.Formatter(Locale.getDefault());
+        char[] chars = new char[Money.Formatter.MAX_LENGTH + 1];
+        long length = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            chars[0] = '$';
+            length += formatter.format(i, chars, 1);
+        }
+        return length;
+    }
+
+    private static long parseDouble() {
+        long total = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            total += (long) (Double.parseDouble(PRICES[i % PRICES.length]) * 100);
+        }
+        return total;
+    }
+
+    private static long moneyParse() {
+        long total = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            total += Money.parse(PRICES[i % PRICES.length]);
+        }
+        return total;
+    }
+
+    private static final String[] PRICES = {"7.99", "14.95", "0.99", "129.00", "5", "24.5", "1999.99", "3.75"};
+
+}
@@ -0,0 +1,201 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+// an import resumes after its last committed chunk, and a malformed CSV record costs only its own row
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookImporterTest {
+
+    private static final String IMPORT_ID = "feed.csv";
+
+    private static final String FEED = "name,price,quantity\n" +
+            "The Spot,7.99,3\n" +
+            "Assorted Prose,4.50,5\n" +
+            "Instead of a Letter,5.25,1\n" +
+            "Rabbit Run,12.50,2\n" +
+            "Couples,9.99,4\n";
+
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    // the checkpoint is written by the bulk insert of the chunk, and a chunk that rolls back leaves it as it was
+    @Test
+    public void chunkCheckpoint_commitsWithItsBooks() {
+
+        assertEquals(1, mContentResolver.bulkInsert(importUri(4), new ContentValues[] {newBook("The Spot", 799)}));
+        assertEquals(4, checkpoint());
+
+        try {
+            mContentResolver.bulkInsert(importUri(9),
+                    new ContentValues[] {newBook("Assorted Prose", 450), newBook("Broken", -1)});
+            fail("chunk with a negative price was inserted");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(4, checkpoint());
+        assertEquals(1, countBooks());
+
+        mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_CLEAR_IMPORT_CHECKPOINT, IMPORT_ID, null);
+        assertEquals(0, checkpoint());
+    }
+
+    // a run that dies after its first chunk is resumed by the next run without inserting a book twice
+    @Test
+    public void resumedImport_insertsEveryRowOnce() throws IOException {
+
+        BookImporter importer = new BookImporter(RuntimeEnvironment.application, IMPORT_ID, 2);
+        try {
+            importer.run(new FailingReader(new CsvBookReader(new StringReader(FEED)), 3), null);
+            fail("reader failure was swallowed");
+        } catch (IOException expected) {
+        }
+        assertEquals(2, countBooks());
+        assertEquals(2, checkpoint());
+
+        BookImporter.Result result = importer.run(new CsvBookReader(new StringReader(FEED)), null);
+        assertTrue(result.completed);
+        assertEquals(2, result.rowsResumed);
+        assertEquals(3, result.rowsImported);
+        assertEquals(5, countBooks());
+
+        // a completed import forgets its checkpoint
+        assertEquals(0, checkpoint());
+    }
+
+    // the over-long field is dropped with its row, and the rows after it are read as usual
+    @Test
+    public void overLongField_rejectsOnlyItsRow() throws IOException {
+
+        char[] longName = new char[CsvBookReader.MAX_FIELD_LENGTH + 1];
+        Arrays.fill(longName, 'x');
+        String feed = "name,price\n" +
+                "The Spot,7.99\n" +
+                "\"" + new String(longName) + "\",1.00\n" +
+                "Assorted Prose,4.50\n";
+
+        CsvBookReader reader = new CsvBookReader(new StringReader(feed));
+        try {
+            ContentValues values = new ContentValues();
+            assertTrue(reader.readRow(values));
+            assertNull(reader.getRowError());
+            assertTrue(reader.readRow(values));
+            assertNotNull(reader.getRowError());
+            assertEquals(0, values.size());
+            assertTrue(reader.readRow(values));
+            assertNull(reader.getRowError());
+            assertEquals("Assorted Prose", values.getAsString(BookEntry.COLUMN_BOOK_NAME));
+            assertFalse(reader.readRow(values));
+        } finally {
+            reader.close();
+        }
+
+        BookImporter.Result result = new BookImporter(RuntimeEnvironment.application, IMPORT_ID)
+                .run(new CsvBookReader(new StringReader(feed)), null);
+        assertEquals(2, result.rowsImported);
+        assertEquals(1, result.rowsRejected);
+    }
+
+    // a quote that is never closed reads the rest of the feed as one rejected row, without holding it in memory
+    @Test
+    public void unclosedQuote_rejectsTheRestOfTheFeedAsOneRow() throws IOException {
+
+        StringBuilder feed = new StringBuilder("name,price\nThe Spot,7.99\n\"Broken,1.00\n");
+        while (feed.length() <= CsvBookReader.MAX_FIELD_LENGTH * 2) {
+            feed.append("Assorted Prose,4.50\n");
+        }
+
+        BookImporter.Result result = new BookImporter(RuntimeEnvironment.application, IMPORT_ID)
+                .run(new CsvBookReader(new StringReader(feed.toString())), null);
+        assertTrue(result.completed);
+        assertEquals(1, result.rowsImported);
+        assertEquals(1, result.rowsRejected);
+    }
+
+    private static Uri importUri(long importRow) {
+        return BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_IMPORT_ID, IMPORT_ID)
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_IMPORT_ROW, String.valueOf(importRow))
+                .build();
+    }
+
+    private static ContentValues newBook(String name, long price) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, name);
+        values.put(BookEntry.COLUMN_BOOK_PRICE, price);
+        return values;
+    }
+
+    private long checkpoint() {
+        return mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_GET_IMPORT_CHECKPOINT, IMPORT_ID,
+                null).getLong(BookContract.KEY_IMPORT_ROW);
+    }
+
+    private int countBooks() {
+        Cursor cursor = mContentResolver.query(BookEntry.CONTENT_URI, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // a reader that fails once it has returned the given number of rows, as a process killed mid-import would stop
+    private static final class FailingReader implements BookRowReader {
+
+        private final BookRowReader mReader;
+        private final long mRows;
+
+        FailingReader(BookRowReader reader, long rows) {
+            mReader = reader;
+            mRows = rows;
+        }
+
+        @Override
+        public boolean readRow(ContentValues values) throws IOException {
+            if (mReader.getRowNumber() == mRows) {
+                throw new IOException("Feed cut off after row " + mRows);
+            }
+            return mReader.readRow(values);
+        }
+
+        @Override
+        public long getRowNumber() {
+            return mReader.getRowNumber();
+        }
+
+        @Override
+        public String getRowError() {
+            return mReader.getRowError();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mReader.close();
+        }
+    }
+
+}
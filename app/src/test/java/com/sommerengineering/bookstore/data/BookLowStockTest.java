@@ -0,0 +1,94 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+// the low stock watchlist is notified of every sale that changes a row it shows
+// the notifications are counted as the provider requests them, before the debounce merges them
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookLowStockTest {
+
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    // a sale that leaves the book above its threshold notifies the book and the ledger,
+    // every sale of a book at or below its threshold also notifies the watchlist, not only the one that listed it
+    @Test
+    public void saleOfAListedBook_notifiesTheWatchlist() {
+
+        Uri spot = insertBook("The Spot", 6, 3);
+
+        long notifications = notifications();
+        assertFalse(sell(spot, 1).getBoolean(BookContract.KEY_LOW_STOCK));
+        long saleNotifications = notifications() - notifications;
+
+        notifications = notifications();
+        assertTrue(sell(spot, 2).getBoolean(BookContract.KEY_LOW_STOCK));
+        assertEquals(saleNotifications + 1, notifications() - notifications);
+
+        notifications = notifications();
+        assertFalse(sell(spot, 1).getBoolean(BookContract.KEY_LOW_STOCK));
+        assertEquals(saleNotifications + 1, notifications() - notifications);
+        assertEquals(2, watchlistQuantity());
+    }
+
+    private Uri insertBook(String name, int quantity, int reorderThreshold) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, name);
+        values.put(BookEntry.COLUMN_BOOK_PRICE, 799L);
+        values.put(BookEntry.COLUMN_BOOK_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_BOOK_REORDER_THRESHOLD, reorderThreshold);
+        return mContentResolver.insert(BookEntry.CONTENT_URI, values);
+    }
+
+    private Bundle sell(Uri book, int count) {
+        Bundle extras = new Bundle();
+        extras.putInt(BookContract.KEY_SELL_COUNT, count);
+        Bundle result = mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SELL,
+                String.valueOf(ContentUris.parseId(book)), extras);
+        assertTrue(result.getBoolean(BookContract.KEY_SOLD));
+        return result;
+    }
+
+    // change notifications the provider has requested so far
+    private long notifications() {
+        return mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_METRICS, null, null)
+                .getLong(BookContract.KEY_METRIC_NOTIFICATIONS);
+    }
+
+    // quantity of the only book on the watchlist
+    private int watchlistQuantity() {
+        Cursor cursor = mContentResolver.query(BookEntry.LOW_STOCK_URI,
+                new String[] {BookEntry.COLUMN_BOOK_QUANTITY}, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.sommerengineering.bookstore.data;
+
+import android.os.Bundle;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookMetricsTest {
+
+    private static final int BOOKS = 100;
+    private static final int BOOK_ID = 101;
+
+    private static final int THREADS = 4;
+    private static final int OPERATIONS_PER_THREAD = 10000;
+
+    private final BookMetrics mMetrics = new BookMetrics(new int[] {BOOKS, BOOK_ID},
+            new String[] {"books", "books/#"});
+
+    @Test
+    public void bucket_isTheFirstPowerOfTwoMicrosecondsAboveTheTime() {
+        assertEquals(0, BookMetrics.Metric.bucket(999));
+        assertEquals(1, BookMetrics.Metric.bucket(1000));
+        assertEquals(1, BookMetrics.Metric.bucket(1999));
+        assertEquals(2, BookMetrics.Metric.bucket(2000));
+        assertEquals(11, BookMetrics.Metric.bucket(1500000));
+        assertEquals(BookMetrics.BUCKETS - 1, BookMetrics.Metric.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void onlyRecordedOperations_areReported() {
+
+        BookMetrics.Metric metric = mMetrics.get(BookMetrics.QUERY, BOOK_ID);
+        metric.end(metric.begin(), 1);
+        metric.end(metric.begin(), -1);
+        mMetrics.countNotification();
+
+        Bundle metrics = mMetrics.toBundle();
+        Bundle query = metrics.getBundle("query books/#");
+        assertNotNull(query);
+        assertEquals(2, query.getLong(BookContract.KEY_METRIC_COUNT));
+        assertEquals(1, query.getLong(BookContract.KEY_METRIC_ERRORS));
+        assertEquals(1, query.getLong(BookContract.KEY_METRIC_ROWS));
+        assertEquals(BookMetrics.BUCKETS, query.getLongArray(BookContract.KEY_METRIC_HISTOGRAM).length);
+        assertNull(metrics.getBundle("query books"));
+        assertEquals(1, metrics.getLong(BookContract.KEY_METRIC_NOTIFICATIONS));
+    }
+
+    @Test
+    public void unknownMatchCode_hasItsOwnMetric() {
+        BookMetrics.Metric metric = mMetrics.get(BookMetrics.DELETE, -1);
+        metric.end(metric.begin(), 0);
+        assertNotNull(mMetrics.toBundle().getBundle("delete unknown"));
+    }
+
+    // concurrent recording loses no operation, every histogram count adds up to the total
+    @Test
+    public void concurrentOperations_areAllCounted() throws Exception {
+
+        final BookMetrics.Metric metric = mMetrics.get(BookMetrics.UPDATE, BOOKS);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        metric.end(metric.begin(), 2);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Bundle update = mMetrics.toBundle().getBundle("update books");
+        long total = THREADS * OPERATIONS_PER_THREAD;
+        assertEquals(total, update.getLong(BookContract.KEY_METRIC_COUNT));
+        assertEquals(2 * total, update.getLong(BookContract.KEY_METRIC_ROWS));
+
+        long histogramTotal = 0;
+        for (long count : update.getLongArray(BookContract.KEY_METRIC_HISTOGRAM)) {
+            histogramTotal += count;
+        }
+        assertEquals(total, histogramTotal);
+        assertTrue(update.getLong(BookContract.KEY_METRIC_MAX_NANOS) * total >=
+                update.getLong(BookContract.KEY_METRIC_TOTAL_NANOS));
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.sommerengineering.bookstore.data;
+
+import android.os.Bundle;
+
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookSlowQueryLogTest {
+
+    private static final String TEST_DATABASE_NAME = "slow_query_log_test.db";
+
+    private BookDbHelper mHelper;
+    private BookSlowQueryLog mLog;
+
+    @Before
+    public void setUp() {
+        mHelper = new BookDbHelper(RuntimeEnvironment.application, TEST_DATABASE_NAME);
+        mLog = new BookSlowQueryLog(mHelper);
+        mLog.setThresholdMillis(0);
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        RuntimeEnvironment.application.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @Test
+    public void unindexedSelection_isLoggedWithItsScan() {
+
+        mLog.begin();
+        mLog.recordQuery(BookDbHelper.VIEW_BOOKS, new String[] {BookEntry._ID},
+                BookEntry.COLUMN_BOOK_SUPPLIER_PHONE + "=?", new String[] {"800-455-8234"}, null, null);
+        mLog.end("query books", 1000000, 3);
+
+        Bundle log = mLog.toBundle();
+        assertArrayEquals(new String[] {"query books"}, log.getStringArray(BookContract.KEY_SLOW_OPERATIONS));
+        assertEquals("SELECT _id FROM books_with_suppliers WHERE supplier_phone=?",
+                log.getStringArray(BookContract.KEY_SLOW_SQL)[0]);
+        assertEquals("text(12)", log.getStringArray(BookContract.KEY_SLOW_ARGUMENTS)[0]);
+        assertEquals(3, log.getLongArray(BookContract.KEY_SLOW_ROWS)[0]);
+        assertTrue(log.getStringArray(BookContract.KEY_SLOW_PLANS)[0].contains("SCAN"));
+    }
+
+    @Test
+    public void indexedDelete_isLoggedWithItsSearch() {
+
+        mLog.begin();
+        mLog.recordDelete(BookEntry.TABLE_NAME, BookEntry.COLUMN_BOOK_NAME + "=?", new String[] {"The Spot"});
+        mLog.end("delete books", 1000000, 0);
+
+        String plan = mLog.toBundle().getStringArray(BookContract.KEY_SLOW_PLANS)[0];
+        assertTrue(plan, plan.contains("SEARCH"));
+        assertTrue(plan, plan.contains(BookDbHelper.INDEX_BOOKS_NAME));
+    }
+
+    @Test
+    public void fastOperations_areNotLogged() {
+
+        mLog.setThresholdMillis(BookSlowQueryLog.DEFAULT_THRESHOLD_MILLIS);
+        mLog.begin();
+        mLog.recordRawQuery("SELECT 1", null);
+        mLog.end("query books/#", 1000, 1);
+
+        assertEquals(0, mLog.toBundle().getLongArray(BookContract.KEY_SLOW_NANOS).length);
+    }
+
+    @Test
+    public void oldestEntries_areDroppedFirst() {
+
+        for (int i = 0; i < BookSlowQueryLog.CAPACITY + 5; i++) {
+            mLog.begin();
+            mLog.end("query books", 1000000 + i, i);
+        }
+
+        Bundle log = mLog.toBundle();
+        long[] rows = log.getLongArray(BookContract.KEY_SLOW_ROWS);
+        assertEquals(BookSlowQueryLog.CAPACITY, rows.length);
+        assertEquals(5, rows[0]);
+        assertEquals(BookSlowQueryLog.CAPACITY + 4, rows[rows.length - 1]);
+        assertEquals(BookSlowQueryLog.CAPACITY + 5, log.getLong(BookContract.KEY_SLOW_LOGGED_COUNT));
+        assertNull(log.getStringArray(BookContract.KEY_SLOW_SQL)[0]);
+    }
+
+}
@@ -0,0 +1,214 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.AbstractWindowedCursor;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+// a snapshot taken through the provider restores the books as they were when it was taken
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookSnapshotsTest {
+
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void restore_bringsBackTheBooksOfTheSnapshot() {
+
+        Uri spot = insertBook("The Spot", 3);
+        insertBook("Assorted Prose", 5);
+
+        Bundle snapshot = mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SNAPSHOT, null, null);
+        String name = snapshot.getString(BookContract.KEY_SNAPSHOT_NAME);
+        assertTrue(snapshot.getLong(BookContract.KEY_SNAPSHOT_BYTES) > 0);
+
+        // changes after the snapshot are undone by the restore, the changed book is read into the row cache
+        insertBook("Instead of a Letter", 1);
+        ContentValues quantity = new ContentValues();
+        quantity.put(BookEntry.COLUMN_BOOK_QUANTITY, 9);
+        mContentResolver.update(spot, quantity, null, null);
+        assertEquals(9, quantityOf(spot));
+
+        mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_RESTORE, name, null);
+
+        Cursor cursor = mContentResolver.query(BookEntry.CONTENT_URI, new String[] {BookEntry.COLUMN_BOOK_NAME},
+                null, null, BookEntry._ID);
+        try {
+            assertEquals(2, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals("The Spot", cursor.getString(0));
+            cursor.moveToNext();
+            assertEquals("Assorted Prose", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+
+        // the restored database takes writes, and the row cache holds nothing from before the restore
+        assertEquals(3, quantityOf(spot));
+        quantity.put(BookEntry.COLUMN_BOOK_QUANTITY, 7);
+        assertEquals(1, mContentResolver.update(spot, quantity, null, null));
+        assertEquals(7, quantityOf(spot));
+    }
+
+    // open cursors hear about the restore before the call returns, and a thread that wrote before the restore
+    // writes to the restored file afterwards with statements compiled against it
+    @Test
+    public void restore_notifiesAtOnceAndRecompilesStatementsOfEveryThread() throws Exception {
+
+        final Uri spot = insertBook("The Spot", 5);
+        ExecutorService seller = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(4, sellOne(seller, spot));
+            Bundle snapshot = mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SNAPSHOT, null, null);
+            assertEquals(3, sellOne(seller, spot));
+
+            final AtomicBoolean notified = new AtomicBoolean();
+            mContentResolver.registerContentObserver(BookContract.BASE_CONTENT_URI, true, new ContentObserver(null) {
+                @Override
+                public void onChange(boolean selfChange, Uri uri) {
+                    if (BookContract.BASE_CONTENT_URI.equals(uri)) {
+                        notified.set(true);
+                    }
+                }
+            });
+            mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_RESTORE,
+                    snapshot.getString(BookContract.KEY_SNAPSHOT_NAME), null);
+            assertTrue(notified.get());
+
+            // the snapshot had 4 copies
+            assertEquals(3, sellOne(seller, spot));
+            assertEquals(3, quantityOf(spot));
+        } finally {
+            seller.shutdown();
+        }
+    }
+
+    // the snapshot opens on its own, without the log of the live database next to it
+    // a cursor returned before a restore keeps the rows it read, and ends there instead of reading the closed file
+    @Test
+    public void restore_leavesEarlierCursorsWithTheRowsTheyHold() {
+
+        insertBook("The Spot", 3);
+        String name = mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SNAPSHOT, null, null)
+                .getString(BookContract.KEY_SNAPSHOT_NAME);
+
+        Cursor held = mContentResolver.query(BookEntry.CONTENT_URI, new String[] {BookEntry.COLUMN_BOOK_NAME},
+                null, null, null);
+        Cursor refilled = mContentResolver.query(BookEntry.CONTENT_URI, new String[] {BookEntry.COLUMN_BOOK_NAME},
+                null, null, null);
+        try {
+            mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_RESTORE, name, null);
+
+            assertEquals(1, held.getCount());
+            assertTrue(held.moveToFirst());
+            assertEquals("The Spot", held.getString(0));
+
+            // an emptied window stands for a result larger than one window, the move past it has to fill another
+            ((AbstractWindowedCursor) refilled).getWindow().clear();
+            assertFalse(refilled.moveToFirst());
+        } finally {
+            held.close();
+            refilled.close();
+        }
+    }
+
+    @Test
+    public void snapshot_isASingleDatabaseFile() {
+
+        insertBook("The Spot", 3);
+        Bundle snapshot = mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SNAPSHOT, null, null);
+
+        File directory = new File(RuntimeEnvironment.application.getFilesDir(), BookSnapshots.DIRECTORY);
+        File file = new File(directory, snapshot.getString(BookContract.KEY_SNAPSHOT_NAME));
+        assertArrayEquals(new String[] {file.getName()}, directory.list());
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            assertEquals(BookDbHelper.DATABASE_VERSION, db.getVersion());
+            Cursor cursor = db.rawQuery("SELECT name FROM books", null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals("The Spot", cursor.getString(0));
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void restore_refusesAPathOutsideTheSnapshots() {
+        mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_RESTORE, "../databases/inventory.db", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void restore_refusesAMissingSnapshot() {
+        mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_RESTORE, "inventory-19700101-000000-000.db",
+                null);
+    }
+
+    private Uri insertBook(String name, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, name);
+        values.put(BookEntry.COLUMN_BOOK_AUTHOR, "John Updike");
+        values.put(BookEntry.COLUMN_BOOK_PRICE, 799L);
+        values.put(BookEntry.COLUMN_BOOK_QUANTITY, quantity);
+        return mContentResolver.insert(BookEntry.CONTENT_URI, values);
+    }
+
+    // sell a copy of the book on the thread of the executor and return the quantity left
+    private int sellOne(ExecutorService seller, final Uri book) throws Exception {
+        return seller.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                Bundle extras = new Bundle();
+                extras.putInt(BookContract.KEY_SELL_COUNT, 1);
+                Bundle result = mContentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SELL,
+                        String.valueOf(ContentUris.parseId(book)), extras);
+                assertTrue(result.getBoolean(BookContract.KEY_SOLD));
+                return result.getInt(BookEntry.COLUMN_BOOK_QUANTITY);
+            }
+        }).get();
+    }
+
+    private int quantityOf(Uri book) {
+        Cursor cursor = mContentResolver.query(book, new String[] {BookEntry.COLUMN_BOOK_QUANTITY}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookContract.SupplierEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+// books written through the provider with a supplier name and phone share one row of the suppliers table
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookSuppliersTest {
+
+    private static final String PENGUIN = "Penguin Publishers";
+    private static final String PENGUIN_PHONE = "800-455-8234";
+
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void booksWithTheSameSupplier_shareOneSupplierRow() {
+
+        Uri first = insertBook("The Spot", PENGUIN, PENGUIN_PHONE);
+        Uri second = insertBook("Assorted Prose", PENGUIN, PENGUIN_PHONE);
+        insertBook("Instead of a Letter", null, null);
+
+        assertEquals(1, count(SupplierEntry.CONTENT_URI));
+        long supplierId = supplierIdOf(first);
+        assertEquals(supplierId, supplierIdOf(second));
+        assertEquals(2, count(SupplierEntry.buildBooksUri(supplierId)));
+
+        // the book URI still returns the supplier name and phone, as the editor reads them
+        Cursor cursor = mContentResolver.query(second, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(PENGUIN, cursor.getString(cursor.getColumnIndex(BookEntry.COLUMN_BOOK_SUPPLIER_NAME)));
+            assertEquals(PENGUIN_PHONE, cursor.getString(cursor.getColumnIndex(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // a null projection has the same columns whether the row is read from the database or from the row cache
+    @Test
+    public void bookUri_hasTheSupplierIdOnAMissAndOnAHit() {
+
+        Uri book = insertBook("The Spot", PENGUIN, PENGUIN_PHONE);
+        long supplierId = supplierIdOf(insertBook("Assorted Prose", PENGUIN, PENGUIN_PHONE));
+
+        for (int read = 0; read < 2; read++) {
+            Cursor cursor = mContentResolver.query(book, null, null, null, null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(supplierId,
+                        cursor.getLong(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_BOOK_SUPPLIER_ID)));
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    @Test
+    public void bulkInsert_internsEachSupplierOnce() {
+
+        ContentValues[] books = new ContentValues[30];
+        for (int i = 0; i < books.length; i++) {
+            books[i] = newBook("Book " + i, "Supplier " + (i % 3), PENGUIN_PHONE);
+        }
+        assertEquals(books.length, mContentResolver.bulkInsert(BookEntry.CONTENT_URI, books));
+
+        assertEquals(3, count(SupplierEntry.CONTENT_URI));
+        assertEquals(10, count(BookEntry.CONTENT_URI, BookEntry.COLUMN_BOOK_SUPPLIER_NAME + "=?", "Supplier 1"));
+    }
+
+    // a row with both a supplier ID and a supplier name is refused as by a single insert, and nothing is inserted
+    @Test
+    public void bulkInsert_refusesASupplierIdWithASupplierName() {
+
+        long supplierId = supplierIdOf(insertBook("The Spot", PENGUIN, PENGUIN_PHONE));
+        ContentValues conflicting = newBook("Assorted Prose", "Harper Books", "800-242-7737");
+        conflicting.put(BookEntry.COLUMN_BOOK_SUPPLIER_ID, supplierId);
+
+        try {
+            mContentResolver.insert(BookEntry.CONTENT_URI, conflicting);
+            fail("insert took a supplier ID and a supplier name");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            mContentResolver.bulkInsert(BookEntry.CONTENT_URI,
+                    new ContentValues[] {newBook("Instead of a Letter", PENGUIN, PENGUIN_PHONE), conflicting});
+            fail("bulk insert took a supplier ID and a supplier name");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        assertEquals(1, count(BookEntry.CONTENT_URI));
+        assertEquals(1, count(SupplierEntry.CONTENT_URI));
+    }
+
+    // a full edit from the editor moves the book to another supplier without changing the first one
+    @Test
+    public void editedSupplier_isANewSupplierRow() {
+
+        Uri first = insertBook("The Spot", PENGUIN, PENGUIN_PHONE);
+        Uri second = insertBook("Assorted Prose", PENGUIN, PENGUIN_PHONE);
+
+        ContentValues values = newBook("Assorted Prose", "Harper Books", "800-242-7737");
+        values.put(BookEntry.COLUMN_BOOK_REORDER_THRESHOLD, 0);
+        assertEquals(1, mContentResolver.update(second, values, null, null));
+
+        assertEquals(2, count(SupplierEntry.CONTENT_URI));
+        assertNotEquals(supplierIdOf(first), supplierIdOf(second));
+        assertEquals(PENGUIN, supplierNameOf(first));
+        assertEquals("Harper Books", supplierNameOf(second));
+    }
+
+    // a new phone alone keeps the supplier name of each book
+    @Test
+    public void updatedPhone_keepsEachSupplierName() {
+
+        Uri first = insertBook("The Spot", PENGUIN, PENGUIN_PHONE);
+        Uri second = insertBook("Assorted Prose", "Harper Books", "800-242-7737");
+
+        ContentValues phone = new ContentValues();
+        phone.put(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE, "555-0100");
+        assertEquals(2, mContentResolver.update(BookEntry.CONTENT_URI, phone, null, null));
+
+        assertEquals(PENGUIN, supplierNameOf(first));
+        assertEquals("Harper Books", supplierNameOf(second));
+        assertEquals(2, count(BookEntry.CONTENT_URI, BookEntry.COLUMN_BOOK_SUPPLIER_PHONE + "=?", "555-0100"));
+    }
+
+    @Test
+    public void deleteBySupplierName_deletesOnlyItsBooks() {
+
+        insertBook("The Spot", PENGUIN, PENGUIN_PHONE);
+        insertBook("Assorted Prose", "Harper Books", "800-242-7737");
+
+        assertEquals(1, mContentResolver.delete(BookEntry.CONTENT_URI,
+                BookEntry.COLUMN_BOOK_SUPPLIER_NAME + "=?", new String[] {PENGUIN}));
+        assertEquals(1, count(BookEntry.CONTENT_URI));
+    }
+
+    @Test
+    public void search_matchesSupplierName() {
+
+        insertBook("The Spot", PENGUIN, PENGUIN_PHONE);
+        insertBook("Assorted Prose", "Harper Books", "800-242-7737");
+
+        Cursor cursor = mContentResolver.query(BookEntry.SEARCH_URI.buildUpon().appendPath("penguin").build(),
+                new String[] {BookEntry.COLUMN_BOOK_NAME, BookEntry.COLUMN_BOOK_SUPPLIER_NAME}, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals("The Spot", cursor.getString(0));
+            assertEquals(PENGUIN, cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Uri insertBook(String name, String supplierName, String supplierPhone) {
+        return mContentResolver.insert(BookEntry.CONTENT_URI, newBook(name, supplierName, supplierPhone));
+    }
+
+    private static ContentValues newBook(String name, String supplierName, String supplierPhone) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, name);
+        values.put(BookEntry.COLUMN_BOOK_AUTHOR, "John Updike");
+        values.put(BookEntry.COLUMN_BOOK_PRICE, 799L);
+        values.put(BookEntry.COLUMN_BOOK_QUANTITY, 3);
+        values.put(BookEntry.COLUMN_BOOK_SUPPLIER_NAME, supplierName);
+        values.put(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE, supplierPhone);
+        return values;
+    }
+
+    private long supplierIdOf(Uri book) {
+        Cursor cursor = mContentResolver.query(book, new String[] {BookEntry.COLUMN_BOOK_SUPPLIER_ID},
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String supplierNameOf(Uri book) {
+        Cursor cursor = mContentResolver.query(book, new String[] {BookEntry.COLUMN_BOOK_SUPPLIER_NAME},
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int count(Uri uri) {
+        return count(uri, null);
+    }
+
+    private int count(Uri uri, String selection, String... selectionArgs) {
+        Cursor cursor = mContentResolver.query(uri, null, selection,
+                selectionArgs.length == 0 ? null : selectionArgs, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.sommerengineering.bookstore.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.sommerengineering.bookstore.data.BookContract.BookEntry;
+import com.sommerengineering.bookstore.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+// an export read back with CsvBookReader has the same books, whatever text their fields hold
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class CsvBookWriterTest {
+
+    private static final String TEST_DATABASE_NAME = "csv_book_writer_test.db";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private BookDbHelper mHelper;
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        mHelper = new BookDbHelper(RuntimeEnvironment.application, TEST_DATABASE_NAME);
+        mDatabase = mHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        RuntimeEnvironment.application.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @Test
+    public void export_readsBackWithCsvBookReader() throws Exception {
+
+        long penguin = insertSupplier("Penguin, Random House", "800-733-3000");
+        insertBook("The Spot", "John Updike", 799, 3, penguin);
+        insertBook("\"Rabbit\" Run", "John Updike", 1250, 0, penguin);
+        insertBook("Line one\nline two", "Zo\u00eb \u00c5ngstr\u00f6m \ud83d\udcda", 5, 12, -1);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CsvBookWriter writer = new CsvBookWriter(out);
+        assertEquals(3, writer.writeAll(mDatabase));
+        assertEquals(out.size(), writer.getBytesWritten());
+
+        CsvBookReader reader = new CsvBookReader(new InputStreamReader(new ByteArrayInputStream(out.toByteArray()),
+                UTF_8));
+        try {
+            ContentValues values = new ContentValues();
+
+            assertTrue(reader.readRow(values));
+            assertEquals("The Spot", values.getAsString(BookEntry.COLUMN_BOOK_NAME));
+            assertEquals("7.99", values.getAsString(BookEntry.COLUMN_BOOK_PRICE));
+            assertEquals("3", values.getAsString(BookEntry.COLUMN_BOOK_QUANTITY));
+            assertEquals("Penguin, Random House", values.getAsString(BookEntry.COLUMN_BOOK_SUPPLIER_NAME));
+            assertEquals("800-733-3000", values.getAsString(BookEntry.COLUMN_BOOK_SUPPLIER_PHONE));
+            assertEquals("0", values.getAsString(BookEntry.COLUMN_BOOK_REORDER_THRESHOLD));
+
+            assertTrue(reader.readRow(values));
+            assertEquals("\"Rabbit\" Run", values.getAsString(BookEntry.COLUMN_BOOK_NAME));
+            assertEquals("12.50", values.getAsString(BookEntry.COLUMN_BOOK_PRICE));
+
+            // a book without a supplier has empty supplier fields
+            assertTrue(reader.readRow(values));
+            assertEquals("Line one\nline two", values.getAsString(BookEntry.COLUMN_BOOK_NAME));
+            assertEquals("Zo\u00eb \u00c5ngstr\u00f6m \ud83d\udcda", values.getAsString(BookEntry.COLUMN_BOOK_AUTHOR));
+            assertEquals("0.05", values.getAsString(BookEntry.COLUMN_BOOK_PRICE));
+            assertEquals("", values.getAsString(BookEntry.COLUMN_BOOK_SUPPLIER_NAME));
+
+            assertFalse(reader.readRow(values));
+        } finally {
+            reader.close();
+        }
+    }
+
+    // pages continue after the last _ID of the previous one, so no book is skipped or written twice
+    @Test
+    public void export_writesEveryBookOnceAcrossPages() throws Exception {
+
+        int books = CsvBookWriter.PAGE_ROWS * 2 + 1;
+        mDatabase.beginTransaction();
+        try {
+            for (int i = 0; i < books; i++) {
+                insertBook("Book " + i, "Author", 799, i, -1);
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(books, new CsvBookWriter(out).writeAll(mDatabase));
+
+        CsvBookReader reader = new CsvBookReader(new InputStreamReader(new ByteArrayInputStream(out.toByteArray()),
+                UTF_8));
+        try {
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < books; i++) {
+                assertTrue(reader.readRow(values));
+                assertEquals("Book " + i, values.getAsString(BookEntry.COLUMN_BOOK_NAME));
+            }
+            assertFalse(reader.readRow(values));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void exportUri_isReadOnlyCsv() throws Exception {
+
+        BookProvider provider = Robolectric.buildContentProvider(BookProvider.class)
+                .create(BookContract.CONTENT_AUTHORITY).get();
+        assertEquals("text/csv", provider.getType(BookEntry.EXPORT_URI));
+
+        try {
+            provider.openFile(BookEntry.EXPORT_URI, "w");
+            fail("export opened for writing");
+        } catch (FileNotFoundException expected) {
+        }
+        try {
+            provider.openFile(BookEntry.CONTENT_URI, "r");
+            fail("books table opened as a file");
+        } catch (FileNotFoundException expected) {
+        }
+    }
+
+    private long insertSupplier(String name, String phone) {
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, name);
+        values.put(SupplierEntry.COLUMN_SUPPLIER_PHONE, phone);
+        return mDatabase.insertOrThrow(SupplierEntry.TABLE_NAME, null, values);
+    }
+
+    // a negative supplier ID is a book without a supplier
+    private void insertBook(String name, String author, long price, int quantity, long supplierId) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, name);
+        values.put(BookEntry.COLUMN_BOOK_AUTHOR, author);
+        values.put(BookEntry.COLUMN_BOOK_PRICE, price);
+        values.put(BookEntry.COLUMN_BOOK_QUANTITY, quantity);
+        if (supplierId >= 0) {
+            values.put(BookEntry.COLUMN_BOOK_SUPPLIER_ID, supplierId);
+        }
+        mDatabase.insertOrThrow(BookEntry.TABLE_NAME, null, values);
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.sommerengineering.bookstore.data;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class MoneyTest {
+
+    @Test
+    public void parse_wholeAndFractionalAmounts() {
+        assertEquals(799, Money.parse("7.99"));
+        assertEquals(790, Money.parse("7.9"));
+        assertEquals(700, Money.parse("7"));
+        assertEquals(700, Money.parse("7."));
+        assertEquals(99, Money.parse(".99"));
+        assertEquals(0, Money.parse("0"));
+        assertEquals(-125, Money.parse("-1.25"));
+        assertEquals(1234500, Money.parse("+12345"));
+    }
+
+    @Test
+    public void parse_isExactWherePrimitiveFloatsAreNot() {
+
+        // 0.29f * 100 is 28.999998
+        assertEquals(29, Money.parse("0.29"));
+        assertEquals(1999999999999L, Money.parse("19999999999.99"));
+    }
+
+    @Test
+    public void parse_acceptsTrailingZerosPastTheCents() {
+        assertEquals(799, Money.parse("7.9900"));
+    }
+
+    @Test
+    public void parse_localeSeparator() {
+        assertEquals(799, Money.parse("7,99", Locale.GERMANY));
+        assertEquals(799, Money.parse("7.99", Locale.GERMANY));
+    }
+
+    @Test
+    public void parse_rejectsInvalidText() {
+        String[] invalid = {"", ".", "-", "7.999", "7.9.9", "7,99", "$7.99", "1e3", " 7", "99999999999999999999"};
+        for (String text : invalid) {
+            try {
+                Money.parse(text);
+                fail("Parsed \"" + text + "\"");
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void format_roundTrips() {
+        Money.Formatter formatter = new Money.Formatter(Locale.US);
+        long[] amounts = {0, 5, 99, 100, 799, 123456789, -125, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long cents : amounts) {
+            String text = formatter.format(cents);
+            if (cents != Long.MIN_VALUE) {
+                assertEquals(text, cents, Money.parse(text));
+            }
+        }
+        assertEquals("7.99", formatter.format(799));
+        assertEquals("0.05", formatter.format(5));
+        assertEquals("-92233720368547758.08", formatter.format(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void format_localeSeparator() {
+        assertEquals("7,99", new Money.Formatter(Locale.GERMANY).format(799));
+    }
+
+}